@@ -0,0 +1,7 @@
+import axios from 'axios';
+
+export default {
+  getReadingStats() {
+    return axios.get('/reading-stats')
+  }
+}
@@ -0,0 +1,59 @@
+import axios from 'axios';
+
+const STORAGE_PREFIX = 'sync:'
+
+function storageKey(username) {
+  return STORAGE_PREFIX + username
+}
+
+function load(username) {
+  try {
+    return JSON.parse(localStorage.getItem(storageKey(username)))
+  } catch (e) {
+    return null
+  }
+}
+
+function mergeById(rows, changed, deletedIds, idOf) {
+  const byId = new Map(rows.map(row => [idOf(row), row]))
+  changed.forEach(row => byId.set(idOf(row), row))
+  deletedIds.forEach(id => byId.delete(id))
+  return [...byId.values()]
+}
+
+export default {
+  getChanges(since) {
+    return axios.get('/sync', { params: since == null ? {} : { since } })
+  },
+
+  // Brings the user's saved copy of their library and reading logs up to date, fetching only
+  // what changed since the last call, and returns it as { userBooks, readingLogs }
+  async syncLibrary(username) {
+    const saved = load(username)
+    const { data } = await this.getChanges(saved ? saved.version : null)
+
+    let userBooks = data.userBooks
+    let readingLogs = data.readingLogs
+    if (saved && !data.full) {
+      userBooks = mergeById(saved.userBooks, data.userBooks, data.deletedUserBookIds, ub => ub.userBookId)
+      readingLogs = mergeById(saved.readingLogs, data.readingLogs, data.deletedReadingLogIds, log => log.logId)
+    }
+    // Same order as /user-books
+    userBooks.sort((a, b) => (b.dateAdded || '').localeCompare(a.dateAdded || ''))
+
+    const library = { version: data.version, userBooks, readingLogs }
+    try {
+      localStorage.setItem(storageKey(username), JSON.stringify(library))
+    } catch (e) {
+      // Over quota: the next call falls back to a full sync
+      localStorage.removeItem(storageKey(username))
+    }
+    return library
+  },
+
+  clear() {
+    Object.keys(localStorage)
+      .filter(key => key.startsWith(STORAGE_PREFIX))
+      .forEach(key => localStorage.removeItem(key))
+  }
+}
@@ -13,6 +13,17 @@ export default {
     return axios.get(`/tags/book/${bookId}`)
   },
 
+  getTagsByBookIds(bookIds) {
+    return axios.get('/tags/books', { params: { ids: bookIds.join(',') } })
+  },
+
+  // all, any and none are arrays of tag ids; any of them may be left out
+  filterBooks({ all = [], any = [], none = [], limit = 50, offset = 0 } = {}) {
+    return axios.get('/tags/filter', {
+      params: { all: all.join(','), any: any.join(','), none: none.join(','), limit, offset }
+    })
+  },
+
   createTag(tag) {
     return axios.post('/tags', tag)
   },
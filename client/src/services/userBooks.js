@@ -5,6 +5,10 @@ export default {
     return axios.get('/user-books')
   },
 
+  getSummary() {
+    return axios.get('/user-books/summary')
+  },
+
   getUserBookById(id) {
     return axios.get(`/user-books/${id}`)
   },
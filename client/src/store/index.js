@@ -1,5 +1,6 @@
 import { createStore as _createStore } from 'vuex';
 import axios from 'axios';
+import syncService from '../services/sync';
 
 export function createStore(currentToken, currentUser) {
   let store = _createStore({
@@ -20,6 +21,7 @@ export function createStore(currentToken, currentUser) {
       LOGOUT(state) {
         localStorage.removeItem('token');
         localStorage.removeItem('user');
+        syncService.clear();
         state.token = '';
         state.user = {};
         axios.defaults.headers.common = {};
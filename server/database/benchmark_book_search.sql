@@ -0,0 +1,70 @@
+-- Compares the ILIKE search path with the ranked full-text/trigram path on a synthetic catalog.
+-- Run against a database created from book_goblin.sql:
+--   psql -d m2_final_project -f benchmark_book_search.sql
+-- Everything is created in a scratch table and dropped at the end.
+
+\timing on
+
+DROP TABLE IF EXISTS bench_books;
+CREATE TABLE bench_books (LIKE books INCLUDING ALL);
+
+-- One million books built from a small vocabulary so common and rare terms both occur
+INSERT INTO bench_books (title, author, isbn, publication_year)
+SELECT initcap(w1.word || ' ' || w2.word || ' ' || w3.word) || ' ' || n,
+       initcap(a1.word) || ' ' || initcap(a2.word),
+       'BENCH' || n,
+       1900 + (n % 125)
+FROM generate_series(1, 1000000) AS n
+CROSS JOIN LATERAL (SELECT (ARRAY['shadow','garden','dragon','winter','empire','river','silent','crown',
+        'midnight','glass','iron','forest','ocean','secret','last','golden','broken','hidden','storm','star'])
+        [1 + (n * 7) % 20] AS word) w1
+CROSS JOIN LATERAL (SELECT (ARRAY['of','in','beyond','under','and','without','before','after'])
+        [1 + (n * 3) % 8] AS word) w2
+CROSS JOIN LATERAL (SELECT (ARRAY['night','kings','ashes','memory','wolves','time','stone','light',
+        'bones','tides','whispers','thorns','ruin','dawn','lies','ghosts','gold','rain','fire','sea'])
+        [1 + (n * 13) % 20] AS word) w3
+CROSS JOIN LATERAL (SELECT (ARRAY['ada','james','maria','chen','olu','ingrid','ravi','sofia','tomas','yuki'])
+        [1 + n % 10] AS word) a1
+CROSS JOIN LATERAL (SELECT (ARRAY['hughes','okafor','lindqvist','moreau','tanaka','silva','novak','patel',
+        'garcia','kowalski','brennan','haddad'])[1 + (n * 11) % 12] AS word) a2;
+
+ANALYZE bench_books;
+
+-- Current path: JdbcBookDao.getBooksByTitle / getBooksByAuthor / getBooksByTitleAndAuthor
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM bench_books WHERE title ILIKE '%midnight%' ORDER BY title;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM bench_books WHERE author ILIKE '%lindqvist%' ORDER BY author, title;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM bench_books WHERE title ILIKE '%midnight%' AND author ILIKE '%lindqvist%' ORDER BY title;
+
+-- Ranked path: JdbcBookDao.searchBooksRanked
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT book_id, title, author,
+       ts_rank_cd(search_vector, websearch_to_tsquery('simple', 'midnight lindqvist'))
+           + greatest(similarity(title, 'midnight lindqvist'), similarity(author, 'midnight lindqvist')) AS score
+FROM bench_books
+WHERE search_vector @@ websearch_to_tsquery('simple', 'midnight lindqvist')
+   OR title % 'midnight lindqvist'
+   OR author % 'midnight lindqvist'
+ORDER BY score DESC, book_id
+LIMIT 50;
+
+-- Misspelled query: ILIKE finds nothing, trigram similarity still does
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM bench_books WHERE author ILIKE '%lindkvist%' ORDER BY author, title;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT book_id, title, author,
+       ts_rank_cd(search_vector, websearch_to_tsquery('simple', 'lindkvist'))
+           + greatest(similarity(title, 'lindkvist'), similarity(author, 'lindkvist')) AS score
+FROM bench_books
+WHERE search_vector @@ websearch_to_tsquery('simple', 'lindkvist')
+   OR title % 'lindkvist'
+   OR author % 'lindkvist'
+ORDER BY score DESC, book_id
+LIMIT 50;
+
+DROP TABLE bench_books;
@@ -1,10 +1,20 @@
 -- Drop tables in reverse order of dependencies
+DROP TABLE IF EXISTS sync_tombstones CASCADE;
 DROP TABLE IF EXISTS reading_logs CASCADE;
+DROP TABLE IF EXISTS reading_stats_monthly CASCADE;
+DROP TABLE IF EXISTS reading_stats_days CASCADE;
+DROP TABLE IF EXISTS user_library_stats CASCADE;
 DROP TABLE IF EXISTS book_tags CASCADE;
 DROP TABLE IF EXISTS user_books CASCADE;
 DROP TABLE IF EXISTS tags CASCADE;
 DROP TABLE IF EXISTS books CASCADE;
 DROP TABLE IF EXISTS users CASCADE;
+DROP TABLE IF EXISTS ol_editions CASCADE;
+DROP TABLE IF EXISTS ol_works CASCADE;
+DROP TABLE IF EXISTS ol_authors CASCADE;
+
+-- Trigram matching for fuzzy title/author search
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
 
 
 
@@ -22,13 +32,25 @@ CREATE TABLE books (
     author VARCHAR(100) NOT NULL,
     isbn VARCHAR(20) UNIQUE,
     cover_image_url TEXT,
-    publication_year INTEGER
+    publication_year INTEGER,
+    -- Stamped by stamp_book_sync_version() when the title or author changes, for GET /sync
+    sync_version BIGINT NOT NULL DEFAULT 0,
+    -- Title terms rank above author terms; 'simple' avoids stemming names
+    search_vector tsvector GENERATED ALWAYS AS (
+        setweight(to_tsvector('simple', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('simple', coalesce(author, '')), 'B')
+    ) STORED
 );
 
 -- Speed up searches by title/author
 CREATE INDEX idx_books_title ON books(title);
 CREATE INDEX idx_books_author ON books(author);
 
+-- Ranked full-text and fuzzy search; the trigram indexes also serve ILIKE '%term%'
+CREATE INDEX idx_books_search_vector ON books USING GIN (search_vector);
+CREATE INDEX idx_books_title_trgm ON books USING GIN (title gin_trgm_ops);
+CREATE INDEX idx_books_author_trgm ON books USING GIN (author gin_trgm_ops);
+
 CREATE TABLE user_books (
     user_book_id SERIAL PRIMARY KEY,
     user_id INTEGER REFERENCES users(user_id) ON DELETE CASCADE,
@@ -36,12 +58,69 @@ CREATE TABLE user_books (
     date_added DATE DEFAULT CURRENT_DATE,
     is_owned BOOLEAN DEFAULT TRUE,
     current_status VARCHAR(20) CHECK (current_status IN ('unread', 'reading', 'finished', 'dnf')),  -- "dnf" = Did Not Finish
+    -- Stamped by stamp_sync_version() on every write, for GET /sync
+    version BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL,
     UNIQUE (user_id, book_id)  -- Prevent duplicate entries for the same user/book
 );
 
--- Optimize user-specific queries
-CREATE INDEX idx_user_books_user ON user_books(user_id);
+-- Optimize user-specific queries; also serves "recently added" without a sort
+CREATE INDEX idx_user_books_user ON user_books(user_id, date_added DESC, user_book_id DESC);
 CREATE INDEX idx_user_books_book ON user_books(book_id);
+CREATE INDEX idx_user_books_sync ON user_books(user_id, version);
+
+-- Per-user library counters behind GET /user-books/summary, kept current by the trigger below so
+-- the summary costs the same however many books a user has. Users with no books have no row.
+CREATE TABLE user_library_stats (
+    user_id INTEGER PRIMARY KEY REFERENCES users(user_id) ON DELETE CASCADE,
+    total_count INTEGER NOT NULL DEFAULT 0,
+    owned_count INTEGER NOT NULL DEFAULT 0,
+    unread_count INTEGER NOT NULL DEFAULT 0,
+    reading_count INTEGER NOT NULL DEFAULT 0,
+    finished_count INTEGER NOT NULL DEFAULT 0,
+    dnf_count INTEGER NOT NULL DEFAULT 0
+);
+
+-- Takes the old row out of its owner's counters and adds the new row to its owner's. Removals only
+-- ever UPDATE: when a user is deleted their stats row may already be gone by the time the cascaded
+-- user_books deletes reach this trigger, and inserting it again would violate the foreign key.
+CREATE OR REPLACE FUNCTION update_user_library_stats() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        UPDATE user_library_stats SET
+            total_count = total_count - 1,
+            owned_count = owned_count - (CASE WHEN OLD.is_owned THEN 1 ELSE 0 END),
+            unread_count = unread_count - (CASE WHEN OLD.current_status = 'unread' THEN 1 ELSE 0 END),
+            reading_count = reading_count - (CASE WHEN OLD.current_status = 'reading' THEN 1 ELSE 0 END),
+            finished_count = finished_count - (CASE WHEN OLD.current_status = 'finished' THEN 1 ELSE 0 END),
+            dnf_count = dnf_count - (CASE WHEN OLD.current_status = 'dnf' THEN 1 ELSE 0 END)
+        WHERE user_id = OLD.user_id;
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        INSERT INTO user_library_stats AS s (user_id, total_count, owned_count, unread_count,
+                                             reading_count, finished_count, dnf_count)
+        VALUES (NEW.user_id, 1,
+                CASE WHEN NEW.is_owned THEN 1 ELSE 0 END,
+                CASE WHEN NEW.current_status = 'unread' THEN 1 ELSE 0 END,
+                CASE WHEN NEW.current_status = 'reading' THEN 1 ELSE 0 END,
+                CASE WHEN NEW.current_status = 'finished' THEN 1 ELSE 0 END,
+                CASE WHEN NEW.current_status = 'dnf' THEN 1 ELSE 0 END)
+        ON CONFLICT (user_id) DO UPDATE SET
+            total_count = s.total_count + 1,
+            owned_count = s.owned_count + EXCLUDED.owned_count,
+            unread_count = s.unread_count + EXCLUDED.unread_count,
+            reading_count = s.reading_count + EXCLUDED.reading_count,
+            finished_count = s.finished_count + EXCLUDED.finished_count,
+            dnf_count = s.dnf_count + EXCLUDED.dnf_count;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Updates of other columns, like the sync stamps, leave the counters alone
+CREATE TRIGGER trg_user_books_library_stats
+AFTER INSERT OR DELETE OR UPDATE OF user_id, is_owned, current_status ON user_books
+FOR EACH ROW EXECUTE FUNCTION update_user_library_stats();
 
 CREATE TABLE reading_logs (
     log_id SERIAL PRIMARY KEY,
@@ -49,12 +128,237 @@ CREATE TABLE reading_logs (
     start_date DATE NOT NULL DEFAULT CURRENT_DATE,
     end_date DATE,
     rating SMALLINT CHECK (rating BETWEEN 1 AND 5 OR rating IS NULL),
-    notes TEXT
+    notes TEXT,
+    -- Stamped by stamp_sync_version() on every write, for GET /sync
+    version BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL
 );
 
 -- Speed up "show all reads for a book" queries
 CREATE INDEX idx_reading_logs_user_book ON reading_logs(user_book_id);
 
+-- Reading statistics rollups behind GET /reading-stats, so stats never scan reading_logs.
+-- A log counts towards the month it finished in, or the month it started while unfinished.
+CREATE TABLE reading_stats_monthly (
+    user_id INTEGER REFERENCES users(user_id) ON DELETE CASCADE,
+    month DATE,  -- first day of the month
+    finished_count INTEGER NOT NULL DEFAULT 0,
+    finish_days_total INTEGER NOT NULL DEFAULT 0,  -- sum of end_date - start_date over finished logs
+    rating_1_count INTEGER NOT NULL DEFAULT 0,
+    rating_2_count INTEGER NOT NULL DEFAULT 0,
+    rating_3_count INTEGER NOT NULL DEFAULT 0,
+    rating_4_count INTEGER NOT NULL DEFAULT 0,
+    rating_5_count INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, month)
+);
+
+-- Days on which a user started or finished a book, for reading streaks
+CREATE TABLE reading_stats_days (
+    user_id INTEGER REFERENCES users(user_id) ON DELETE CASCADE,
+    day DATE,
+    activity_count INTEGER NOT NULL,
+    PRIMARY KEY (user_id, day)
+);
+
+-- Adds one log to (direction 1) or takes it out of (direction -1) its user's rollups. Removals only
+-- UPDATE, for the same reason as in update_user_library_stats, and are skipped for a user who is
+-- being deleted: the foreign key is checked again on a row updated twice in one transaction.
+-- Writers share the user's advisory lock (class 1, keyed by user id) while a backfill rebuilding
+-- that user holds it exclusively, so a log is never counted both by a trigger and by the rebuild.
+CREATE OR REPLACE FUNCTION apply_reading_stats(p_user_id INTEGER, p_start DATE, p_end DATE,
+                                               p_rating SMALLINT, direction INTEGER) RETURNS VOID AS $$
+DECLARE
+    log_month DATE := date_trunc('month', coalesce(p_end, p_start))::date;
+    finished INTEGER := CASE WHEN p_end IS NULL THEN 0 ELSE direction END;
+    finish_days INTEGER := CASE WHEN p_end IS NULL THEN 0 ELSE (p_end - p_start) * direction END;
+    activity_day DATE;
+BEGIN
+    IF direction < 0 AND NOT EXISTS (SELECT 1 FROM users WHERE user_id = p_user_id) THEN
+        RETURN;
+    END IF;
+    PERFORM pg_advisory_xact_lock_shared(1, p_user_id);
+
+    IF direction > 0 THEN
+        INSERT INTO reading_stats_monthly AS m (user_id, month, finished_count, finish_days_total,
+                                                rating_1_count, rating_2_count, rating_3_count,
+                                                rating_4_count, rating_5_count)
+        VALUES (p_user_id, log_month, finished, finish_days,
+                CASE WHEN p_rating = 1 THEN 1 ELSE 0 END, CASE WHEN p_rating = 2 THEN 1 ELSE 0 END,
+                CASE WHEN p_rating = 3 THEN 1 ELSE 0 END, CASE WHEN p_rating = 4 THEN 1 ELSE 0 END,
+                CASE WHEN p_rating = 5 THEN 1 ELSE 0 END)
+        ON CONFLICT (user_id, month) DO UPDATE SET
+            finished_count = m.finished_count + EXCLUDED.finished_count,
+            finish_days_total = m.finish_days_total + EXCLUDED.finish_days_total,
+            rating_1_count = m.rating_1_count + EXCLUDED.rating_1_count,
+            rating_2_count = m.rating_2_count + EXCLUDED.rating_2_count,
+            rating_3_count = m.rating_3_count + EXCLUDED.rating_3_count,
+            rating_4_count = m.rating_4_count + EXCLUDED.rating_4_count,
+            rating_5_count = m.rating_5_count + EXCLUDED.rating_5_count;
+    ELSE
+        UPDATE reading_stats_monthly SET
+            finished_count = finished_count + finished,
+            finish_days_total = finish_days_total + finish_days,
+            rating_1_count = rating_1_count - (CASE WHEN p_rating = 1 THEN 1 ELSE 0 END),
+            rating_2_count = rating_2_count - (CASE WHEN p_rating = 2 THEN 1 ELSE 0 END),
+            rating_3_count = rating_3_count - (CASE WHEN p_rating = 3 THEN 1 ELSE 0 END),
+            rating_4_count = rating_4_count - (CASE WHEN p_rating = 4 THEN 1 ELSE 0 END),
+            rating_5_count = rating_5_count - (CASE WHEN p_rating = 5 THEN 1 ELSE 0 END)
+        WHERE user_id = p_user_id AND month = log_month;
+    END IF;
+
+    FOREACH activity_day IN ARRAY ARRAY[p_start, p_end] LOOP
+        CONTINUE WHEN activity_day IS NULL;
+        IF direction > 0 THEN
+            INSERT INTO reading_stats_days AS d (user_id, day, activity_count)
+            VALUES (p_user_id, activity_day, 1)
+            ON CONFLICT (user_id, day) DO UPDATE SET activity_count = d.activity_count + 1;
+        ELSE
+            UPDATE reading_stats_days SET activity_count = activity_count - 1
+            WHERE user_id = p_user_id AND day = activity_day;
+            DELETE FROM reading_stats_days
+            WHERE user_id = p_user_id AND day = activity_day AND activity_count <= 0;
+        END IF;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- A log whose user book is already gone was taken out of the rollups by the user_books trigger
+-- below, which is why both lookups may find nothing
+CREATE OR REPLACE FUNCTION update_reading_stats() RETURNS TRIGGER AS $$
+DECLARE
+    owner_id INTEGER;
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        SELECT user_id INTO owner_id FROM user_books WHERE user_book_id = OLD.user_book_id;
+        IF owner_id IS NOT NULL THEN
+            PERFORM apply_reading_stats(owner_id, OLD.start_date, OLD.end_date, OLD.rating, -1);
+        END IF;
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        SELECT user_id INTO owner_id FROM user_books WHERE user_book_id = NEW.user_book_id;
+        IF owner_id IS NOT NULL THEN
+            PERFORM apply_reading_stats(owner_id, NEW.start_date, NEW.end_date, NEW.rating, 1);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_reading_logs_stats
+AFTER INSERT OR DELETE OR UPDATE OF user_book_id, start_date, end_date, rating ON reading_logs
+FOR EACH ROW EXECUTE FUNCTION update_reading_stats();
+
+-- Deleting a user book cascades to its logs, but by the time their triggers run the user book (and
+-- with it the owner) can no longer be looked up, so take its logs out of the rollups beforehand
+CREATE OR REPLACE FUNCTION remove_user_book_reading_stats() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM apply_reading_stats(OLD.user_id, rl.start_date, rl.end_date, rl.rating, -1)
+    FROM reading_logs rl WHERE rl.user_book_id = OLD.user_book_id;
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_user_books_reading_stats
+BEFORE DELETE ON user_books
+FOR EACH ROW EXECUTE FUNCTION remove_user_book_reading_stats();
+
+-- Delta sync behind GET /sync. A row's version is the id of the transaction that last wrote it.
+-- Transaction ids are handed out in start order, not commit order, so a client never resumes from
+-- the highest version it has seen: it resumes from the xmin of the snapshot it was answered from,
+-- below which every transaction had finished, and rows stamped at or above it are sent again.
+CREATE OR REPLACE FUNCTION stamp_sync_version() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.version := pg_current_xact_id()::text::bigint;
+    NEW.updated_at := now();
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_user_books_sync_version
+BEFORE INSERT OR UPDATE ON user_books
+FOR EACH ROW EXECUTE FUNCTION stamp_sync_version();
+
+CREATE TRIGGER trg_reading_logs_sync_version
+BEFORE INSERT OR UPDATE ON reading_logs
+FOR EACH ROW EXECUTE FUNCTION stamp_sync_version();
+
+-- Deleted user books and reading logs, so a sync can tell the client to drop them
+CREATE TABLE sync_tombstones (
+    entity VARCHAR(20) CHECK (entity IN ('user_book', 'reading_log')),
+    entity_id INTEGER,
+    user_id INTEGER NOT NULL REFERENCES users(user_id) ON DELETE CASCADE,
+    version BIGINT NOT NULL,
+    deleted_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (entity, entity_id)
+);
+
+CREATE INDEX idx_sync_tombstones_user ON sync_tombstones(user_id, version);
+
+-- A user book's logs go by cascade, after the user book (and with it the owner) can no longer be
+-- looked up, so their tombstones are written here. Nothing is recorded for a user who is being
+-- deleted, for the same reason as in update_user_library_stats.
+CREATE OR REPLACE FUNCTION record_user_book_tombstone() RETURNS TRIGGER AS $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM users WHERE user_id = OLD.user_id) THEN
+        INSERT INTO sync_tombstones (entity, entity_id, user_id, version)
+        SELECT 'reading_log', rl.log_id, OLD.user_id, pg_current_xact_id()::text::bigint
+        FROM reading_logs rl WHERE rl.user_book_id = OLD.user_book_id
+        ON CONFLICT DO NOTHING;
+        INSERT INTO sync_tombstones (entity, entity_id, user_id, version)
+        VALUES ('user_book', OLD.user_book_id, OLD.user_id, pg_current_xact_id()::text::bigint)
+        ON CONFLICT DO NOTHING;
+    END IF;
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_user_books_sync_tombstone
+BEFORE DELETE ON user_books
+FOR EACH ROW EXECUTE FUNCTION record_user_book_tombstone();
+
+-- Logs deleted along with their user book find no owner here and were recorded above
+CREATE OR REPLACE FUNCTION record_reading_log_tombstone() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO sync_tombstones (entity, entity_id, user_id, version)
+    SELECT 'reading_log', OLD.log_id, ub.user_id, pg_current_xact_id()::text::bigint
+    FROM user_books ub WHERE ub.user_book_id = OLD.user_book_id
+    ON CONFLICT DO NOTHING;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_reading_logs_sync_tombstone
+AFTER DELETE ON reading_logs
+FOR EACH ROW EXECUTE FUNCTION record_reading_log_tombstone();
+
+-- Synced user books and logs carry their book's title and author. Rather than re-stamping every
+-- row that shows a book when those change, which could be thousands, the book gets its own stamp
+-- and the sync also sends the rows of books stamped since the client's version.
+CREATE OR REPLACE FUNCTION stamp_book_sync_version() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.sync_version := pg_current_xact_id()::text::bigint;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_books_sync_version
+BEFORE UPDATE OF title, author ON books
+FOR EACH ROW WHEN (OLD.title IS DISTINCT FROM NEW.title OR OLD.author IS DISTINCT FROM NEW.author)
+EXECUTE FUNCTION stamp_book_sync_version();
+
+-- A user book's logs are few, so they are re-stamped when it is pointed at another book
+CREATE OR REPLACE FUNCTION touch_synced_logs_for_user_book() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE reading_logs SET updated_at = now() WHERE user_book_id = NEW.user_book_id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_user_books_sync_touch
+AFTER UPDATE OF book_id ON user_books
+FOR EACH ROW WHEN (OLD.book_id IS DISTINCT FROM NEW.book_id)
+EXECUTE FUNCTION touch_synced_logs_for_user_book();
+
 CREATE TABLE tags (
     tag_id SERIAL PRIMARY KEY,
     name VARCHAR(50) UNIQUE NOT NULL
@@ -71,6 +375,40 @@ CREATE TABLE book_tags (
 CREATE INDEX idx_book_tags_book ON book_tags(book_id);
 CREATE INDEX idx_book_tags_tag ON book_tags(tag_id);
 
+-- Local mirror of the Open Library catalog, loaded from their bulk data dumps.
+-- Keys are Open Library's own ids without the path prefix, e.g. OL45804W.
+CREATE TABLE ol_authors (
+    author_key VARCHAR(32) PRIMARY KEY,
+    name TEXT NOT NULL
+);
+
+CREATE TABLE ol_works (
+    work_key VARCHAR(32) PRIMARY KEY,
+    title TEXT NOT NULL,
+    author_key VARCHAR(32),
+    -- Copied from ol_authors when an import finishes, since dumps arrive in any order
+    author_name TEXT,
+    first_publish_year INTEGER,
+    cover_id INTEGER,
+    search_vector tsvector GENERATED ALWAYS AS (
+        setweight(to_tsvector('simple', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('simple', coalesce(author_name, '')), 'B')
+    ) STORED
+);
+
+CREATE INDEX idx_ol_works_search_vector ON ol_works USING GIN (search_vector);
+
+CREATE TABLE ol_editions (
+    edition_key VARCHAR(32) PRIMARY KEY,
+    work_key VARCHAR(32),
+    title TEXT NOT NULL,
+    isbn VARCHAR(20),
+    publish_year INTEGER,
+    cover_id INTEGER
+);
+
+CREATE INDEX idx_ol_editions_work ON ol_editions(work_key);
+
 -- Insert Users
 -- Password for all users is password
 INSERT INTO users (username, password_hash, role) VALUES
@@ -1,14 +1,144 @@
 package com.bookgoblin.server.config;
 
+import com.bookgoblin.server.service.CoverHostAllowList;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.apache.hc.client5.http.RedirectException;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.DefaultRedirectStrategy;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.time.Duration;
+
 @Configuration
 public class AppConfig {
 
+    /**
+     * Keep-alive connection pool for calls to Open Library. Every stage of a call is bounded:
+     * waiting for a pooled connection, connecting, and waiting for the response.
+     */
+    @Bean
+    public CloseableHttpClient openLibraryHttpClient(
+            @Value("${openlibrary.http.connect-timeout}") Duration connectTimeout,
+            @Value("${openlibrary.http.read-timeout}") Duration readTimeout,
+            @Value("${openlibrary.http.max-connections}") int maxConnections) {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .build();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(connectTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(maxConnections)
+                        .setMaxConnPerRoute(maxConnections)
+                        .setDefaultConnectionConfig(connectionConfig)
+                        .build())
+                .setDefaultRequestConfig(requestConfig)
+                // The circuit breaker decides when to try again; silent retries would double the load on a struggling upstream
+                .disableAutomaticRetries()
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate openLibraryRestTemplate(RestTemplateBuilder builder, CloseableHttpClient openLibraryHttpClient,
+                                                @Value("${openlibrary.base-url}") String baseUrl) {
+        return builder
+                .rootUri(baseUrl)
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(openLibraryHttpClient))
+                .build();
+    }
+
+    /**
+     * Connection pool for downloading cover images, kept apart from the Open Library pool so a page
+     * full of uncached covers cannot hold the connections that searches need. Covers are larger than
+     * search responses, so reads may take longer. Redirects are only followed to hosts on the cover
+     * allow-list.
+     */
+    @Bean
+    public CloseableHttpClient coverHttpClient(
+            @Value("${covers.http.connect-timeout}") Duration connectTimeout,
+            @Value("${covers.http.read-timeout}") Duration readTimeout,
+            @Value("${covers.download.max-concurrent}") int maxConnections,
+            CoverHostAllowList allowedHosts) {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .build();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(connectTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(maxConnections)
+                        .setMaxConnPerRoute(maxConnections)
+                        .setDefaultConnectionConfig(connectionConfig)
+                        .build())
+                .setDefaultRequestConfig(requestConfig)
+                .setRedirectStrategy(new DefaultRedirectStrategy() {
+                    @Override
+                    public URI getLocationURI(HttpRequest request, HttpResponse response, HttpContext context)
+                            throws HttpException {
+                        URI location = super.getLocationURI(request, response, context);
+                        if (!allowedHosts.isAllowed(location)) {
+                            throw new RedirectException("Redirect to " + location.getHost() + " is not allowed");
+                        }
+                        return location;
+                    }
+                })
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build();
+    }
+
+    /**
+     * Fetches cover images from absolute URLs.
+     */
+    @Bean
+    public RestTemplate coverRestTemplate(RestTemplateBuilder builder, CloseableHttpClient coverHttpClient) {
+        return builder
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(coverHttpClient))
+                .build();
+    }
+
+    /**
+     * CBOR (application/cbor) and Smile (application/x-jackson-smile) alongside JSON for clients that
+     * ask for them in Accept. Spring would add both converters by itself, but with bare mappers;
+     * these are built from Boot's builder so dates and other settings match the JSON output. The
+     * builder's static cbor() and smile() start a new, unconfigured builder, so the format is set
+     * through factory() instead.
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
     }
-}
\ No newline at end of file
+}
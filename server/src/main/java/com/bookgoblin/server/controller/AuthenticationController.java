@@ -3,6 +3,7 @@ package com.bookgoblin.server.controller;
 
 import com.bookgoblin.server.dao.UserDao;
 import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.exception.PasswordHashingUnavailableException;
 import com.bookgoblin.server.model.LoginDto;
 import com.bookgoblin.server.model.LoginResponseDto;
 import com.bookgoblin.server.model.RegisterUserDto;
@@ -53,6 +54,9 @@ public class AuthenticationController {
 
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
         }
+        catch (PasswordHashingUnavailableException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many login attempts in progress, try again shortly");
+        }
         catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
@@ -67,13 +71,21 @@ public class AuthenticationController {
         }
 
         try {
-            if (userDao.getUserByUsername(newUser.getUsername()) != null) {
+            // Checked up front so a taken name costs a lookup rather than a password hash
+            if (userDao.isUsernameTaken(newUser.getUsername())) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User already exists.");
             }
 
             User user = userDao.createUser(new User(newUser.getUsername(), newUser.getPassword(), newUser.getRole()));
+            if (user == null) {
+                // Taken between the check and the insert
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User already exists.");
+            }
             return user;
         }
+        catch (PasswordHashingUnavailableException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many registrations in progress, try again shortly");
+        }
         catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
@@ -2,35 +2,107 @@ package com.bookgoblin.server.controller;
 
 
 import com.bookgoblin.server.dao.BookDao;
+import com.bookgoblin.server.dao.TagDao;
 import com.bookgoblin.server.exception.DaoException;
 import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.BookCursor;
+import com.bookgoblin.server.model.BookImportResult;
+import com.bookgoblin.server.model.BookSearchResult;
+import com.bookgoblin.server.model.SearchCursor;
+import com.bookgoblin.server.model.Suggestion;
+import com.bookgoblin.server.model.Tag;
+import com.bookgoblin.server.service.BookImportService;
+import com.bookgoblin.server.service.BookSearchIndex;
+import com.bookgoblin.server.service.ResourceVersions;
+import com.bookgoblin.server.service.SuggestionIndex;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @RestController
-@CrossOrigin
+@CrossOrigin(exposedHeaders = {BookController.NEXT_CURSOR_HEADER, BookController.TOTAL_COUNT_HEADER})
 @RequestMapping("/books")
 public class BookController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final BookDao bookDao;
+    private final TagDao tagDao;
+    private final BookSearchIndex bookSearchIndex;
+    private final SuggestionIndex suggestionIndex;
+    private final BookImportService bookImportService;
+    private final ResourceVersions resourceVersions;
+    private final ResponseFormats responseFormats;
+    private final int maxSearchResults;
 
-    public BookController(BookDao bookDao) {
+    public BookController(BookDao bookDao, TagDao tagDao, BookSearchIndex bookSearchIndex,
+                          SuggestionIndex suggestionIndex, BookImportService bookImportService,
+                          ResourceVersions resourceVersions, ResponseFormats responseFormats,
+                          @Value("${books.search.max-results}") int maxSearchResults) {
         this.bookDao = bookDao;
+        this.tagDao = tagDao;
+        this.bookSearchIndex = bookSearchIndex;
+        this.suggestionIndex = suggestionIndex;
+        this.bookImportService = bookImportService;
+        this.resourceVersions = resourceVersions;
+        this.responseFormats = responseFormats;
+        this.maxSearchResults = maxSearchResults;
     }
 
+    /**
+     * Streams the whole catalog as an array, row by row, as it comes off the database cursor. The
+     * array is JSON, CBOR or Smile according to the Accept header.
+     * With includeTags, each book carries its tags, looked up a few hundred books at a time.
+     * Answers 304 without touching the database when If-None-Match has the current version.
+     */
     @GetMapping
-    public List<Book> getAllBooks() {
-        try {
-            return bookDao.getBooks();
-        } catch (DaoException e) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+    public ResponseEntity<StreamingResponseBody> getAllBooks(
+            @RequestParam(defaultValue = "false") boolean includeTags, NativeWebRequest request) {
+        ResponseFormats.Format format = responseFormats.negotiate(request);
+        String etag = format.tag(resourceVersions.getBooksTag(includeTags));
+        ResponseEntity<StreamingResponseBody> notModified = ConditionalGet.notModified(request, etag, ConditionalGet.SHARED);
+        if (notModified != null) {
+            return notModified;
+        }
+        return streamBooks(null, null, includeTags, format, etag);
+    }
+
+    /**
+     * Returns one page of the catalog. When more rows may follow, the X-Next-Cursor header carries
+     * the token to pass back as "after". Conditional like the full listing.
+     */
+    @GetMapping(params = "limit")
+    public ResponseEntity<List<Book>> getBooksPage(@RequestParam int limit,
+                                                   @RequestParam(required = false) String after,
+                                                   @RequestParam(defaultValue = "false") boolean includeTags,
+                                                   NativeWebRequest request) {
+        String etag = responseFormats.negotiate(request).tag(resourceVersions.getBooksTag(includeTags));
+        ResponseEntity<List<Book>> notModified = ConditionalGet.notModified(request, etag, ConditionalGet.SHARED);
+        if (notModified != null) {
+            return notModified;
         }
+        return pageBooks(null, null, limit, after, includeTags, etag);
     }
 
     @GetMapping("/{id}")
@@ -46,24 +118,109 @@ public class BookController {
         }
     }
 
+    /**
+     * Searches by title and/or author. Served from the in-memory search index: every term must occur
+     * in its field, the last one as a prefix, and books come best match first. The index returns at
+     * most books.search.max-results books; X-Total-Count says how many matched, so a client can tell
+     * the list was cut short.
+     *
+     * Until the index has been built, and for terms it cannot look up (punctuation only), the
+     * database answers instead: each field matches as a case-insensitive substring, and books come
+     * in title order. The paged form below follows the same rules.
+     */
     @GetMapping("/search")
-    public List<Book> searchBooks(@RequestParam(required = false) String title,
-                                  @RequestParam(required = false) String author) {
+    public ResponseEntity<StreamingResponseBody> searchBooks(@RequestParam(required = false) String title,
+                                                             @RequestParam(required = false) String author,
+                                                             @RequestParam(defaultValue = "false") boolean includeTags,
+                                                             NativeWebRequest request) {
+        ResponseFormats.Format format = responseFormats.negotiate(request);
+        if ((title == null && author == null) || !bookSearchIndex.isReady()
+                || !bookSearchIndex.canSearch(title, author)) {
+            return streamBooks(title, author, includeTags, format, null);
+        }
+
         try {
-            if (title != null && author != null) {
-                return bookDao.getBooksByTitleAndAuthor(title, author);
-            } else if (title != null) {
-                return bookDao.getBooksByTitle(title);
-            } else if (author != null) {
-                return bookDao.getBooksByAuthor(author);
-            } else {
-                return bookDao.getBooks();
+            BookSearchIndex.Hits hits = bookSearchIndex.search(title, author, maxSearchResults);
+            List<Book> books = bookDao.getBooksByIds(hits.getBookIds());
+            return streamArray(books::forEach, includeTags, format,
+                    ResponseEntity.ok().header(TOTAL_COUNT_HEADER, String.valueOf(hits.getTotal())));
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+
+    /**
+     * One page of {@link #searchBooks}, in the same order, with no cap on how far a client can page.
+     * X-Total-Count says how many books matched; X-Next-Cursor carries the token for the next page
+     * while there is one. Cursors from the index and from the database fallback are not
+     * interchangeable, so a client whose cursor is refused should start over.
+     */
+    @GetMapping(path = "/search", params = "limit")
+    public ResponseEntity<List<Book>> searchBooksPage(@RequestParam(required = false) String title,
+                                                      @RequestParam(required = false) String author,
+                                                      @RequestParam int limit,
+                                                      @RequestParam(required = false) String after,
+                                                      @RequestParam(defaultValue = "false") boolean includeTags) {
+        if ((title == null && author == null) || !bookSearchIndex.isReady()
+                || !bookSearchIndex.canSearch(title, author)) {
+            return pageBooks(title, author, limit, after, includeTags, null);
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        SearchCursor cursor = null;
+        if (after != null) {
+            try {
+                cursor = SearchCursor.decode(after);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
             }
+        }
+
+        try {
+            BookSearchIndex.Hits hits = bookSearchIndex.search(title, author, limit, cursor);
+            List<Book> books = bookDao.getBooksByIds(hits.getBookIds());
+            if (includeTags) {
+                attachTags(books);
+            }
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .header(TOTAL_COUNT_HEADER, String.valueOf(hits.getTotal()));
+            if (hits.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, hits.getNextCursor().encode());
+            }
+            return response.body(books);
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Relevance-ranked search handled entirely by the database's full-text and trigram indexes.
+     */
+    @GetMapping("/search/ranked")
+    public List<BookSearchResult> searchBooksRanked(@RequestParam String q,
+                                                    @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        try {
+            return bookDao.searchBooksRanked(q, limit);
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
     }
 
+    /**
+     * Typeahead completions for titles and authors starting with the prefix, most popular first.
+     */
+    @GetMapping("/suggest")
+    public List<Suggestion> suggest(@RequestParam String prefix,
+                                    @RequestParam(defaultValue = "" + SuggestionIndex.MAX_SUGGESTIONS) int limit) {
+        return suggestionIndex.suggest(prefix, Math.min(Math.max(limit, 1), SuggestionIndex.MAX_SUGGESTIONS));
+    }
+
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     @PreAuthorize("hasRole('ADMIN')")
@@ -75,6 +232,36 @@ public class BookController {
         }
     }
 
+    /**
+     * Bulk import from newline-delimited JSON, one book per line. Books whose ISBN is already in the
+     * catalog are updated in place. The body is read as it arrives rather than buffered. The response
+     * counts inserted, updated and rejected rows, and lists the book id of each row that updated or was
+     * superseded and why each row was rejected.
+     */
+    @PostMapping(path = "/batch", consumes = NDJSON)
+    @PreAuthorize("hasRole('ADMIN')")
+    public BookImportResult importBooksNdjson(InputStream body) throws IOException {
+        try {
+            return bookImportService.importNdjson(body);
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bulk import from CSV. The header row names the columns: title, author, isbn, coverImageUrl
+     * and publicationYear, in any order.
+     */
+    @PostMapping(path = "/batch", consumes = CSV)
+    @PreAuthorize("hasRole('ADMIN')")
+    public BookImportResult importBooksCsv(InputStream body) throws IOException {
+        try {
+            return bookImportService.importCsv(body);
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+
     @PutMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public Book updateBook(@PathVariable int id, @Valid @RequestBody Book book) {
@@ -102,4 +289,102 @@ public class BookController {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
     }
+
+    private ResponseEntity<List<Book>> pageBooks(String title, String author, int limit, String after,
+                                                 boolean includeTags, String etag) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        BookCursor cursor = null;
+        if (after != null) {
+            try {
+                cursor = BookCursor.decode(after);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+            }
+        }
+
+        try {
+            List<Book> books = bookDao.getBooksPage(title, author, cursor, limit);
+            if (includeTags) {
+                attachTags(books);
+            }
+            ResponseEntity.BodyBuilder response = ok(etag);
+            if (books.size() == limit) {
+                response.header(NEXT_CURSOR_HEADER, BookCursor.of(books.get(books.size() - 1)).encode());
+            }
+            return response.body(books);
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamBooks(String title, String author, boolean includeTags,
+                                                              ResponseFormats.Format format, String etag) {
+        return streamArray(sink -> bookDao.streamBooks(title, author, sink), includeTags, format, ok(etag));
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamArray(Consumer<Consumer<Book>> source, boolean includeTags,
+                                                              ResponseFormats.Format format,
+                                                              ResponseEntity.BodyBuilder response) {
+        ObjectWriter writer = format.getWriter();
+        StreamingResponseBody body = out -> {
+            // CBOR and Smile generators are JsonGenerators too, so one writing loop serves every format
+            try (JsonGenerator generator = writer.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                if (includeTags) {
+                    // Hold back a page of books at a time so their tags come from one query
+                    List<Book> batch = new ArrayList<>(MAX_PAGE_SIZE);
+                    source.accept(book -> {
+                        batch.add(book);
+                        if (batch.size() == MAX_PAGE_SIZE) {
+                            writeTaggedBooks(writer, generator, batch);
+                        }
+                    });
+                    writeTaggedBooks(writer, generator, batch);
+                } else {
+                    source.accept(book -> writeBook(writer, generator, book));
+                }
+                generator.writeEndArray();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return response.contentType(format.getMediaType()).body(body);
+    }
+
+    /**
+     * A 200 response, carrying the ETag and revalidation headers when the listing has one.
+     */
+    private static ResponseEntity.BodyBuilder ok(String etag) {
+        return etag != null ? ConditionalGet.ok(etag, ConditionalGet.SHARED) : ResponseEntity.ok();
+    }
+
+    private void writeTaggedBooks(ObjectWriter writer, JsonGenerator generator, List<Book> books) {
+        attachTags(books);
+        for (Book book : books) {
+            writeBook(writer, generator, book);
+        }
+        books.clear();
+    }
+
+    private void attachTags(List<Book> books) {
+        if (books.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<Tag>> tags = tagDao.getTagsByBookIds(books.stream().map(Book::getBookId).toList());
+        for (Book book : books) {
+            book.setTags(tags.get(book.getBookId()));
+        }
+    }
+
+    private static void writeBook(ObjectWriter writer, JsonGenerator generator, Book book) {
+        try {
+            writer.writeValue(generator, book);
+        } catch (IOException e) {
+            // Usually the client went away; unwinding here also closes the database cursor
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package com.bookgoblin.server.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Conditional GET for listings whose ETag comes from {@link com.bookgoblin.server.service.ResourceVersions}
+ * rather than from the response body, so a matching If-None-Match is answered before any query.
+ *
+ * Responses say no-cache rather than the no-store Spring Security sends by default, so the
+ * browser keeps the body and revalidates it on the next visit, and vary by Accept since the same
+ * listing can come as JSON, CBOR or Smile. Work out the ETag before reading the data: a write that
+ * lands in between then costs one extra download instead of a stale page.
+ */
+final class ConditionalGet {
+
+    static final CacheControl SHARED = CacheControl.noCache();
+    static final CacheControl PRIVATE = CacheControl.noCache().cachePrivate();
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * A 304 response if the request already has the current version, otherwise null.
+     */
+    static <T> ResponseEntity<T> notModified(WebRequest request, String etag, CacheControl cacheControl) {
+        if (!matches(request.getHeaderValues(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return null;
+        }
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT).build();
+    }
+
+    /**
+     * A 200 response carrying the ETag it was read under.
+     */
+    static ResponseEntity.BodyBuilder ok(String etag, CacheControl cacheControl) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(cacheControl).varyBy(HttpHeaders.ACCEPT);
+    }
+
+    // WebRequest.checkNotModified would do the matching too, but it also writes its own ETag header,
+    // which the streamed listings then send twice
+    private static boolean matches(String[] ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String header : ifNoneMatch) {
+            for (String candidate : header.split(",")) {
+                candidate = candidate.strip();
+                // If-None-Match uses weak comparison
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
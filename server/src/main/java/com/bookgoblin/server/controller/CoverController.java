@@ -0,0 +1,108 @@
+package com.bookgoblin.server.controller;
+
+import com.bookgoblin.server.dao.BookDao;
+import com.bookgoblin.server.exception.CoverImageException;
+import com.bookgoblin.server.exception.CoverImageUnavailableException;
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.CoverImage;
+import com.bookgoblin.server.service.CoverImageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Serves book covers from the local cover cache, so pages never load images from a third party.
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/covers")
+public class CoverController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoverController.class);
+
+    // Tomcat's sendfile hooks: the connector copies the file to the socket itself once the request completes
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final BookDao bookDao;
+    private final CoverImageService coverImageService;
+    private final String cacheControl;
+
+    public CoverController(BookDao bookDao, CoverImageService coverImageService,
+                           @Value("${covers.http.max-age}") Duration maxAge) {
+        this.bookDao = bookDao;
+        this.coverImageService = coverImageService;
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePublic().getHeaderValue();
+    }
+
+    /**
+     * Returns a book's cover image. Browsers may keep it for covers.http.max-age and then
+     * revalidate with If-None-Match; the ETag changes when the book's cover URL does.
+     * @param size small or medium for a JPEG thumbnail, original for the image as published
+     */
+    @GetMapping("/{bookId}")
+    public void getCover(@PathVariable int bookId, @RequestParam(defaultValue = "medium") String size,
+                         WebRequest webRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        CoverImageService.Size coverSize;
+        try {
+            coverSize = CoverImageService.Size.valueOf(size.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be small, medium or original");
+        }
+
+        Book book;
+        try {
+            book = bookDao.getBookById(bookId);
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+        String etag = book == null ? null : coverImageService.getETag(book, coverSize);
+        if (etag == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Cover not found");
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (webRequest.checkNotModified(etag)) {
+            return;
+        }
+
+        CoverImage cover;
+        try {
+            cover = coverImageService.getCover(book, coverSize);
+        } catch (CoverImageException e) {
+            LOG.warn(e.getMessage());
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Cover could not be fetched");
+        } catch (CoverImageUnavailableException e) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many covers being fetched, try again shortly");
+        }
+
+        response.setContentType(cover.getContentType().toString());
+        response.setContentLengthLong(cover.getLength());
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, cover.getFile().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, cover.getLength());
+        } else {
+            Files.copy(cover.getFile(), response.getOutputStream());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.bookgoblin.server.controller;
+
+import com.bookgoblin.server.dao.CachingBookDao;
+import com.bookgoblin.server.dao.CachingUserDao;
+import com.bookgoblin.server.model.CacheStatistics;
+import com.bookgoblin.server.model.OpenLibraryHealth;
+import com.bookgoblin.server.model.PasswordHashingStats;
+import com.bookgoblin.server.model.SuggestionIndexStats;
+import com.bookgoblin.server.security.BoundedPasswordEncoder;
+import com.bookgoblin.server.security.jwt.TokenProvider;
+import com.bookgoblin.server.service.OpenLibraryService;
+import com.bookgoblin.server.service.SuggestionIndex;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Read-only operational numbers for the in-memory structures and caches, for admins.
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/metrics")
+@PreAuthorize("hasRole('ADMIN')")
+public class MetricsController {
+
+    private final SuggestionIndex suggestionIndex;
+    private final ObjectProvider<CachingBookDao> cachingBookDao;
+    private final ObjectProvider<CachingUserDao> cachingUserDao;
+    private final OpenLibraryService openLibraryService;
+    private final TokenProvider tokenProvider;
+    private final BoundedPasswordEncoder passwordEncoder;
+
+    public MetricsController(SuggestionIndex suggestionIndex, ObjectProvider<CachingBookDao> cachingBookDao,
+                             ObjectProvider<CachingUserDao> cachingUserDao, OpenLibraryService openLibraryService, TokenProvider tokenProvider,
+                             BoundedPasswordEncoder passwordEncoder) {
+        this.suggestionIndex = suggestionIndex;
+        this.cachingBookDao = cachingBookDao;
+        this.cachingUserDao = cachingUserDao;
+        this.openLibraryService = openLibraryService;
+        this.tokenProvider = tokenProvider;
+        this.passwordEncoder = passwordEncoder;
+    }
+
+    @GetMapping("/suggestions")
+    public SuggestionIndexStats getSuggestionIndexStats() {
+        return suggestionIndex.getStats();
+    }
+
+    @GetMapping("/book-cache")
+    public CacheStatistics getBookCacheStatistics() {
+        CachingBookDao cache = cachingBookDao.getIfAvailable();
+        if (cache == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Book cache is disabled");
+        }
+        return cache.getStatistics();
+    }
+
+    @GetMapping("/users")
+    public CacheStatistics getUserCacheStatistics() {
+        CachingUserDao cache = cachingUserDao.getIfAvailable();
+        if (cache == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User cache is disabled");
+        }
+        return cache.getStatistics();
+    }
+
+    /**
+     * Open Library search cache. loadCount is the number of calls made to openlibrary.org.
+     */
+    @GetMapping("/openlibrary")
+    public CacheStatistics getOpenLibraryStatistics() {
+        return openLibraryService.getStatistics();
+    }
+
+    @GetMapping("/openlibrary/health")
+    public OpenLibraryHealth getOpenLibraryHealth() {
+        return openLibraryService.getHealth();
+    }
+
+    /**
+     * Verified JWT cache. Each miss is one signature verification.
+     */
+    @GetMapping("/tokens")
+    public CacheStatistics getTokenCacheStatistics() {
+        return tokenProvider.getStatistics();
+    }
+
+    @GetMapping("/password-hashing")
+    public PasswordHashingStats getPasswordHashingStats() {
+        return passwordEncoder.getStats();
+    }
+}
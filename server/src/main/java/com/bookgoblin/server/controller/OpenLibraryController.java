@@ -1,29 +1,72 @@
 package com.bookgoblin.server.controller;
 
 import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.OpenLibraryImportStatus;
+import com.bookgoblin.server.service.OpenLibraryDumpImporter;
 import com.bookgoblin.server.service.OpenLibraryService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
-@CrossOrigin
+@CrossOrigin(exposedHeaders = OpenLibraryController.DEGRADED_HEADER)
 @RequestMapping("/api/openlibrary") // Distinct path for Open Library operations
 public class OpenLibraryController {
 
+    public static final String DEGRADED_HEADER = "X-Degraded";
+
     private final OpenLibraryService openLibraryService;
+    private final OpenLibraryDumpImporter dumpImporter;
 
-    public OpenLibraryController(OpenLibraryService openLibraryService) {
+    public OpenLibraryController(OpenLibraryService openLibraryService, OpenLibraryDumpImporter dumpImporter) {
         this.openLibraryService = openLibraryService;
+        this.dumpImporter = dumpImporter;
     }
 
     /**
-     * Searches the Open Library API.
+     * Searches the Open Library API. The request thread is released while the search runs.
+     * If Open Library could not be reached the response carries X-Degraded: true and holds
+     * the last results seen for the query, possibly none.
      * @param query The search query
      * @return A list of books from Open Library (not yet saved to our DB)
      */
     @GetMapping("/search")
-    public List<Book> searchOpenLibrary(@RequestParam String query) {
-        return openLibraryService.searchBooks(query);
+    public CompletableFuture<ResponseEntity<List<Book>>> searchOpenLibrary(@RequestParam String query) {
+        return openLibraryService.searchBooks(query).thenApply(result -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (result.isDegraded()) {
+                response.header(DEGRADED_HEADER, "true");
+            }
+            return response.body(result.getBooks());
+        });
+    }
+
+    /**
+     * Starts loading an Open Library data dump into the local mirror. The import runs in the
+     * background; poll GET /mirror/import for progress.
+     * @param file Name of the dump file in the configured dump directory, gzipped or not
+     */
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping("/mirror/import")
+    @PreAuthorize("hasRole('ADMIN')")
+    public OpenLibraryImportStatus importDump(@RequestParam String file) {
+        try {
+            return dumpImporter.start(file);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    @GetMapping("/mirror/import")
+    @PreAuthorize("hasRole('ADMIN')")
+    public OpenLibraryImportStatus getImportStatus() {
+        return dumpImporter.getStatus();
     }
-}
\ No newline at end of file
+}
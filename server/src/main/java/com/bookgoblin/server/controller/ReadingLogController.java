@@ -3,15 +3,20 @@ package com.bookgoblin.server.controller;
 
 import com.bookgoblin.server.dao.ReadingLogDao;
 import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.OwnedMutation;
 import com.bookgoblin.server.model.ReadingLog;
+import com.bookgoblin.server.security.AuthenticatedUser;
+import com.bookgoblin.server.service.ResourceVersions;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 
-import java.security.Principal;
 import java.util.List;
 
 @RestController
@@ -20,21 +25,36 @@ import java.util.List;
 public class ReadingLogController {
 
     private final ReadingLogDao readingLogDao;
+    private final ResourceVersions resourceVersions;
+    private final ResponseFormats responseFormats;
 
-    public ReadingLogController(ReadingLogDao readingLogDao) {
+    public ReadingLogController(ReadingLogDao readingLogDao, ResourceVersions resourceVersions,
+                                ResponseFormats responseFormats) {
         this.readingLogDao = readingLogDao;
+        this.resourceVersions = resourceVersions;
+        this.responseFormats = responseFormats;
     }
 
+    /**
+     * The logs on one of the caller's user books. Answers 304 without touching the database when
+     * If-None-Match has the current version.
+     */
     @GetMapping("/user-book/{userBookId}")
     @PreAuthorize("isAuthenticated()")
-    public List<ReadingLog> getReadingLogsByUserBookId(@PathVariable int userBookId, Principal principal) {
+    public ResponseEntity<List<ReadingLog>> getReadingLogsByUserBookId(@PathVariable int userBookId,
+                                                                       @AuthenticationPrincipal AuthenticatedUser user,
+                                                                       NativeWebRequest request) {
+        String etag = responseFormats.negotiate(request)
+                .tag(resourceVersions.getReadingLogsTag(user.getUserId(), userBookId));
+        ResponseEntity<List<ReadingLog>> notModified = ConditionalGet.notModified(request, etag, ConditionalGet.PRIVATE);
+        if (notModified != null) {
+            return notModified;
+        }
         try {
-            // Verify the user has access to this user book
-            if (!readingLogDao.hasUserAccessToUserBook(principal.getName(), userBookId)) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
-            }
-
-            return readingLogDao.getReadingLogsByUserBookId(userBookId);
+            OwnedMutation<List<ReadingLog>> result =
+                    readingLogDao.getReadingLogsByUserBookId(userBookId, user.getUserId());
+            checkOwnership(result, "User book not found");
+            return ConditionalGet.ok(etag, ConditionalGet.PRIVATE).body(result.getValue());
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
@@ -42,19 +62,11 @@ public class ReadingLogController {
 
     @GetMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    public ReadingLog getReadingLogById(@PathVariable int id, Principal principal) {
+    public ReadingLog getReadingLogById(@PathVariable int id, @AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            ReadingLog readingLog = readingLogDao.getReadingLogById(id);
-            if (readingLog == null) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Reading log not found");
-            }
-
-            // Verify the user has access to this reading log
-            if (!readingLogDao.hasUserAccessToReadingLog(principal.getName(), id)) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
-            }
-
-            return readingLog;
+            OwnedMutation<ReadingLog> result = readingLogDao.getReadingLogById(id, user.getUserId());
+            checkOwnership(result, "Reading log not found");
+            return result.getValue();
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
@@ -63,14 +75,12 @@ public class ReadingLogController {
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     @PreAuthorize("isAuthenticated()")
-    public ReadingLog createReadingLog(@Valid @RequestBody ReadingLog readingLog, Principal principal) {
+    public ReadingLog createReadingLog(@Valid @RequestBody ReadingLog readingLog,
+                                       @AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            // Verify the user has access to the user book
-            if (!readingLogDao.hasUserAccessToUserBook(principal.getName(), readingLog.getUserBookId())) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
-            }
-
-            return readingLogDao.createReadingLog(readingLog);
+            OwnedMutation<ReadingLog> result = readingLogDao.createReadingLog(readingLog, user.getUserId());
+            checkOwnership(result, "User book not found");
+            return result.getValue();
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
@@ -78,21 +88,13 @@ public class ReadingLogController {
 
     @PutMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    public ReadingLog updateReadingLog(@PathVariable int id, @Valid @RequestBody ReadingLog readingLog, Principal principal) {
+    public ReadingLog updateReadingLog(@PathVariable int id, @Valid @RequestBody ReadingLog readingLog,
+                                       @AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            // Verify the user has access to this reading log
-            if (!readingLogDao.hasUserAccessToReadingLog(principal.getName(), id)) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
-            }
-
             readingLog.setLogId(id);
-            ReadingLog updatedReadingLog = readingLogDao.updateReadingLog(readingLog);
-
-            if (updatedReadingLog == null) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Reading log not found");
-            }
-
-            return updatedReadingLog;
+            OwnedMutation<ReadingLog> result = readingLogDao.updateReadingLog(readingLog, user.getUserId());
+            checkOwnership(result, "Reading log not found");
+            return result.getValue();
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
@@ -101,18 +103,20 @@ public class ReadingLogController {
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @PreAuthorize("isAuthenticated()")
-    public void deleteReadingLog(@PathVariable int id, Principal principal) {
+    public void deleteReadingLog(@PathVariable int id, @AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            // Verify the user has access to this reading log
-            if (!readingLogDao.hasUserAccessToReadingLog(principal.getName(), id)) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
-            }
-
-            if (!readingLogDao.deleteReadingLog(id)) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Reading log not found");
-            }
+            checkOwnership(readingLogDao.deleteReadingLog(id, user.getUserId()), "Reading log not found");
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
     }
+
+    private void checkOwnership(OwnedMutation<?> result, String notFoundMessage) {
+        if (result.getStatus() == OwnedMutation.Status.NOT_FOUND) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, notFoundMessage);
+        }
+        if (result.getStatus() == OwnedMutation.Status.FORBIDDEN) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package com.bookgoblin.server.controller;
+
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.ReadingStats;
+import com.bookgoblin.server.model.ReadingStatsBackfillStatus;
+import com.bookgoblin.server.security.AuthenticatedUser;
+import com.bookgoblin.server.service.ReadingStatsBackfill;
+import com.bookgoblin.server.service.ReadingStatsService;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@CrossOrigin
+@RequestMapping("/reading-stats")
+public class ReadingStatsController {
+
+    private final ReadingStatsService readingStatsService;
+    private final ReadingStatsBackfill backfill;
+
+    public ReadingStatsController(ReadingStatsService readingStatsService, ReadingStatsBackfill backfill) {
+        this.readingStatsService = readingStatsService;
+        this.backfill = backfill;
+    }
+
+    @GetMapping
+    @PreAuthorize("isAuthenticated()")
+    public ReadingStats getReadingStats(@AuthenticationPrincipal AuthenticatedUser user) {
+        try {
+            return readingStatsService.getStats(user.getUserId());
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recomputes every user's statistics from their reading logs. Runs in the background; poll
+     * GET /backfill for progress.
+     */
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping("/backfill")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ReadingStatsBackfillStatus startBackfill() {
+        try {
+            return backfill.start();
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    @GetMapping("/backfill")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ReadingStatsBackfillStatus getBackfillStatus() {
+        return backfill.getStatus();
+    }
+}
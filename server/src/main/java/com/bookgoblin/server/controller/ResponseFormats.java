@@ -0,0 +1,100 @@
+package com.bookgoblin.server.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * The formats list endpoints can answer in: JSON, CBOR and Smile, chosen by the Accept header.
+ *
+ * Responses built by message converters are negotiated by Spring. This does the same negotiation
+ * up front, for the listings that write their own output as it streams and for the ETags, which
+ * have to differ between representations of the same data.
+ */
+@Component
+public class ResponseFormats {
+
+    public static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+    public static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    private final ContentNegotiationManager contentNegotiationManager;
+    // JSON first, so that */* and a missing Accept header get JSON, as they do from the converters
+    private final List<Format> formats;
+
+    public ResponseFormats(ContentNegotiationManager contentNegotiationManager, ObjectMapper objectMapper,
+                           MappingJackson2CborHttpMessageConverter cborConverter,
+                           MappingJackson2SmileHttpMessageConverter smileConverter) {
+        this.contentNegotiationManager = contentNegotiationManager;
+        this.formats = List.of(
+                new Format(MediaType.APPLICATION_JSON, objectMapper, null),
+                new Format(CBOR, cborConverter.getObjectMapper(), "cbor"),
+                new Format(SMILE, smileConverter.getObjectMapper(), "smile"));
+    }
+
+    /**
+     * The format to answer in, taking the acceptable types in order of preference.
+     *
+     * @throws ResponseStatusException 406 if none of the formats is acceptable
+     */
+    public Format negotiate(NativeWebRequest request) {
+        List<MediaType> acceptable;
+        try {
+            acceptable = contentNegotiationManager.resolveMediaTypes(request);
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, e.getMessage());
+        }
+        for (MediaType type : acceptable) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            for (Format format : formats) {
+                if (type.isCompatibleWith(format.mediaType)) {
+                    return format;
+                }
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Supported formats are JSON, CBOR and Smile");
+    }
+
+    public static final class Format {
+        private final MediaType mediaType;
+        private final ObjectWriter writer;
+        private final String tagSuffix;
+
+        Format(MediaType mediaType, ObjectMapper mapper, String tagSuffix) {
+            this.mediaType = mediaType;
+            // Let the servlet buffer decide when to hit the socket rather than flushing after every row
+            this.writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            this.tagSuffix = tagSuffix;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        public ObjectWriter getWriter() {
+            return writer;
+        }
+
+        /**
+         * The ETag for this format's representation of a version; JSON keeps the version's own tag.
+         */
+        public String tag(String etag) {
+            if (tagSuffix == null) {
+                return etag;
+            }
+            return etag.substring(0, etag.length() - 1) + "." + tagSuffix + "\"";
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.bookgoblin.server.controller;
+
+
+import com.bookgoblin.server.dao.SyncDao;
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.SyncChanges;
+import com.bookgoblin.server.security.AuthenticatedUser;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@CrossOrigin
+@RequestMapping("/sync")
+public class SyncController {
+
+    private final SyncDao syncDao;
+
+    public SyncController(SyncDao syncDao) {
+        this.syncDao = syncDao;
+    }
+
+    /**
+     * The caller's user books and reading logs changed since the version returned by their last
+     * sync, and the ids of those deleted. Without "since" the response is the full set, marked so.
+     */
+    @GetMapping
+    @PreAuthorize("isAuthenticated()")
+    public SyncChanges getChanges(@RequestParam(required = false) Long since,
+                                  @AuthenticationPrincipal AuthenticatedUser user) {
+        if (since != null && since < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "since must not be negative");
+        }
+        try {
+            return syncDao.getChanges(user.getUserId(), since);
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+}
@@ -1,32 +1,67 @@
 package com.bookgoblin.server.controller;
 
+import com.bookgoblin.server.dao.BookDao;
 import com.bookgoblin.server.dao.TagDao;
 import com.bookgoblin.server.exception.DaoException;
 import com.bookgoblin.server.model.Tag;
+import com.bookgoblin.server.model.TagFilterResult;
+import com.bookgoblin.server.service.TagCatalog;
+import com.bookgoblin.server.service.TagFilterIndex;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
-@CrossOrigin
+@CrossOrigin(exposedHeaders = TagController.TAGS_VERSION_HEADER)
 @RequestMapping("/tags")
 public class TagController {
 
+    public static final String TAGS_VERSION_HEADER = "X-Tags-Version";
+
+    private static final int MAX_BULK_BOOK_IDS = 500;
+    private static final int MAX_FILTER_PAGE_SIZE = 500;
+
     private final TagDao tagDao;
+    private final BookDao bookDao;
+    private final TagFilterIndex tagFilterIndex;
+    private final TagCatalog tagCatalog;
+    private final ResponseFormats responseFormats;
 
-    public TagController(TagDao tagDao) {
+    public TagController(TagDao tagDao, BookDao bookDao, TagFilterIndex tagFilterIndex, TagCatalog tagCatalog,
+                         ResponseFormats responseFormats) {
         this.tagDao = tagDao;
+        this.bookDao = bookDao;
+        this.tagFilterIndex = tagFilterIndex;
+        this.tagCatalog = tagCatalog;
+        this.responseFormats = responseFormats;
     }
 
+    /**
+     * Every tag with its book count, ordered by name, served from the in-memory catalog. The
+     * catalog version goes out in the X-Tags-Version header and as the ETag, and changes whenever
+     * the list does.
+     */
     @GetMapping
-    public List<Tag> getAllTags() {
+    public ResponseEntity<List<Tag>> getAllTags(NativeWebRequest request) {
         try {
-            return tagDao.getTags();
+            TagCatalog.Snapshot catalog = tagCatalog.getSnapshot();
+            String version = Long.toString(catalog.getVersion());
+            String etag = responseFormats.negotiate(request).tag("\"tags." + version + "\"");
+            ResponseEntity<List<Tag>> notModified = ConditionalGet.notModified(request, etag, ConditionalGet.SHARED);
+            if (notModified != null) {
+                return notModified;
+            }
+            return ConditionalGet.ok(etag, ConditionalGet.SHARED)
+                    .header(TAGS_VERSION_HEADER, version)
+                    .body(catalog.getTags());
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
@@ -35,7 +70,7 @@ public class TagController {
     @GetMapping("/{id}")
     public Tag getTagById(@PathVariable int id) {
         try {
-            Tag tag = tagDao.getTagById(id);
+            Tag tag = tagCatalog.getSnapshot().getTag(id);
             if (tag == null) {
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Tag not found");
             }
@@ -54,12 +89,65 @@ public class TagController {
         }
     }
 
+    /**
+     * Tags for many books at once, keyed by book id, e.g. /tags/books?ids=1,2,3. Every requested
+     * book is listed, with an empty list when it has no tags.
+     */
+    @GetMapping("/books")
+    public Map<Integer, List<Tag>> getTagsByBookIds(@RequestParam List<Integer> ids) {
+        if (ids.size() > MAX_BULK_BOOK_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_BULK_BOOK_IDS + " ids per request");
+        }
+        try {
+            return tagDao.getTagsByBookIds(ids);
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Books carrying every tag in {@code all}, at least one tag in {@code any} and none of the tags
+     * in {@code none}, e.g. /tags/filter?all=3,7&none=12. Each parameter is optional. Returns one
+     * page of matches in book_id order, the total number of matches, and how many matches carry
+     * each tag.
+     */
+    @GetMapping("/filter")
+    public TagFilterResult filterBooks(@RequestParam(defaultValue = "") List<Integer> all,
+                                       @RequestParam(defaultValue = "") List<Integer> any,
+                                       @RequestParam(defaultValue = "") List<Integer> none,
+                                       @RequestParam(defaultValue = "50") int limit,
+                                       @RequestParam(defaultValue = "0") int offset) {
+        if (limit < 1 || limit > MAX_FILTER_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_FILTER_PAGE_SIZE);
+        }
+        if (offset < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "offset must not be negative");
+        }
+        if (!tagFilterIndex.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Tag filter index is still loading");
+        }
+        try {
+            TagFilterIndex.Match match = tagFilterIndex.filter(all, any, none, offset, limit);
+            TagFilterResult result = new TagFilterResult();
+            result.setTotal(match.getTotal());
+            result.setBooks(bookDao.getBooksByIds(match.getBookIds()));
+            result.setFacets(match.getFacets());
+            return result;
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     @PreAuthorize("hasRole('ADMIN')")
     public Tag createTag(@Valid @RequestBody Tag tag) {
         try {
-            return tagDao.createTag(tag);
+            Tag newTag = tagDao.createTag(tag);
+            if (newTag == null) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Tag already exists");
+            }
+            return newTag;
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
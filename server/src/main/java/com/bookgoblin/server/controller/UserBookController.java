@@ -1,17 +1,28 @@
 package com.bookgoblin.server.controller;
 
+import com.bookgoblin.server.dao.TagDao;
 import com.bookgoblin.server.dao.UserBookDao;
 import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.LibrarySummary;
+import com.bookgoblin.server.model.OwnedMutation;
+import com.bookgoblin.server.model.Tag;
 import com.bookgoblin.server.model.UserBook;
+import com.bookgoblin.server.security.AuthenticatedUser;
+import com.bookgoblin.server.service.ResourceVersions;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 
 import java.security.Principal;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @CrossOrigin
@@ -19,17 +30,57 @@ import java.util.List;
 public class UserBookController {
 
     private final UserBookDao userBookDao;
-
-    public UserBookController(UserBookDao userBookDao) {
+    private final TagDao tagDao;
+    private final ResourceVersions resourceVersions;
+    private final ResponseFormats responseFormats;
+    private final int summaryRecentLimit;
+
+    public UserBookController(UserBookDao userBookDao, TagDao tagDao, ResourceVersions resourceVersions,
+                              ResponseFormats responseFormats,
+                              @Value("${user-books.summary.recent-limit}") int summaryRecentLimit) {
         this.userBookDao = userBookDao;
+        this.tagDao = tagDao;
+        this.resourceVersions = resourceVersions;
+        this.responseFormats = responseFormats;
+        this.summaryRecentLimit = summaryRecentLimit;
     }
 
+    /**
+     * The caller's library, newest first. Answers 304 without touching the database when
+     * If-None-Match has the current version.
+     */
     @GetMapping
     @PreAuthorize("isAuthenticated()")
-    public List<UserBook> getUserBooks(Principal principal) {
+    public ResponseEntity<List<UserBook>> getUserBooks(@RequestParam(defaultValue = "false") boolean includeTags,
+                                                       @AuthenticationPrincipal AuthenticatedUser user,
+                                                       NativeWebRequest request) {
+        String etag = responseFormats.negotiate(request)
+                .tag(resourceVersions.getUserBooksTag(user.getUserId(), includeTags));
+        ResponseEntity<List<UserBook>> notModified = ConditionalGet.notModified(request, etag, ConditionalGet.PRIVATE);
+        if (notModified != null) {
+            return notModified;
+        }
+        try {
+            String username = user.getUsername();
+            List<UserBook> userBooks = userBookDao.getUserBooksByUsername(username);
+            if (includeTags && !userBooks.isEmpty()) {
+                Map<Integer, List<Tag>> tags =
+                        tagDao.getTagsByBookIds(userBooks.stream().map(UserBook::getBookId).toList());
+                for (UserBook userBook : userBooks) {
+                    userBook.setTags(tags.get(userBook.getBookId()));
+                }
+            }
+            return ConditionalGet.ok(etag, ConditionalGet.PRIVATE).body(userBooks);
+        } catch (DaoException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/summary")
+    @PreAuthorize("isAuthenticated()")
+    public LibrarySummary getLibrarySummary(@AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            String username = principal.getName();
-            return userBookDao.getUserBooksByUsername(username);
+            return userBookDao.getLibrarySummary(user.getUserId(), summaryRecentLimit);
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
@@ -58,9 +109,9 @@ public class UserBookController {
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     @PreAuthorize("isAuthenticated()")
-    public UserBook addUserBook(@Valid @RequestBody UserBook userBook, Principal principal) {
+    public UserBook addUserBook(@Valid @RequestBody UserBook userBook, @AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            userBook.setUsername(principal.getName());
+            userBook.setUserId(user.getUserId());
             return userBookDao.createUserBook(userBook);
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
@@ -69,27 +120,13 @@ public class UserBookController {
 
     @PutMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    public UserBook updateUserBook(@PathVariable int id, @Valid @RequestBody UserBook userBook, Principal principal) {
+    public UserBook updateUserBook(@PathVariable int id, @Valid @RequestBody UserBook userBook,
+                                   @AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            // Check if the user owns this user book
-            UserBook existingUserBook = userBookDao.getUserBookById(id);
-            if (existingUserBook == null) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User book not found");
-            }
-
-            if (!existingUserBook.getUsername().equals(principal.getName())) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
-            }
-
             userBook.setUserBookId(id);
-            userBook.setUsername(principal.getName());
-            UserBook updatedUserBook = userBookDao.updateUserBook(userBook);
-
-            if (updatedUserBook == null) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User book not found");
-            }
-
-            return updatedUserBook;
+            OwnedMutation<UserBook> result = userBookDao.updateUserBook(userBook, user.getUserId());
+            checkOwnership(result);
+            return result.getValue();
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
@@ -98,23 +135,20 @@ public class UserBookController {
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @PreAuthorize("isAuthenticated()")
-    public void deleteUserBook(@PathVariable int id, Principal principal) {
+    public void deleteUserBook(@PathVariable int id, @AuthenticationPrincipal AuthenticatedUser user) {
         try {
-            // Check if the user owns this user book
-            UserBook userBook = userBookDao.getUserBookById(id);
-            if (userBook == null) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User book not found");
-            }
-
-            if (!userBook.getUsername().equals(principal.getName())) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
-            }
-
-            if (!userBookDao.deleteUserBook(id)) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User book not found");
-            }
+            checkOwnership(userBookDao.deleteUserBook(id, user.getUserId()));
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "DAO error - " + e.getMessage());
         }
     }
+
+    private void checkOwnership(OwnedMutation<?> result) {
+        if (result.getStatus() == OwnedMutation.Status.NOT_FOUND) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User book not found");
+        }
+        if (result.getStatus() == OwnedMutation.Status.FORBIDDEN) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+        }
+    }
 }
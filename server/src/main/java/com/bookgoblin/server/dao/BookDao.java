@@ -1,16 +1,69 @@
 package com.bookgoblin.server.dao;
 
 import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.BookCursor;
+import com.bookgoblin.server.model.BookImportRow;
+import com.bookgoblin.server.model.BookSearchResult;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 public interface BookDao {
     List<Book> getBooks();
     Book getBookById(int bookId);
+
+    /**
+     * Loads the given books in a single query, returned in the same order as the ids.
+     * Ids with no matching row are skipped.
+     */
+    List<Book> getBooksByIds(List<Integer> bookIds);
+
     List<Book> getBooksByTitle(String title);
     List<Book> getBooksByAuthor(String author);
     List<Book> getBooksByTitleAndAuthor(String title, String author);
+
+    /**
+     * Relevance-ranked search over title and author using the full-text and trigram indexes.
+     * The query accepts web-search syntax (quoted phrases, "or", leading "-" to exclude).
+     */
+    List<BookSearchResult> searchBooksRanked(String query, int limit);
+
+    /**
+     * Returns at most {@code limit} books ordered by (title, book_id), starting after the given cursor.
+     * Title and author filters are optional; pass null to skip them, and a null cursor for the first page.
+     */
+    List<Book> getBooksPage(String title, String author, BookCursor after, int limit);
+
+    /**
+     * Streams every matching book, ordered by (title, book_id), to the consumer straight off the
+     * database cursor so memory use does not grow with the size of the catalog.
+     */
+    void streamBooks(String title, String author, Consumer<Book> consumer);
+
+    /**
+     * Streams every book in book_id order together with the number of users who have it in their library.
+     */
+    void streamBookPopularity(ObjIntConsumer<Book> consumer);
+
+    /**
+     * The number of users who have each of the given books in their library. Books nobody has are
+     * left out of the map.
+     */
+    Map<Integer, Integer> getReaderCounts(List<Integer> bookIds);
+
     Book createBook(Book book);
     Book updateBook(Book book);
     boolean deleteBook(int bookId);
-}
\ No newline at end of file
+
+    /**
+     * Writes the books in a single transaction. A book whose ISBN is already in the catalog updates
+     * that row instead of adding a new one, and when the same ISBN appears more than once in the list
+     * the last occurrence wins. Each book's id is set to the row it was written to. No
+     * {@code BookChangedEvent}s are published.
+     *
+     * @return what happened to each book, in the order given
+     */
+    List<BookImportRow.Status> upsertBooks(List<Book> books);
+}
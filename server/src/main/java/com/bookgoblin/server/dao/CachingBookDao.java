@@ -0,0 +1,150 @@
+package com.bookgoblin.server.dao;
+
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.BookCursor;
+import com.bookgoblin.server.model.BookImportRow;
+import com.bookgoblin.server.model.BookSearchResult;
+import com.bookgoblin.server.model.CacheStatistics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Read-through cache for single-book lookups in front of {@link JdbcBookDao}.
+ *
+ * Entries are bounded by count and by age. A miss loads the row once no matter how many
+ * requests ask for the same id at the same time; the others wait for that load. Writes go
+ * straight to the database and then drop the affected entry, so the next read sees the new row.
+ *
+ * Enabled with books.cache.enabled=true; when off, callers get the JDBC DAO directly.
+ */
+@Primary
+@Component
+@ConditionalOnProperty(name = "books.cache.enabled", havingValue = "true")
+public class CachingBookDao implements BookDao {
+
+    private final BookDao delegate;
+    private final Cache<Integer, Book> booksById;
+
+    public CachingBookDao(JdbcBookDao delegate,
+                          @Value("${books.cache.maximum-size}") long maximumSize,
+                          @Value("${books.cache.expire-after-write}") Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.booksById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Book getBookById(int bookId) {
+        // Unknown ids load to null, which Caffeine does not store
+        return booksById.get(bookId, delegate::getBookById);
+    }
+
+    @Override
+    public Book createBook(Book book) {
+        Book newBook = delegate.createBook(book);
+        if (newBook != null) {
+            booksById.put(newBook.getBookId(), newBook);
+        }
+        return newBook;
+    }
+
+    @Override
+    public Book updateBook(Book book) {
+        try {
+            return delegate.updateBook(book);
+        } finally {
+            booksById.invalidate(book.getBookId());
+        }
+    }
+
+    @Override
+    public boolean deleteBook(int bookId) {
+        try {
+            return delegate.deleteBook(bookId);
+        } finally {
+            booksById.invalidate(bookId);
+        }
+    }
+
+    @Override
+    public List<BookImportRow.Status> upsertBooks(List<Book> books) {
+        try {
+            return delegate.upsertBooks(books);
+        } finally {
+            // A batch can touch any number of cached rows; starting over is cheaper than tracking them
+            booksById.invalidateAll();
+        }
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats stats = booksById.stats();
+        return new CacheStatistics("books", booksById.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.loadCount(), stats.averageLoadPenalty() / 1_000_000.0, stats.evictionCount());
+    }
+
+    // Everything below is either a multi-row read or already index-driven, so it passes straight through
+
+    @Override
+    public List<Book> getBooks() {
+        return delegate.getBooks();
+    }
+
+    @Override
+    public List<Book> getBooksByIds(List<Integer> bookIds) {
+        return delegate.getBooksByIds(bookIds);
+    }
+
+    @Override
+    public List<Book> getBooksByTitle(String title) {
+        return delegate.getBooksByTitle(title);
+    }
+
+    @Override
+    public List<Book> getBooksByAuthor(String author) {
+        return delegate.getBooksByAuthor(author);
+    }
+
+    @Override
+    public List<Book> getBooksByTitleAndAuthor(String title, String author) {
+        return delegate.getBooksByTitleAndAuthor(title, author);
+    }
+
+    @Override
+    public List<BookSearchResult> searchBooksRanked(String query, int limit) {
+        return delegate.searchBooksRanked(query, limit);
+    }
+
+    @Override
+    public List<Book> getBooksPage(String title, String author, BookCursor after, int limit) {
+        return delegate.getBooksPage(title, author, after, limit);
+    }
+
+    @Override
+    public void streamBooks(String title, String author, Consumer<Book> consumer) {
+        delegate.streamBooks(title, author, consumer);
+    }
+
+    @Override
+    public void streamBookPopularity(ObjIntConsumer<Book> consumer) {
+        delegate.streamBookPopularity(consumer);
+    }
+
+    @Override
+    public Map<Integer, Integer> getReaderCounts(List<Integer> bookIds) {
+        return delegate.getReaderCounts(bookIds);
+    }
+}
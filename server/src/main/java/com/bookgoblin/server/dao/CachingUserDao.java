@@ -0,0 +1,191 @@
+package com.bookgoblin.server.dao;
+
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.CacheStatistics;
+import com.bookgoblin.server.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Read-through cache for username lookups in front of {@link JdbcUserDao}.
+ *
+ * A login looks its user up twice (once to check the password, once for the response) and both
+ * are served by a single query. Entries are bounded by count and by age, and are dropped when the
+ * user's password hash changes.
+ *
+ * Registration checks go through a Bloom filter of every username first, so a name that is
+ * definitely free never reaches the database. The filter is only ever used to skip that check:
+ * if it misses a name (a user created by another server, say) the insert itself still refuses the
+ * duplicate. It is built once the application is ready and rebuilt at twice the size whenever it
+ * fills up. Rebuilds scan the users table, so they run on a background thread rather than on the
+ * registration that filled the filter; names added meanwhile go into both filters.
+ *
+ * Enabled with users.cache.enabled=true; when off, callers get the JDBC DAO directly.
+ */
+@Primary
+@Component
+@ConditionalOnProperty(name = "users.cache.enabled", havingValue = "true")
+public class CachingUserDao implements UserDao {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingUserDao.class);
+
+    private final UserDao delegate;
+    private final Cache<String, User> usersByUsername;
+    private final long expectedUsers;
+
+    // Null until built; lookups go to the database until then
+    private volatile UsernameFilter usernameFilter;
+    // Non-null while a rebuild is scanning, collecting names the scan may have missed
+    private volatile Queue<String> addedDuringRebuild;
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final ExecutorService rebuilder =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("username-filter-"));
+
+    public CachingUserDao(JdbcUserDao delegate,
+                          @Value("${users.cache.maximum-size}") long maximumSize,
+                          @Value("${users.cache.expire-after-write}") Duration expireAfterWrite,
+                          @Value("${users.filter.expected-users}") long expectedUsers) {
+        this.delegate = delegate;
+        this.expectedUsers = expectedUsers;
+        this.usersByUsername = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildUsernameFilter() {
+        rebuildUsernameFilter(expectedUsers);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    @Override
+    public User getUserByUsername(String username) {
+        if (username == null) {
+            return delegate.getUserByUsername(null);
+        }
+        // Unknown names load to null, which Caffeine does not store
+        return usersByUsername.get(username, delegate::getUserByUsername);
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) {
+        UsernameFilter filter = usernameFilter;
+        if (filter != null && !filter.mightContain(username)) {
+            return false;
+        }
+        return usersByUsername.getIfPresent(username) != null || delegate.isUsernameTaken(username);
+    }
+
+    @Override
+    public User createUser(User newUser) {
+        User user = delegate.createUser(newUser);
+        if (user != null) {
+            usersByUsername.put(user.getUsername(), user);
+            Queue<String> pending = addedDuringRebuild;
+            if (pending != null) {
+                pending.add(user.getUsername());
+            }
+            UsernameFilter filter = usernameFilter;
+            if (filter != null) {
+                filter.add(user.getUsername());
+                if (filter.isSaturated() && rebuildQueued.compareAndSet(false, true)) {
+                    rebuilder.execute(() -> {
+                        rebuildQueued.set(false);
+                        rebuildUsernameFilter(expectedUsers * 2);
+                    });
+                }
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public boolean updatePasswordHash(String username, String passwordHash) {
+        try {
+            return delegate.updatePasswordHash(username, passwordHash);
+        } finally {
+            usersByUsername.invalidate(username);
+        }
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats stats = usersByUsername.stats();
+        return new CacheStatistics("users", usersByUsername.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.loadCount(), stats.averageLoadPenalty() / 1_000_000.0, stats.evictionCount());
+    }
+
+    private synchronized void rebuildUsernameFilter(long minimumCapacity) {
+        UsernameFilter current = usernameFilter;
+        if (current != null && !current.isSaturated()) {
+            return;
+        }
+        long[] count = new long[1];
+        UsernameFilter filter;
+        Queue<String> pending = new ConcurrentLinkedQueue<>();
+        addedDuringRebuild = pending;
+        try {
+            // Sized from the first pass's count so the filter is never built already full
+            delegate.forEachUsername(username -> count[0]++);
+            filter = new UsernameFilter(Math.max(minimumCapacity, count[0] * 2));
+            delegate.forEachUsername(filter::add);
+        } catch (DaoException e) {
+            addedDuringRebuild = null;
+            LOG.warn("Unable to build username filter, registration checks will use the database: {}", e.getMessage());
+            return;
+        }
+        // Names created while scanning may be missing from it; replay them before the swap, and
+        // again after it for any that arrived in between
+        for (String username; (username = pending.poll()) != null; ) {
+            filter.add(username);
+        }
+        usernameFilter = filter;
+        addedDuringRebuild = null;
+        for (String username; (username = pending.poll()) != null; ) {
+            filter.add(username);
+        }
+        LOG.info("Username filter built with {} users", count[0]);
+    }
+
+    // Everything below passes straight through
+
+    @Override
+    public List<User> getUsers() {
+        return delegate.getUsers();
+    }
+
+    @Override
+    public User getUserById(int userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public void forEachUsername(Consumer<String> consumer) {
+        delegate.forEachUsername(consumer);
+    }
+}
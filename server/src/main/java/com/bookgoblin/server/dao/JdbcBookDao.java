@@ -1,36 +1,65 @@
 package com.bookgoblin.server.dao;
 
+import com.bookgoblin.server.event.BookChangedEvent;
+import com.bookgoblin.server.event.TagChangedEvent;
 import com.bookgoblin.server.exception.DaoException;
 import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.BookCursor;
+import com.bookgoblin.server.model.BookImportRow;
+import com.bookgoblin.server.model.BookSearchResult;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 @Component
 public class JdbcBookDao implements BookDao {
 
+    // search_vector is only for the database to use, so never select it
+    private static final String BOOK_COLUMNS = "book_id, title, author, isbn, cover_image_url, publication_year";
+
+    // Rows pulled per round trip while streaming; the PostgreSQL driver only honours this inside a transaction
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate transaction;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public JdbcBookDao(JdbcTemplate jdbcTemplate) {
+    public JdbcBookDao(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                       ApplicationEventPublisher eventPublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.transaction = new TransactionTemplate(transactionManager);
     }
 
     @Override
     public List<Book> getBooks() {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books ORDER BY title";
+        List<Book> books;
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books ORDER BY title";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql);
-            while (results.next()) {
-                Book book = mapRowToBook(results);
-                books.add(book);
-            }
+            books = jdbcTemplate.query(sql, new BookRowMapper());
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
@@ -40,13 +69,10 @@ public class JdbcBookDao implements BookDao {
     @Override
     public Book getBookById(int bookId) {
         Book book = null;
-        String sql = "SELECT * FROM books WHERE book_id = ?";
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE book_id = ?";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, bookId);
-            if (results.next()) {
-                book = mapRowToBook(results);
-            }
+            book = DataAccessUtils.singleResult(jdbcTemplate.query(sql, new BookRowMapper(), bookId));
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
@@ -54,15 +80,26 @@ public class JdbcBookDao implements BookDao {
     }
 
     @Override
-    public List<Book> getBooksByTitle(String title) {
+    public List<Book> getBooksByIds(List<Integer> bookIds) {
         List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE title ILIKE ? ORDER BY title";
+        if (bookIds.isEmpty()) {
+            return books;
+        }
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE book_id = ANY (?)";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, "%" + title + "%");
-            while (results.next()) {
-                Book book = mapRowToBook(results);
-                books.add(book);
+            Map<Integer, Book> booksById = new HashMap<>();
+            BookRowMapper mapper = new BookRowMapper();
+            jdbcTemplate.query(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", bookIds.toArray())),
+                    (RowCallbackHandler) rs -> {
+                        Book book = mapper.mapRow(rs, 0);
+                        booksById.put(book.getBookId(), book);
+                    });
+            for (Integer bookId : bookIds) {
+                Book book = booksById.get(bookId);
+                if (book != null) {
+                    books.add(book);
+                }
             }
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
@@ -70,17 +107,26 @@ public class JdbcBookDao implements BookDao {
         return books;
     }
 
+    @Override
+    public List<Book> getBooksByTitle(String title) {
+        List<Book> books;
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE title ILIKE ? ORDER BY title";
+
+        try {
+            books = jdbcTemplate.query(sql, new BookRowMapper(), "%" + title + "%");
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+        return books;
+    }
+
     @Override
     public List<Book> getBooksByAuthor(String author) {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE author ILIKE ? ORDER BY author, title";
+        List<Book> books;
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE author ILIKE ? ORDER BY author, title";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, "%" + author + "%");
-            while (results.next()) {
-                Book book = mapRowToBook(results);
-                books.add(book);
-            }
+            books = jdbcTemplate.query(sql, new BookRowMapper(), "%" + author + "%");
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
@@ -89,32 +135,114 @@ public class JdbcBookDao implements BookDao {
 
     @Override
     public List<Book> getBooksByTitleAndAuthor(String title, String author) {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE title ILIKE ? AND author ILIKE ? ORDER BY title";
+        List<Book> books;
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE title ILIKE ? AND author ILIKE ? ORDER BY title";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, "%" + title + "%", "%" + author + "%");
-            while (results.next()) {
-                Book book = mapRowToBook(results);
-                books.add(book);
-            }
+            books = jdbcTemplate.query(sql, new BookRowMapper(), "%" + title + "%", "%" + author + "%");
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+        return books;
+    }
+
+    @Override
+    public List<BookSearchResult> searchBooksRanked(String query, int limit) {
+        List<BookSearchResult> results;
+        // Full-text matches (title terms weighted above author terms) plus trigram similarity so
+        // misspellings still find something; every predicate is served by a GIN index.
+        String sql = "SELECT " + BOOK_COLUMNS + ", " +
+                "ts_rank_cd(search_vector, websearch_to_tsquery('simple', ?)) + " +
+                "GREATEST(similarity(title, ?), similarity(author, ?)) AS score " +
+                "FROM books " +
+                "WHERE search_vector @@ websearch_to_tsquery('simple', ?) OR title % ? OR author % ? " +
+                "ORDER BY score DESC, book_id " +
+                "LIMIT ?";
+
+        try {
+            results = jdbcTemplate.query(sql, new BookSearchResultRowMapper(),
+                    query, query, query, query, query, query, limit);
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+        return results;
+    }
+
+    @Override
+    public List<Book> getBooksPage(String title, String author, BookCursor after, int limit) {
+        List<Book> books;
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT " + BOOK_COLUMNS + " FROM books WHERE TRUE");
+        appendSearchFilter(sql, args, title, author);
+
+        if (after != null) {
+            sql.append(" AND (title, book_id) > (?, ?)");
+            args.add(after.getTitle());
+            args.add(after.getBookId());
+        }
+        sql.append(" ORDER BY title, book_id LIMIT ?");
+        args.add(limit);
+
+        try {
+            books = jdbcTemplate.query(sql.toString(), new BookRowMapper(), args.toArray());
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
         return books;
     }
 
+    @Override
+    public void streamBooks(String title, String author, Consumer<Book> consumer) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT " + BOOK_COLUMNS + " FROM books WHERE TRUE");
+        appendSearchFilter(sql, args, title, author);
+        sql.append(" ORDER BY title, book_id");
+
+        BookRowMapper mapper = new BookRowMapper();
+        streamQuery(sql.toString(), args, rs -> consumer.accept(mapper.mapRow(rs, 0)));
+    }
+
+    @Override
+    public void streamBookPopularity(ObjIntConsumer<Book> consumer) {
+        // reader_count goes first so it can be read by position
+        String sql = "SELECT (SELECT COUNT(*) FROM user_books ub WHERE ub.book_id = b.book_id) AS reader_count, " +
+                "b.book_id, b.title, b.author, b.isbn, b.cover_image_url, b.publication_year " +
+                "FROM books b ORDER BY b.book_id";
+
+        BookRowMapper mapper = new BookRowMapper();
+        streamQuery(sql, List.of(), rs -> consumer.accept(mapper.mapRow(rs, 0), rs.getInt(1)));
+    }
+
+    @Override
+    public Map<Integer, Integer> getReaderCounts(List<Integer> bookIds) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        if (bookIds.isEmpty()) {
+            return counts;
+        }
+        String sql = "SELECT book_id, COUNT(*) FROM user_books WHERE book_id = ANY (?) GROUP BY book_id";
+
+        try {
+            jdbcTemplate.query(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", bookIds.toArray())),
+                    (RowCallbackHandler) rs -> counts.put(rs.getInt(1), rs.getInt(2)));
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+        return counts;
+    }
+
     @Override
     public Book createBook(Book book) {
         Book newBook = null;
         String sql = "INSERT INTO books (title, author, isbn, cover_image_url, publication_year) " +
-                "VALUES (?, ?, ?, ?, ?) RETURNING book_id";
+                "VALUES (?, ?, ?, ?, ?) RETURNING " + BOOK_COLUMNS;
 
         try {
-            int newBookId = jdbcTemplate.queryForObject(sql, int.class,
+            newBook = DataAccessUtils.singleResult(jdbcTemplate.query(sql, new BookRowMapper(),
                     book.getTitle(), book.getAuthor(), book.getIsbn(),
-                    book.getCoverImageUrl(), book.getPublicationYear());
-            newBook = getBookById(newBookId);
+                    book.getCoverImageUrl(), book.getPublicationYear()));
+            if (newBook != null) {
+                eventPublisher.publishEvent(BookChangedEvent.created(newBook));
+            }
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
@@ -127,17 +255,17 @@ public class JdbcBookDao implements BookDao {
     public Book updateBook(Book book) {
         Book updatedBook = null;
         String sql = "UPDATE books SET title = ?, author = ?, isbn = ?, " +
-                "cover_image_url = ?, publication_year = ? WHERE book_id = ?";
+                "cover_image_url = ?, publication_year = ? WHERE book_id = ? RETURNING " + BOOK_COLUMNS;
 
         try {
-            int rowsAffected = jdbcTemplate.update(sql, book.getTitle(), book.getAuthor(),
-                    book.getIsbn(), book.getCoverImageUrl(), book.getPublicationYear(), book.getBookId());
+            updatedBook = DataAccessUtils.singleResult(jdbcTemplate.query(sql, new BookRowMapper(),
+                    book.getTitle(), book.getAuthor(), book.getIsbn(), book.getCoverImageUrl(),
+                    book.getPublicationYear(), book.getBookId()));
 
-            if (rowsAffected == 0) {
+            if (updatedBook == null) {
                 return null;
             }
-
-            updatedBook = getBookById(book.getBookId());
+            eventPublisher.publishEvent(BookChangedEvent.updated(updatedBook));
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
@@ -148,11 +276,25 @@ public class JdbcBookDao implements BookDao {
 
     @Override
     public boolean deleteBook(int bookId) {
-        String sql = "DELETE FROM books WHERE book_id = ?";
+        // book_tags rows go with the book, so its tags are read in the same statement, from the
+        // snapshot taken before the delete, for listeners that count books per tag
+        String sql = "WITH book_tag_ids AS (SELECT tag_id FROM book_tags WHERE book_id = ?), " +
+                "deleted AS (DELETE FROM books WHERE book_id = ? RETURNING book_id) " +
+                "SELECT tag_id FROM book_tag_ids WHERE EXISTS (SELECT 1 FROM deleted) " +
+                "UNION ALL SELECT NULL FROM deleted";
 
         try {
-            int rowsAffected = jdbcTemplate.update(sql, bookId);
-            return rowsAffected > 0;
+            List<Integer> rows = jdbcTemplate.queryForList(sql, Integer.class, bookId, bookId);
+            if (rows.isEmpty()) {
+                return false;
+            }
+            eventPublisher.publishEvent(BookChangedEvent.deleted(bookId));
+            for (Integer tagId : rows) {
+                if (tagId != null) {
+                    eventPublisher.publishEvent(TagChangedEvent.removedFromBook(tagId, bookId));
+                }
+            }
+            return true;
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
@@ -160,18 +302,178 @@ public class JdbcBookDao implements BookDao {
         }
     }
 
-    private Book mapRowToBook(SqlRowSet rs) {
-        Book book = new Book();
-        book.setBookId(rs.getInt("book_id"));
-        book.setTitle(rs.getString("title"));
-        book.setAuthor(rs.getString("author"));
-        book.setIsbn(rs.getString("isbn"));
-        book.setCoverImageUrl(rs.getString("cover_image_url"));
+    @Override
+    public List<BookImportRow.Status> upsertBooks(List<Book> books) {
+        // Each column goes in as one array, so a batch is a single statement however many rows it has
+        String upsertSql = "INSERT INTO books (title, author, isbn, cover_image_url, publication_year) " +
+                "SELECT * FROM unnest(?::text[], ?::text[], ?::text[], ?::text[], ?::int[]) " +
+                "ON CONFLICT (isbn) DO UPDATE SET title = EXCLUDED.title, author = EXCLUDED.author, " +
+                "cover_image_url = EXCLUDED.cover_image_url, publication_year = EXCLUDED.publication_year " +
+                // xmax is only zero on a row version the insert itself created
+                "RETURNING book_id, isbn, xmax = 0";
+        // Books without an ISBN cannot be matched to RETURNING rows, so their ids are drawn up front
+        String reserveIdsSql = "SELECT nextval(pg_get_serial_sequence('books', 'book_id')) " +
+                "FROM generate_series(1, ?)";
+        String insertSql = "INSERT INTO books (book_id, title, author, cover_image_url, publication_year) " +
+                "SELECT * FROM unnest(?::int[], ?::text[], ?::text[], ?::text[], ?::int[])";
 
-        if (rs.getObject("publication_year") != null) {
-            book.setPublicationYear(rs.getInt("publication_year"));
+        // One statement cannot upsert the same row twice, so collapse repeated ISBNs first; the last
+        // one wins, as it would row by row
+        Map<String, Book> byIsbn = new LinkedHashMap<>();
+        List<Book> withoutIsbn = new ArrayList<>();
+        for (Book book : books) {
+            if (book.getIsbn() == null) {
+                withoutIsbn.add(book);
+            } else {
+                byIsbn.put(book.getIsbn(), book);
+            }
         }
+        List<Book> withIsbn = new ArrayList<>(byIsbn.values());
 
-        return book;
+        try {
+            // One commit per batch instead of one per row
+            Map<String, Boolean> insertedByIsbn = new HashMap<>();
+            transaction.executeWithoutResult(status -> {
+                if (!withIsbn.isEmpty()) {
+                    jdbcTemplate.query(con -> {
+                        PreparedStatement ps = con.prepareStatement(upsertSql);
+                        ps.setArray(1, con.createArrayOf("text", withIsbn.stream().map(Book::getTitle).toArray()));
+                        ps.setArray(2, con.createArrayOf("text", withIsbn.stream().map(Book::getAuthor).toArray()));
+                        ps.setArray(3, con.createArrayOf("text", withIsbn.stream().map(Book::getIsbn).toArray()));
+                        ps.setArray(4, con.createArrayOf("text", withIsbn.stream().map(Book::getCoverImageUrl).toArray()));
+                        ps.setArray(5, con.createArrayOf("integer", withIsbn.stream().map(Book::getPublicationYear).toArray()));
+                        return ps;
+                    }, (RowCallbackHandler) rs -> {
+                        Book book = byIsbn.get(rs.getString(2));
+                        book.setBookId(rs.getInt(1));
+                        insertedByIsbn.put(book.getIsbn(), rs.getBoolean(3));
+                    });
+                }
+                if (!withoutIsbn.isEmpty()) {
+                    List<Integer> ids = jdbcTemplate.queryForList(reserveIdsSql, Integer.class, withoutIsbn.size());
+                    for (int i = 0; i < withoutIsbn.size(); i++) {
+                        withoutIsbn.get(i).setBookId(ids.get(i));
+                    }
+                    jdbcTemplate.update(con -> {
+                        PreparedStatement ps = con.prepareStatement(insertSql);
+                        ps.setArray(1, con.createArrayOf("integer", ids.toArray()));
+                        ps.setArray(2, con.createArrayOf("text", withoutIsbn.stream().map(Book::getTitle).toArray()));
+                        ps.setArray(3, con.createArrayOf("text", withoutIsbn.stream().map(Book::getAuthor).toArray()));
+                        ps.setArray(4, con.createArrayOf("text", withoutIsbn.stream().map(Book::getCoverImageUrl).toArray()));
+                        ps.setArray(5, con.createArrayOf("integer", withoutIsbn.stream().map(Book::getPublicationYear).toArray()));
+                        return ps;
+                    });
+                }
+            });
+
+            List<BookImportRow.Status> statuses = new ArrayList<>(books.size());
+            for (Book book : books) {
+                if (book.getIsbn() == null) {
+                    statuses.add(BookImportRow.Status.INSERTED);
+                } else {
+                    Book written = byIsbn.get(book.getIsbn());
+                    if (written != book) {
+                        book.setBookId(written.getBookId());
+                        statuses.add(BookImportRow.Status.SUPERSEDED);
+                    } else {
+                        statuses.add(insertedByIsbn.get(book.getIsbn())
+                                ? BookImportRow.Status.INSERTED : BookImportRow.Status.UPDATED);
+                    }
+                }
+            }
+            return statuses;
+        } catch (CannotGetJdbcConnectionException | CannotCreateTransactionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        } catch (DataIntegrityViolationException e) {
+            throw new DaoException("Data integrity violation", e);
+        }
+    }
+
+    private void streamQuery(String sql, List<Object> args, RowCallbackHandler handler) {
+        try {
+            // Autocommit has to be off for the driver to use a server-side cursor instead of buffering every row
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                for (int i = 0; i < args.size(); i++) {
+                    ps.setObject(i + 1, args.get(i));
+                }
+                return ps;
+            }, handler));
+        } catch (CannotGetJdbcConnectionException | CannotCreateTransactionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
+    private void appendSearchFilter(StringBuilder sql, List<Object> args, String title, String author) {
+        if (title != null) {
+            sql.append(" AND title ILIKE ?");
+            args.add("%" + title + "%");
+        }
+        if (author != null) {
+            sql.append(" AND author ILIKE ?");
+            args.add("%" + author + "%");
+        }
+    }
+
+    /**
+     * Maps the {@link #BOOK_COLUMNS} projection. Column positions are looked up on the first row and
+     * reused for the rest, so use a fresh instance for each query.
+     */
+    private static class BookRowMapper implements RowMapper<Book> {
+
+        private int bookId;
+        private int title;
+        private int author;
+        private int isbn;
+        private int coverImageUrl;
+        private int publicationYear;
+
+        @Override
+        public Book mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return populate(new Book(), rs);
+        }
+
+        <T extends Book> T populate(T book, ResultSet rs) throws SQLException {
+            if (bookId == 0) {
+                bookId = rs.findColumn("book_id");
+                title = rs.findColumn("title");
+                author = rs.findColumn("author");
+                isbn = rs.findColumn("isbn");
+                coverImageUrl = rs.findColumn("cover_image_url");
+                publicationYear = rs.findColumn("publication_year");
+            }
+
+            book.setBookId(rs.getInt(bookId));
+            book.setTitle(rs.getString(title));
+            book.setAuthor(rs.getString(author));
+            book.setIsbn(rs.getString(isbn));
+            book.setCoverImageUrl(rs.getString(coverImageUrl));
+
+            int year = rs.getInt(publicationYear);
+            if (!rs.wasNull()) {
+                book.setPublicationYear(year);
+            }
+
+            return book;
+        }
+    }
+
+    private static final class BookSearchResultRowMapper implements RowMapper<BookSearchResult> {
+
+        private final BookRowMapper bookMapper = new BookRowMapper();
+        private int score;
+
+        @Override
+        public BookSearchResult mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (score == 0) {
+                score = rs.findColumn("score");
+            }
+
+            BookSearchResult result = bookMapper.populate(new BookSearchResult(), rs);
+            result.setScore(rs.getDouble(score));
+            return result;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+package com.bookgoblin.server.dao;
+
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.OpenLibraryAuthor;
+import com.bookgoblin.server.model.OpenLibraryEdition;
+import com.bookgoblin.server.model.OpenLibraryWork;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+@Component
+public class JdbcOpenLibraryMirrorDao implements OpenLibraryMirrorDao {
+
+    private static final String COVER_URL = "https://covers.openlibrary.org/b/id/%d-M.jpg";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+
+    public JdbcOpenLibraryMirrorDao(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public List<Book> searchBooks(String query, int limit) {
+        List<Book> books;
+        // One ISBN from any edition of the work, as the live API picks the first of many
+        String sql = "SELECT w.title, w.author_name, e.isbn, w.first_publish_year, w.cover_id " +
+                "FROM ol_works w " +
+                "LEFT JOIN LATERAL (SELECT isbn FROM ol_editions " +
+                "WHERE work_key = w.work_key AND isbn IS NOT NULL LIMIT 1) e ON TRUE " +
+                "WHERE w.search_vector @@ websearch_to_tsquery('simple', ?) " +
+                "ORDER BY ts_rank_cd(w.search_vector, websearch_to_tsquery('simple', ?)) DESC, w.work_key " +
+                "LIMIT ?";
+
+        try {
+            books = jdbcTemplate.query(sql, new MirrorBookRowMapper(), query, query, limit);
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+        return books;
+    }
+
+    @Override
+    public void upsertAuthors(List<OpenLibraryAuthor> authors) {
+        String sql = "INSERT INTO ol_authors (author_key, name) VALUES (?, ?) " +
+                "ON CONFLICT (author_key) DO UPDATE SET name = EXCLUDED.name";
+
+        batchUpsert(sql, authors, OpenLibraryAuthor::getAuthorKey, (ps, author) -> {
+            ps.setString(1, author.getAuthorKey());
+            ps.setString(2, author.getName());
+        });
+    }
+
+    @Override
+    public void upsertWorks(List<OpenLibraryWork> works) {
+        String sql = "INSERT INTO ol_works (work_key, title, author_key, first_publish_year, cover_id) " +
+                "VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (work_key) DO UPDATE SET title = EXCLUDED.title, author_key = EXCLUDED.author_key, " +
+                "first_publish_year = EXCLUDED.first_publish_year, cover_id = EXCLUDED.cover_id";
+
+        batchUpsert(sql, works, OpenLibraryWork::getWorkKey, (ps, work) -> {
+            ps.setString(1, work.getWorkKey());
+            ps.setString(2, work.getTitle());
+            ps.setString(3, work.getAuthorKey());
+            ps.setObject(4, work.getFirstPublishYear(), Types.INTEGER);
+            ps.setObject(5, work.getCoverId(), Types.INTEGER);
+        });
+    }
+
+    @Override
+    public void upsertEditions(List<OpenLibraryEdition> editions) {
+        String sql = "INSERT INTO ol_editions (edition_key, work_key, title, isbn, publish_year, cover_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (edition_key) DO UPDATE SET work_key = EXCLUDED.work_key, title = EXCLUDED.title, " +
+                "isbn = EXCLUDED.isbn, publish_year = EXCLUDED.publish_year, cover_id = EXCLUDED.cover_id";
+
+        batchUpsert(sql, editions, OpenLibraryEdition::getEditionKey, (ps, edition) -> {
+            ps.setString(1, edition.getEditionKey());
+            ps.setString(2, edition.getWorkKey());
+            ps.setString(3, edition.getTitle());
+            ps.setString(4, edition.getIsbn());
+            ps.setObject(5, edition.getPublishYear(), Types.INTEGER);
+            ps.setObject(6, edition.getCoverId(), Types.INTEGER);
+        });
+    }
+
+    @Override
+    public void linkImportedRecords() {
+        String authorNames = "UPDATE ol_works w SET author_name = a.name FROM ol_authors a " +
+                "WHERE a.author_key = w.author_key AND w.author_name IS DISTINCT FROM a.name";
+        String publishYears = "UPDATE ol_works w SET first_publish_year = e.first_year " +
+                "FROM (SELECT work_key, MIN(publish_year) AS first_year FROM ol_editions " +
+                "WHERE publish_year IS NOT NULL GROUP BY work_key) e " +
+                "WHERE e.work_key = w.work_key AND w.first_publish_year IS NULL";
+
+        try {
+            jdbcTemplate.update(authorNames);
+            jdbcTemplate.update(publishYears);
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
+    private <T> void batchUpsert(String sql, List<T> records, Function<T, String> key,
+                                 ParameterizedPreparedStatementSetter<T> setter) {
+        // The driver rewrites batches into multi-row INSERTs, which cannot upsert one key twice
+        Map<String, T> unique = new LinkedHashMap<>();
+        for (T record : records) {
+            unique.put(key.apply(record), record);
+        }
+        List<T> rows = new ArrayList<>(unique.values());
+
+        try {
+            transaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, rows, rows.size(), setter));
+        } catch (CannotGetJdbcConnectionException | CannotCreateTransactionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        } catch (DataIntegrityViolationException e) {
+            throw new DaoException("Data integrity violation", e);
+        }
+    }
+
+    /**
+     * Column positions are looked up on the first row and reused for the rest, so use a fresh
+     * instance for each query.
+     */
+    private static final class MirrorBookRowMapper implements RowMapper<Book> {
+
+        private int title;
+        private int authorName;
+        private int isbn;
+        private int firstPublishYear;
+        private int coverId;
+
+        @Override
+        public Book mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (title == 0) {
+                title = rs.findColumn("title");
+                authorName = rs.findColumn("author_name");
+                isbn = rs.findColumn("isbn");
+                firstPublishYear = rs.findColumn("first_publish_year");
+                coverId = rs.findColumn("cover_id");
+            }
+
+            Book book = new Book();
+            book.setTitle(rs.getString(title));
+            String author = rs.getString(authorName);
+            book.setAuthor(author != null ? author : "Unknown Author");
+            book.setIsbn(rs.getString(isbn));
+
+            int year = rs.getInt(firstPublishYear);
+            if (!rs.wasNull()) {
+                book.setPublicationYear(year);
+            }
+
+            int cover = rs.getInt(coverId);
+            if (!rs.wasNull()) {
+                book.setCoverImageUrl(String.format(COVER_URL, cover));
+            }
+            return book;
+        }
+    }
+}
@@ -1,29 +1,60 @@
 package com.bookgoblin.server.dao;
 
 
+import com.bookgoblin.server.event.ReadingLogChangedEvent;
 import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.OwnedMutation;
 import com.bookgoblin.server.model.ReadingLog;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 @Component
 public class JdbcReadingLogDao implements ReadingLogDao {
 
+    // Joined projection shared by the single-row reads and writes, so a create or update needs no
+    // follow-up SELECT
+    private static final String PROJECTION_COLUMNS = "rl.log_id, rl.user_book_id, rl.start_date, " +
+            "rl.end_date, rl.rating, rl.notes, ub.user_id, u.username, b.title, b.author";
+    private static final String PROJECTION_JOINS = " " +
+            "JOIN user_books ub ON rl.user_book_id = ub.user_book_id " +
+            "JOIN users u ON ub.user_id = u.user_id " +
+            "JOIN books b ON ub.book_id = b.book_id";
+    // Owner-scoped writes left join their CTE onto a single row, so the statement answers even when
+    // nothing was written and a row_exists column can say whether the target was there at all
+    private static final String OWNED_PROJECTION_JOINS = " ON TRUE " +
+            "LEFT JOIN user_books ub ON rl.user_book_id = ub.user_book_id " +
+            "LEFT JOIN users u ON ub.user_id = u.user_id " +
+            "LEFT JOIN books b ON ub.book_id = b.book_id";
+
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public JdbcReadingLogDao(JdbcTemplate jdbcTemplate) {
+    public JdbcReadingLogDao(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             ApplicationEventPublisher eventPublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
     public List<ReadingLog> getReadingLogs() {
-        List<ReadingLog> readingLogs = new ArrayList<>();
+        List<ReadingLog> readingLogs;
         String sql = "SELECT rl.log_id, rl.user_book_id, rl.start_date, rl.end_date, " +
                 "rl.rating, rl.notes, ub.user_id, u.username, b.title, b.author " +
                 "FROM reading_logs rl " +
@@ -33,114 +64,145 @@ public class JdbcReadingLogDao implements ReadingLogDao {
                 "ORDER BY rl.start_date DESC";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql);
-            while (results.next()) {
-                ReadingLog readingLog = mapRowToReadingLog(results);
-                readingLogs.add(readingLog);
-            }
-        } catch (CannotGetJdbcConnectionException e) {
+            // Inside a transaction the driver reads the rows through a cursor, spring.jdbc.template.fetch-size
+            // at a time, instead of buffering the whole result before the first row is mapped
+            readingLogs = readOnlyTransaction.execute(status -> jdbcTemplate.query(sql, new ReadingLogRowMapper()));
+        } catch (CannotGetJdbcConnectionException | CannotCreateTransactionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
         return readingLogs;
     }
 
     @Override
-    public ReadingLog getReadingLogById(int logId) {
-        ReadingLog readingLog = null;
-        String sql = "SELECT rl.log_id, rl.user_book_id, rl.start_date, rl.end_date, " +
-                "rl.rating, rl.notes, ub.user_id, u.username, b.title, b.author " +
-                "FROM reading_logs rl " +
-                "JOIN user_books ub ON rl.user_book_id = ub.user_book_id " +
-                "JOIN users u ON ub.user_id = u.user_id " +
-                "JOIN books b ON ub.book_id = b.book_id " +
-                "WHERE rl.log_id = ?";
+    public OwnedMutation<ReadingLog> getReadingLogById(int logId, int userId) {
+        String sql = "SELECT " + PROJECTION_COLUMNS + ", ub.user_id = ? AS owned " +
+                "FROM reading_logs rl" + PROJECTION_JOINS + " WHERE rl.log_id = ?";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, logId);
-            if (results.next()) {
-                readingLog = mapRowToReadingLog(results);
-            }
+            return jdbcTemplate.query(sql, (ResultSetExtractor<OwnedMutation<ReadingLog>>) rs -> {
+                if (!rs.next()) {
+                    return OwnedMutation.notFound();
+                }
+                if (!rs.getBoolean("owned")) {
+                    return OwnedMutation.forbidden();
+                }
+                return OwnedMutation.ok(new ReadingLogRowMapper().mapRow(rs, 0));
+            }, userId, logId);
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
-        return readingLog;
     }
 
     @Override
-    public List<ReadingLog> getReadingLogsByUserBookId(int userBookId) {
-        List<ReadingLog> readingLogs = new ArrayList<>();
+    public OwnedMutation<List<ReadingLog>> getReadingLogsByUserBookId(int userBookId, int userId) {
+        // Driven from the user book, so there is one row with null log columns when it has no logs
+        // (or is not the caller's, in which case its logs are left out of the join)
         String sql = "SELECT rl.log_id, rl.user_book_id, rl.start_date, rl.end_date, " +
                 "rl.rating, rl.notes, ub.user_id, u.username, b.title, b.author " +
-                "FROM reading_logs rl " +
-                "JOIN user_books ub ON rl.user_book_id = ub.user_book_id " +
+                "FROM user_books ub " +
                 "JOIN users u ON ub.user_id = u.user_id " +
                 "JOIN books b ON ub.book_id = b.book_id " +
-                "WHERE rl.user_book_id = ? " +
+                "LEFT JOIN reading_logs rl ON rl.user_book_id = ub.user_book_id AND ub.user_id = ? " +
+                "WHERE ub.user_book_id = ? " +
                 "ORDER BY rl.start_date DESC";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, userBookId);
-            while (results.next()) {
-                ReadingLog readingLog = mapRowToReadingLog(results);
-                readingLogs.add(readingLog);
-            }
+            return jdbcTemplate.query(sql, (ResultSetExtractor<OwnedMutation<List<ReadingLog>>>) rs -> {
+                if (!rs.next()) {
+                    return OwnedMutation.notFound();
+                }
+                if (rs.getInt("user_id") != userId) {
+                    return OwnedMutation.forbidden();
+                }
+                List<ReadingLog> readingLogs = new ArrayList<>();
+                ReadingLogRowMapper rowMapper = new ReadingLogRowMapper();
+                do {
+                    if (rs.getObject("log_id") != null) {
+                        readingLogs.add(rowMapper.mapRow(rs, readingLogs.size()));
+                    }
+                } while (rs.next());
+                return OwnedMutation.ok(readingLogs);
+            }, userId, userBookId);
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
-        return readingLogs;
     }
 
     @Override
-    public ReadingLog createReadingLog(ReadingLog readingLog) {
-        ReadingLog newReadingLog = null;
-        String sql = "INSERT INTO reading_logs (user_book_id, start_date, end_date, rating, notes) " +
-                "VALUES (?, ?, ?, ?, ?) RETURNING log_id";
+    public OwnedMutation<ReadingLog> createReadingLog(ReadingLog readingLog, int userId) {
+        // The insert only produces a row when the user book is the caller's; row_exists tells a
+        // missing user book from someone else's
+        String sql = "WITH inserted AS (" +
+                "INSERT INTO reading_logs (user_book_id, start_date, end_date, rating, notes) " +
+                "SELECT ub.user_book_id, ?::date, ?::date, ?::smallint, ?::text FROM user_books ub " +
+                "WHERE ub.user_book_id = ? AND ub.user_id = ? RETURNING *) " +
+                "SELECT " + PROJECTION_COLUMNS + ", " +
+                "EXISTS (SELECT 1 FROM user_books WHERE user_book_id = ?) AS row_exists " +
+                "FROM (SELECT 1) one LEFT JOIN inserted rl" + OWNED_PROJECTION_JOINS;
 
         try {
-            int newLogId = jdbcTemplate.queryForObject(sql, int.class,
-                    readingLog.getUserBookId(), readingLog.getStartDate(),
-                    readingLog.getEndDate(), readingLog.getRating(), readingLog.getNotes());
-
-            newReadingLog = getReadingLogById(newLogId);
+            OwnedMutation<ReadingLog> result = jdbcTemplate.query(sql, new OwnedReadingLogExtractor(),
+                    readingLog.getStartDate(), readingLog.getEndDate(), readingLog.getRating(),
+                    readingLog.getNotes(), readingLog.getUserBookId(), userId, readingLog.getUserBookId());
+            publishIfWritten(ReadingLogChangedEvent.Type.CREATED, result, userId);
+            return result;
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
             throw new DaoException("Data integrity violation", e);
         }
-        return newReadingLog;
     }
 
     @Override
-    public ReadingLog updateReadingLog(ReadingLog readingLog) {
-        ReadingLog updatedReadingLog = null;
-        String sql = "UPDATE reading_logs SET user_book_id = ?, start_date = ?, " +
-                "end_date = ?, rating = ?, notes = ? WHERE log_id = ?";
+    public OwnedMutation<ReadingLog> updateReadingLog(ReadingLog readingLog, int userId) {
+        // Both the user book the log is on now and the one it is being moved to must be the caller's
+        String sql = "WITH updated AS (" +
+                "UPDATE reading_logs rl SET user_book_id = ?, start_date = ?, " +
+                "end_date = ?, rating = ?, notes = ? " +
+                "FROM user_books owner WHERE rl.log_id = ? " +
+                "AND owner.user_book_id = rl.user_book_id AND owner.user_id = ? " +
+                "AND EXISTS (SELECT 1 FROM user_books target " +
+                "WHERE target.user_book_id = ? AND target.user_id = ?) " +
+                "RETURNING rl.*) " +
+                "SELECT " + PROJECTION_COLUMNS + ", " +
+                "EXISTS (SELECT 1 FROM reading_logs WHERE log_id = ?) AS row_exists " +
+                "FROM (SELECT 1) one LEFT JOIN updated rl" + OWNED_PROJECTION_JOINS;
 
         try {
-            int rowsAffected = jdbcTemplate.update(sql, readingLog.getUserBookId(),
-                    readingLog.getStartDate(), readingLog.getEndDate(),
-                    readingLog.getRating(), readingLog.getNotes(), readingLog.getLogId());
-
-            if (rowsAffected == 0) {
-                return null;
-            }
-
-            updatedReadingLog = getReadingLogById(readingLog.getLogId());
+            OwnedMutation<ReadingLog> result = jdbcTemplate.query(sql, new OwnedReadingLogExtractor(),
+                    readingLog.getUserBookId(), readingLog.getStartDate(), readingLog.getEndDate(),
+                    readingLog.getRating(), readingLog.getNotes(), readingLog.getLogId(), userId,
+                    readingLog.getUserBookId(), userId, readingLog.getLogId());
+            publishIfWritten(ReadingLogChangedEvent.Type.UPDATED, result, userId);
+            return result;
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
             throw new DaoException("Data integrity violation", e);
         }
-        return updatedReadingLog;
     }
 
     @Override
-    public boolean deleteReadingLog(int logId) {
-        String sql = "DELETE FROM reading_logs WHERE log_id = ?";
+    public OwnedMutation<Void> deleteReadingLog(int logId, int userId) {
+        String sql = "WITH deleted AS (" +
+                "DELETE FROM reading_logs rl USING user_books ub " +
+                "WHERE rl.log_id = ? AND ub.user_book_id = rl.user_book_id AND ub.user_id = ? " +
+                "RETURNING rl.log_id) " +
+                "SELECT d.log_id, EXISTS (SELECT 1 FROM reading_logs WHERE log_id = ?) AS row_exists " +
+                "FROM (SELECT 1) one LEFT JOIN deleted d ON TRUE";
 
         try {
-            int rowsAffected = jdbcTemplate.update(sql, logId);
-            return rowsAffected > 0;
+            OwnedMutation<Void> result = jdbcTemplate.query(sql, (ResultSetExtractor<OwnedMutation<Void>>) rs -> {
+                rs.next();
+                if (rs.getObject(1) == null) {
+                    return rs.getBoolean(2) ? OwnedMutation.forbidden() : OwnedMutation.notFound();
+                }
+                return OwnedMutation.ok(null);
+            }, logId, userId, logId);
+            if (result.getStatus() == OwnedMutation.Status.OK) {
+                eventPublisher.publishEvent(new ReadingLogChangedEvent(ReadingLogChangedEvent.Type.DELETED, logId, userId));
+            }
+            return result;
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
@@ -148,55 +210,76 @@ public class JdbcReadingLogDao implements ReadingLogDao {
         }
     }
 
-    @Override
-    public boolean hasUserAccessToUserBook(String username, int userBookId) {
-        String sql = "SELECT COUNT(*) FROM user_books ub " +
-                "JOIN users u ON ub.user_id = u.user_id " +
-                "WHERE ub.user_book_id = ? AND u.username = ?";
-
-        try {
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, userBookId, username);
-            return count != null && count > 0;
-        } catch (CannotGetJdbcConnectionException e) {
-            throw new DaoException("Unable to connect to server or database", e);
+    private void publishIfWritten(ReadingLogChangedEvent.Type type, OwnedMutation<ReadingLog> result, int userId) {
+        if (result.getStatus() == OwnedMutation.Status.OK) {
+            eventPublisher.publishEvent(new ReadingLogChangedEvent(type, result.getValue().getLogId(), userId));
         }
     }
 
-    @Override
-    public boolean hasUserAccessToReadingLog(String username, int logId) {
-        String sql = "SELECT COUNT(*) FROM reading_logs rl " +
-                "JOIN user_books ub ON rl.user_book_id = ub.user_book_id " +
-                "JOIN users u ON ub.user_id = u.user_id " +
-                "WHERE rl.log_id = ? AND u.username = ?";
+    /**
+     * Reads the single row of an owner-scoped write: the written log, or nulls and row_exists.
+     */
+    private static final class OwnedReadingLogExtractor implements ResultSetExtractor<OwnedMutation<ReadingLog>> {
 
-        try {
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, logId, username);
-            return count != null && count > 0;
-        } catch (CannotGetJdbcConnectionException e) {
-            throw new DaoException("Unable to connect to server or database", e);
+        @Override
+        public OwnedMutation<ReadingLog> extractData(ResultSet rs) throws SQLException {
+            rs.next();
+            if (rs.getObject("log_id") == null) {
+                return rs.getBoolean("row_exists") ? OwnedMutation.forbidden() : OwnedMutation.notFound();
+            }
+            return OwnedMutation.ok(new ReadingLogRowMapper().mapRow(rs, 0));
         }
     }
 
-    private ReadingLog mapRowToReadingLog(SqlRowSet rs) {
-        ReadingLog readingLog = new ReadingLog();
-        readingLog.setLogId(rs.getInt("log_id"));
-        readingLog.setUserBookId(rs.getInt("user_book_id"));
-        readingLog.setStartDate(rs.getDate("start_date").toLocalDate());
+    /**
+     * Maps the joined reading log projection. Column positions are looked up on the first row and
+     * reused for the rest, so use a fresh instance for each query.
+     */
+    static final class ReadingLogRowMapper implements RowMapper<ReadingLog> {
 
-        if (rs.getDate("end_date") != null) {
-            readingLog.setEndDate(rs.getDate("end_date").toLocalDate());
-        }
+        private int logId;
+        private int userBookId;
+        private int startDate;
+        private int endDate;
+        private int rating;
+        private int notes;
+        private int userId;
+        private int username;
+        private int title;
+        private int author;
 
-        if (rs.getObject("rating") != null) {
-            readingLog.setRating(rs.getInt("rating"));
-        }
+        @Override
+        public ReadingLog mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (logId == 0) {
+                logId = rs.findColumn("log_id");
+                userBookId = rs.findColumn("user_book_id");
+                startDate = rs.findColumn("start_date");
+                endDate = rs.findColumn("end_date");
+                rating = rs.findColumn("rating");
+                notes = rs.findColumn("notes");
+                userId = rs.findColumn("user_id");
+                username = rs.findColumn("username");
+                title = rs.findColumn("title");
+                author = rs.findColumn("author");
+            }
+
+            ReadingLog readingLog = new ReadingLog();
+            readingLog.setLogId(rs.getInt(logId));
+            readingLog.setUserBookId(rs.getInt(userBookId));
+            readingLog.setStartDate(rs.getObject(startDate, LocalDate.class));
+            readingLog.setEndDate(rs.getObject(endDate, LocalDate.class));
 
-        readingLog.setNotes(rs.getString("notes"));
-        readingLog.setUserId(rs.getInt("user_id"));
-        readingLog.setUsername(rs.getString("username"));
-        readingLog.setBookTitle(rs.getString("title"));
-        readingLog.setBookAuthor(rs.getString("author"));
+            int ratingValue = rs.getInt(rating);
+            if (!rs.wasNull()) {
+                readingLog.setRating(ratingValue);
+            }
 
-        return readingLog;
+            readingLog.setNotes(rs.getString(notes));
+            readingLog.setUserId(rs.getInt(userId));
+            readingLog.setUsername(rs.getString(username));
+            readingLog.setBookTitle(rs.getString(title));
+            readingLog.setBookAuthor(rs.getString(author));
+            return readingLog;
+        }
     }
 }
\ No newline at end of file
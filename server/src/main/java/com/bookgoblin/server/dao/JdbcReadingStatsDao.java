@@ -0,0 +1,134 @@
+package com.bookgoblin.server.dao;
+
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.ReadingStatsMonth;
+import com.bookgoblin.server.model.ReadingStreaks;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Reads the reading statistics rollups. The rollups are written by triggers on reading_logs and
+ * user_books (see book_goblin.sql); this class only rebuilds them wholesale for a backfill.
+ */
+@Component
+public class JdbcReadingStatsDao implements ReadingStatsDao {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+
+    public JdbcReadingStatsDao(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public List<ReadingStatsMonth> getMonthlyStats(int userId) {
+        List<ReadingStatsMonth> months;
+        String sql = "SELECT month, finished_count, finish_days_total, rating_1_count, rating_2_count, " +
+                "rating_3_count, rating_4_count, rating_5_count " +
+                "FROM reading_stats_monthly WHERE user_id = ? ORDER BY month";
+
+        try {
+            months = jdbcTemplate.query(sql, new ReadingStatsMonthRowMapper(), userId);
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+        return months;
+    }
+
+    @Override
+    public ReadingStreaks getStreaks(int userId) {
+        // Consecutive days minus their position in the sequence give the same date, which groups
+        // each run of days together
+        String sql = "WITH runs AS (" +
+                "SELECT day - (ROW_NUMBER() OVER (ORDER BY day))::int AS run_start, day " +
+                "FROM reading_stats_days WHERE user_id = ?), " +
+                "streaks AS (SELECT MAX(day) AS last_day, COUNT(*) AS length FROM runs GROUP BY run_start) " +
+                "SELECT COALESCE(MAX(length) FILTER (WHERE last_day >= CURRENT_DATE - 1), 0) AS current_streak, " +
+                "COALESCE(MAX(length), 0) AS longest_streak FROM streaks";
+
+        try {
+            return jdbcTemplate.queryForObject(sql, (rs, rowNum) ->
+                    new ReadingStreaks(rs.getInt("current_streak"), rs.getInt("longest_streak")), userId);
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
+    @Override
+    public int getMaxUserId() {
+        String sql = "SELECT COALESCE(MAX(user_id), 0) FROM users";
+
+        try {
+            Integer maxUserId = jdbcTemplate.queryForObject(sql, Integer.class);
+            return maxUserId != null ? maxUserId : 0;
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
+    @Override
+    public long rebuildStats(int fromUserId, int toUserId) {
+        // The rollup triggers take each user's advisory lock in shared mode (see apply_reading_stats),
+        // so holding it exclusively holds back stats writes for this range only, until this
+        // transaction commits, and a trigger cannot count a log the rebuild has already counted.
+        // Locks are taken in user id order, so chunks never wait on each other.
+        String lock = "SELECT COUNT(pg_advisory_xact_lock(1, user_id)) FROM generate_series(?, ?) AS user_id";
+        String clearMonthly = "DELETE FROM reading_stats_monthly WHERE user_id BETWEEN ? AND ?";
+        String clearDays = "DELETE FROM reading_stats_days WHERE user_id BETWEEN ? AND ?";
+        String monthly = "INSERT INTO reading_stats_monthly (user_id, month, finished_count, " +
+                "finish_days_total, rating_1_count, rating_2_count, rating_3_count, rating_4_count, rating_5_count) " +
+                "SELECT ub.user_id, date_trunc('month', COALESCE(rl.end_date, rl.start_date))::date, " +
+                "COUNT(rl.end_date), COALESCE(SUM(rl.end_date - rl.start_date), 0), " +
+                "COUNT(*) FILTER (WHERE rl.rating = 1), COUNT(*) FILTER (WHERE rl.rating = 2), " +
+                "COUNT(*) FILTER (WHERE rl.rating = 3), COUNT(*) FILTER (WHERE rl.rating = 4), " +
+                "COUNT(*) FILTER (WHERE rl.rating = 5) " +
+                "FROM reading_logs rl JOIN user_books ub ON rl.user_book_id = ub.user_book_id " +
+                "WHERE ub.user_id BETWEEN ? AND ? GROUP BY 1, 2";
+        String days = "INSERT INTO reading_stats_days (user_id, day, activity_count) " +
+                "SELECT ub.user_id, d.day, COUNT(*) " +
+                "FROM reading_logs rl JOIN user_books ub ON rl.user_book_id = ub.user_book_id " +
+                "CROSS JOIN LATERAL (VALUES (rl.start_date), (rl.end_date)) d(day) " +
+                "WHERE ub.user_id BETWEEN ? AND ? AND d.day IS NOT NULL GROUP BY 1, 2";
+        String countLogs = "SELECT COUNT(*) FROM reading_logs rl " +
+                "JOIN user_books ub ON rl.user_book_id = ub.user_book_id WHERE ub.user_id BETWEEN ? AND ?";
+
+        try {
+            Long logs = transaction.execute(status -> {
+                jdbcTemplate.queryForObject(lock, Long.class, fromUserId, toUserId);
+                jdbcTemplate.update(clearMonthly, fromUserId, toUserId);
+                jdbcTemplate.update(clearDays, fromUserId, toUserId);
+                jdbcTemplate.update(monthly, fromUserId, toUserId);
+                jdbcTemplate.update(days, fromUserId, toUserId);
+                return jdbcTemplate.queryForObject(countLogs, Long.class, fromUserId, toUserId);
+            });
+            return logs != null ? logs : 0;
+        } catch (CannotGetJdbcConnectionException | CannotCreateTransactionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
+    private static final class ReadingStatsMonthRowMapper implements RowMapper<ReadingStatsMonth> {
+
+        @Override
+        public ReadingStatsMonth mapRow(ResultSet rs, int rowNum) throws SQLException {
+            int[] ratingCounts = new int[5];
+            for (int rating = 1; rating <= 5; rating++) {
+                ratingCounts[rating - 1] = rs.getInt("rating_" + rating + "_count");
+            }
+            return new ReadingStatsMonth(YearMonth.from(rs.getObject("month", LocalDate.class)),
+                    rs.getInt("finished_count"), rs.getInt("finish_days_total"), ratingCounts);
+        }
+    }
+}
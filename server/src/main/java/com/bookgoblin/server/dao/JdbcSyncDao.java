@@ -0,0 +1,82 @@
+package com.bookgoblin.server.dao;
+
+
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.SyncChanges;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reads the delta sync. Row versions, tombstones and the triggers that keep them are in
+ * book_goblin.sql, along with why the next version is the snapshot's xmin rather than the highest
+ * version read.
+ */
+@Component
+public class JdbcSyncDao implements SyncDao {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate snapshotTransaction;
+
+    public JdbcSyncDao(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Every query below sees the snapshot taken by the first
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    @Override
+    public SyncChanges getChanges(int userId, Long since) {
+        // A row is also sent again when its book's title or author changed, since it carries them
+        String horizon = "SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint";
+        String userBooks = "SELECT ub.user_book_id, ub.user_id, ub.book_id, ub.date_added, " +
+                "ub.is_owned, ub.current_status, u.username, b.title, b.author " +
+                "FROM user_books ub " +
+                "JOIN users u ON ub.user_id = u.user_id " +
+                "JOIN books b ON ub.book_id = b.book_id " +
+                "WHERE ub.user_id = ? AND (ub.version >= ? OR b.sync_version >= ?) " +
+                "ORDER BY ub.user_book_id";
+        String readingLogs = "SELECT rl.log_id, rl.user_book_id, rl.start_date, rl.end_date, " +
+                "rl.rating, rl.notes, ub.user_id, u.username, b.title, b.author " +
+                "FROM user_books ub " +
+                "JOIN reading_logs rl ON rl.user_book_id = ub.user_book_id " +
+                "JOIN users u ON ub.user_id = u.user_id " +
+                "JOIN books b ON ub.book_id = b.book_id " +
+                "WHERE ub.user_id = ? AND (rl.version >= ? OR b.sync_version >= ?) " +
+                "ORDER BY rl.log_id";
+        String tombstones = "SELECT entity, entity_id FROM sync_tombstones " +
+                "WHERE user_id = ? AND version >= ? ORDER BY entity_id";
+
+        long from = since != null ? since : Long.MIN_VALUE;
+        try {
+            return snapshotTransaction.execute(status -> {
+                SyncChanges changes = new SyncChanges();
+                Long version = jdbcTemplate.queryForObject(horizon, Long.class);
+                changes.setVersion(version != null ? version : 0);
+                changes.setFull(since == null);
+                changes.setUserBooks(jdbcTemplate.query(userBooks,
+                        new JdbcUserBookDao.UserBookRowMapper(), userId, from, from));
+                changes.setReadingLogs(jdbcTemplate.query(readingLogs,
+                        new JdbcReadingLogDao.ReadingLogRowMapper(), userId, from, from));
+                if (since != null) {
+                    jdbcTemplate.query(tombstones, (RowCallbackHandler) rs -> {
+                        if ("user_book".equals(rs.getString(1))) {
+                            changes.getDeletedUserBookIds().add(rs.getInt(2));
+                        } else {
+                            changes.getDeletedReadingLogIds().add(rs.getInt(2));
+                        }
+                    }, userId, since);
+                }
+                return changes;
+            });
+        } catch (CannotGetJdbcConnectionException | CannotCreateTransactionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+}
@@ -1,53 +1,102 @@
 package com.bookgoblin.server.dao;
 
 
+import com.bookgoblin.server.event.TagChangedEvent;
 import com.bookgoblin.server.exception.DaoException;
 import com.bookgoblin.server.model.Tag;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class JdbcTagDao implements TagDao {
 
+    // Rows are two ints, so fetch many more per round trip than the book streams do
+    private static final int STREAM_FETCH_SIZE = 5000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate readOnlyTransaction;
 
-    public JdbcTagDao(JdbcTemplate jdbcTemplate) {
+    public JdbcTagDao(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher,
+                      PlatformTransactionManager transactionManager) {
         this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     @Override
     public List<Tag> getTags() {
-        List<Tag> tags = new ArrayList<>();
+        List<Tag> tags;
         String sql = "SELECT * FROM tags ORDER BY name";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql);
-            while (results.next()) {
-                Tag tag = mapRowToTag(results);
+            tags = jdbcTemplate.query(sql, new TagRowMapper());
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+        return tags;
+    }
+
+    @Override
+    public List<Tag> getTagsWithBookCounts() {
+        List<Tag> tags = new ArrayList<>();
+        String sql = "SELECT t.tag_id, t.name, COUNT(bt.book_id) AS book_count FROM tags t " +
+                "LEFT JOIN book_tags bt ON bt.tag_id = t.tag_id " +
+                "GROUP BY t.tag_id, t.name " +
+                "ORDER BY t.name";
+
+        try {
+            TagRowMapper mapper = new TagRowMapper();
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                Tag tag = mapper.mapRow(rs, 0);
+                tag.setBookCount(rs.getInt("book_count"));
                 tags.add(tag);
-            }
+            });
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
         return tags;
     }
 
+    @Override
+    public int countBooksWithTag(int tagId) {
+        String sql = "SELECT COUNT(*) FROM book_tags WHERE tag_id = ?";
+
+        try {
+            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, tagId);
+            return count != null ? count : 0;
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
     @Override
     public Tag getTagById(int tagId) {
         Tag tag = null;
         String sql = "SELECT * FROM tags WHERE tag_id = ?";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, tagId);
-            if (results.next()) {
-                tag = mapRowToTag(results);
-            }
+            tag = DataAccessUtils.singleResult(jdbcTemplate.query(sql, new TagRowMapper(), tagId));
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
@@ -56,32 +105,87 @@ public class JdbcTagDao implements TagDao {
 
     @Override
     public List<Tag> getTagsByBookId(int bookId) {
-        List<Tag> tags = new ArrayList<>();
+        List<Tag> tags;
         String sql = "SELECT t.* FROM tags t " +
                 "JOIN book_tags bt ON t.tag_id = bt.tag_id " +
                 "WHERE bt.book_id = ? " +
                 "ORDER BY t.name";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, bookId);
-            while (results.next()) {
-                Tag tag = mapRowToTag(results);
-                tags.add(tag);
-            }
+            tags = jdbcTemplate.query(sql, new TagRowMapper(), bookId);
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
         return tags;
     }
 
+    @Override
+    public Map<Integer, List<Tag>> getTagsByBookIds(Collection<Integer> bookIds) {
+        Map<Integer, List<Tag>> tagsByBookId = new LinkedHashMap<>();
+        for (Integer bookId : bookIds) {
+            tagsByBookId.put(bookId, new ArrayList<>());
+        }
+        if (tagsByBookId.isEmpty()) {
+            return tagsByBookId;
+        }
+        // One row per book rather than per tag, with the tags folded into parallel arrays
+        String sql = "SELECT bt.book_id, array_agg(t.tag_id ORDER BY t.name) AS tag_ids, " +
+                "array_agg(t.name ORDER BY t.name) AS names " +
+                "FROM book_tags bt " +
+                "JOIN tags t ON t.tag_id = bt.tag_id " +
+                "WHERE bt.book_id = ANY (?) " +
+                "GROUP BY bt.book_id";
+
+        try {
+            jdbcTemplate.query(sql,
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", tagsByBookId.keySet().toArray())),
+                    (RowCallbackHandler) rs -> {
+                        List<Tag> tags = tagsByBookId.get(rs.getInt("book_id"));
+                        Integer[] tagIds = (Integer[]) arrayOf(rs.getArray("tag_ids"));
+                        String[] names = (String[]) arrayOf(rs.getArray("names"));
+                        for (int i = 0; i < tagIds.length; i++) {
+                            Tag tag = new Tag(names[i]);
+                            tag.setTagId(tagIds[i]);
+                            tags.add(tag);
+                        }
+                    });
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+        return tagsByBookId;
+    }
+
+    @Override
+    public void streamBookTags(BookTagConsumer consumer) {
+        String sql = "SELECT b.book_id, COALESCE(bt.tag_id, 0) FROM books b " +
+                "LEFT JOIN book_tags bt ON bt.book_id = b.book_id ORDER BY b.book_id";
+
+        try {
+            // Autocommit has to be off for the driver to use a server-side cursor instead of buffering every row
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                return ps;
+            }, (RowCallbackHandler) rs -> consumer.accept(rs.getInt(1), rs.getInt(2))));
+        } catch (CannotGetJdbcConnectionException | CannotCreateTransactionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
     @Override
     public Tag createTag(Tag tag) {
         Tag newTag = null;
-        String sql = "INSERT INTO tags (name) VALUES (?) RETURNING tag_id";
+        String sql = "INSERT INTO tags (name) VALUES (?) " +
+                // A taken name inserts nothing and so returns no row
+                "ON CONFLICT (name) DO NOTHING " +
+                "RETURNING tag_id, name";
 
         try {
-            int newTagId = jdbcTemplate.queryForObject(sql, int.class, tag.getName());
-            newTag = getTagById(newTagId);
+            newTag = DataAccessUtils.singleResult(jdbcTemplate.query(sql, new TagRowMapper(), tag.getName()));
+            if (newTag != null) {
+                eventPublisher.publishEvent(TagChangedEvent.created(newTag));
+            }
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
@@ -93,16 +197,16 @@ public class JdbcTagDao implements TagDao {
     @Override
     public Tag updateTag(Tag tag) {
         Tag updatedTag = null;
-        String sql = "UPDATE tags SET name = ? WHERE tag_id = ?";
+        String sql = "UPDATE tags SET name = ? WHERE tag_id = ? RETURNING tag_id, name";
 
         try {
-            int rowsAffected = jdbcTemplate.update(sql, tag.getName(), tag.getTagId());
+            updatedTag = DataAccessUtils.singleResult(jdbcTemplate.query(sql, new TagRowMapper(),
+                    tag.getName(), tag.getTagId()));
 
-            if (rowsAffected == 0) {
+            if (updatedTag == null) {
                 return null;
             }
-
-            updatedTag = getTagById(tag.getTagId());
+            eventPublisher.publishEvent(TagChangedEvent.updated(updatedTag));
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
@@ -117,6 +221,9 @@ public class JdbcTagDao implements TagDao {
 
         try {
             int rowsAffected = jdbcTemplate.update(sql, tagId);
+            if (rowsAffected > 0) {
+                eventPublisher.publishEvent(TagChangedEvent.deleted(tagId));
+            }
             return rowsAffected > 0;
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
@@ -127,15 +234,19 @@ public class JdbcTagDao implements TagDao {
 
     @Override
     public boolean addTagToBook(int tagId, int bookId) {
-        String sql = "INSERT INTO book_tags (book_id, tag_id) VALUES (?, ?)";
+        String sql = "INSERT INTO book_tags (book_id, tag_id) VALUES (?, ?) " +
+                "ON CONFLICT (book_id, tag_id) DO NOTHING";
 
         try {
             int rowsAffected = jdbcTemplate.update(sql, bookId, tagId);
+            if (rowsAffected > 0) {
+                eventPublisher.publishEvent(TagChangedEvent.addedToBook(tagId, bookId));
+            }
             return rowsAffected > 0;
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
-            return false; // Tag already assigned to book
+            return false; // Unknown book or tag
         }
     }
 
@@ -145,6 +256,9 @@ public class JdbcTagDao implements TagDao {
 
         try {
             int rowsAffected = jdbcTemplate.update(sql, bookId, tagId);
+            if (rowsAffected > 0) {
+                eventPublisher.publishEvent(TagChangedEvent.removedFromBook(tagId, bookId));
+            }
             return rowsAffected > 0;
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
@@ -153,10 +267,34 @@ public class JdbcTagDao implements TagDao {
         }
     }
 
-    private Tag mapRowToTag(SqlRowSet rs) {
-        Tag tag = new Tag();
-        tag.setTagId(rs.getInt("tag_id"));
-        tag.setName(rs.getString("name"));
-        return tag;
+    private static Object arrayOf(Array array) throws SQLException {
+        try {
+            return array.getArray();
+        } finally {
+            array.free();
+        }
+    }
+
+    /**
+     * Column positions are looked up on the first row and reused for the rest, so use a fresh
+     * instance for each query.
+     */
+    private static final class TagRowMapper implements RowMapper<Tag> {
+
+        private int tagId;
+        private int name;
+
+        @Override
+        public Tag mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (tagId == 0) {
+                tagId = rs.findColumn("tag_id");
+                name = rs.findColumn("name");
+            }
+
+            Tag tag = new Tag();
+            tag.setTagId(rs.getInt(tagId));
+            tag.setName(rs.getString(name));
+            return tag;
+        }
     }
 }
@@ -1,28 +1,45 @@
 package com.bookgoblin.server.dao;
 
+import com.bookgoblin.server.event.UserBookChangedEvent;
 import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.LibrarySummary;
+import com.bookgoblin.server.model.OwnedMutation;
 import com.bookgoblin.server.model.UserBook;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.ArrayList;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.List;
 
 @Component
 public class JdbcUserBookDao implements UserBookDao {
 
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public JdbcUserBookDao(JdbcTemplate jdbcTemplate) {
+    public JdbcUserBookDao(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           ApplicationEventPublisher eventPublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
     public List<UserBook> getUserBooks() {
-        List<UserBook> userBooks = new ArrayList<>();
+        List<UserBook> userBooks;
         String sql = "SELECT ub.user_book_id, ub.user_id, ub.book_id, ub.date_added, " +
                 "ub.is_owned, ub.current_status, u.username, b.title, b.author " +
                 "FROM user_books ub " +
@@ -31,12 +48,10 @@ public class JdbcUserBookDao implements UserBookDao {
                 "ORDER BY ub.date_added DESC";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql);
-            while (results.next()) {
-                UserBook userBook = mapRowToUserBook(results);
-                userBooks.add(userBook);
-            }
-        } catch (CannotGetJdbcConnectionException e) {
+            // Inside a transaction the driver reads the rows through a cursor, spring.jdbc.template.fetch-size
+            // at a time, instead of buffering the whole result before the first row is mapped
+            userBooks = readOnlyTransaction.execute(status -> jdbcTemplate.query(sql, new UserBookRowMapper()));
+        } catch (CannotGetJdbcConnectionException | CannotCreateTransactionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
         return userBooks;
@@ -53,10 +68,7 @@ public class JdbcUserBookDao implements UserBookDao {
                 "WHERE ub.user_book_id = ?";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, userBookId);
-            if (results.next()) {
-                userBook = mapRowToUserBook(results);
-            }
+            userBook = DataAccessUtils.singleResult(jdbcTemplate.query(sql, new UserBookRowMapper(), userBookId));
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
@@ -65,7 +77,7 @@ public class JdbcUserBookDao implements UserBookDao {
 
     @Override
     public List<UserBook> getUserBooksByUserId(int userId) {
-        List<UserBook> userBooks = new ArrayList<>();
+        List<UserBook> userBooks;
         String sql = "SELECT ub.user_book_id, ub.user_id, ub.book_id, ub.date_added, " +
                 "ub.is_owned, ub.current_status, u.username, b.title, b.author " +
                 "FROM user_books ub " +
@@ -75,11 +87,7 @@ public class JdbcUserBookDao implements UserBookDao {
                 "ORDER BY ub.date_added DESC";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, userId);
-            while (results.next()) {
-                UserBook userBook = mapRowToUserBook(results);
-                userBooks.add(userBook);
-            }
+            userBooks = jdbcTemplate.query(sql, new UserBookRowMapper(), userId);
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
@@ -88,7 +96,7 @@ public class JdbcUserBookDao implements UserBookDao {
 
     @Override
     public List<UserBook> getUserBooksByUsername(String username) {
-        List<UserBook> userBooks = new ArrayList<>();
+        List<UserBook> userBooks;
         String sql = "SELECT ub.user_book_id, ub.user_id, ub.book_id, ub.date_added, " +
                 "ub.is_owned, ub.current_status, u.username, b.title, b.author " +
                 "FROM user_books ub " +
@@ -98,37 +106,91 @@ public class JdbcUserBookDao implements UserBookDao {
                 "ORDER BY ub.date_added DESC";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, username);
-            while (results.next()) {
-                UserBook userBook = mapRowToUserBook(results);
-                userBooks.add(userBook);
-            }
+            userBooks = jdbcTemplate.query(sql, new UserBookRowMapper(), username);
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
         return userBooks;
     }
 
+    @Override
+    public LibrarySummary getLibrarySummary(int userId, int recentLimit) {
+        // The counters and the newest books come back together, the counters repeated on each row.
+        // (SELECT 1) keeps one row for a user with nothing in their library yet.
+        String sql = "SELECT s.total_count, s.owned_count, s.unread_count, s.reading_count, " +
+                "s.finished_count, s.dnf_count, r.* " +
+                "FROM (SELECT 1) one " +
+                "LEFT JOIN user_library_stats s ON s.user_id = ? " +
+                "LEFT JOIN LATERAL (" +
+                "SELECT ub.user_book_id, ub.user_id, ub.book_id, ub.date_added, " +
+                "ub.is_owned, ub.current_status, u.username, b.title, b.author " +
+                "FROM user_books ub " +
+                "JOIN users u ON ub.user_id = u.user_id " +
+                "JOIN books b ON ub.book_id = b.book_id " +
+                "WHERE ub.user_id = ? " +
+                "ORDER BY ub.date_added DESC, ub.user_book_id DESC LIMIT ?) r ON TRUE " +
+                "ORDER BY r.date_added DESC, r.user_book_id DESC";
+
+        try {
+            return jdbcTemplate.query(sql, (ResultSetExtractor<LibrarySummary>) rs -> {
+                LibrarySummary summary = new LibrarySummary();
+                UserBookRowMapper rowMapper = new UserBookRowMapper();
+                while (rs.next()) {
+                    if (rs.getRow() == 1) {
+                        summary.setTotal(rs.getInt("total_count"));
+                        summary.setOwned(rs.getInt("owned_count"));
+                        summary.setUnread(rs.getInt("unread_count"));
+                        summary.setReading(rs.getInt("reading_count"));
+                        summary.setFinished(rs.getInt("finished_count"));
+                        summary.setDnf(rs.getInt("dnf_count"));
+                    }
+                    if (rs.getObject("user_book_id") != null) {
+                        summary.getRecentlyAdded().add(rowMapper.mapRow(rs, rs.getRow() - 1));
+                    }
+                }
+                return summary;
+            }, userId, userId, recentLimit);
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
     @Override
     public UserBook createUserBook(UserBook userBook) {
         UserBook newUserBook = null;
-        String sql = "INSERT INTO user_books (user_id, book_id, date_added, is_owned, current_status) " +
-                "VALUES (?, ?, ?, ?, ?) RETURNING user_book_id";
+        // Writes the row and joins the display columns in one statement. Adding a book that is
+        // already in the library updates its status instead of failing on the unique key;
+        // xmax = 0 only holds for freshly inserted rows.
+        String sql = "WITH inserted AS (" +
+                "INSERT INTO user_books (user_id, book_id, date_added, is_owned, current_status) " +
+                "VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (user_id, book_id) DO UPDATE SET " +
+                "is_owned = EXCLUDED.is_owned, current_status = EXCLUDED.current_status " +
+                "RETURNING user_books.*, (xmax = 0) AS was_inserted) " +
+                "SELECT ub.user_book_id, ub.user_id, ub.book_id, ub.date_added, " +
+                "ub.is_owned, ub.current_status, ub.was_inserted, u.username, b.title, b.author " +
+                "FROM inserted ub " +
+                "JOIN users u ON ub.user_id = u.user_id " +
+                "JOIN books b ON ub.book_id = b.book_id";
 
         try {
-            // First get the user_id from username
-            String userIdSql = "SELECT user_id FROM users WHERE username = ?";
-            Integer userId = jdbcTemplate.queryForObject(userIdSql, Integer.class, userBook.getUsername());
+            UserBookChangedEvent event = jdbcTemplate.query(sql, (ResultSetExtractor<UserBookChangedEvent>) rs -> {
+                if (!rs.next()) {
+                    return null;
+                }
+                UserBook row = new UserBookRowMapper().mapRow(rs, 0);
+                return rs.getBoolean("was_inserted")
+                        ? UserBookChangedEvent.created(row)
+                        : UserBookChangedEvent.updated(row, row.getBookId());
+            }, userBook.getUserId(), userBook.getBookId(), userBook.getDateAdded(),
+                    userBook.isOwned(), userBook.getCurrentStatus());
 
-            if (userId == null) {
-                throw new DaoException("User not found");
+            if (event == null) {
+                throw new DaoException("User book was not written");
             }
 
-            int newUserBookId = jdbcTemplate.queryForObject(sql, int.class,
-                    userId, userBook.getBookId(), userBook.getDateAdded(),
-                    userBook.isOwned(), userBook.getCurrentStatus());
-
-            newUserBook = getUserBookById(newUserBookId);
+            newUserBook = event.getUserBook();
+            eventPublisher.publishEvent(event);
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
@@ -138,36 +200,82 @@ public class JdbcUserBookDao implements UserBookDao {
     }
 
     @Override
-    public UserBook updateUserBook(UserBook userBook) {
-        UserBook updatedUserBook = null;
-        String sql = "UPDATE user_books SET book_id = ?, date_added = ?, " +
-                "is_owned = ?, current_status = ? WHERE user_book_id = ?";
+    public OwnedMutation<UserBook> updateUserBook(UserBook userBook, int userId) {
+        // Only the owner's row is updated. Joining the row to itself exposes its pre-update values,
+        // so we learn the previous book for free. The outer query always returns one row, and
+        // row_exists (evaluated against the same snapshot as the update) tells a missing row from
+        // someone else's.
+        String sql = "WITH updated AS (" +
+                "UPDATE user_books ub SET book_id = ?, date_added = ?, " +
+                "is_owned = ?, current_status = ? " +
+                "FROM user_books old WHERE old.user_book_id = ub.user_book_id " +
+                "AND ub.user_book_id = ? AND ub.user_id = ? " +
+                "RETURNING ub.*, old.book_id AS previous_book_id) " +
+                "SELECT ub.user_book_id, ub.user_id, ub.book_id, ub.date_added, " +
+                "ub.is_owned, ub.current_status, ub.previous_book_id, u.username, b.title, b.author, " +
+                "EXISTS (SELECT 1 FROM user_books WHERE user_book_id = ?) AS row_exists " +
+                "FROM (SELECT 1) one " +
+                "LEFT JOIN updated ub ON TRUE " +
+                "LEFT JOIN users u ON ub.user_id = u.user_id " +
+                "LEFT JOIN books b ON ub.book_id = b.book_id";
 
         try {
-            int rowsAffected = jdbcTemplate.update(sql, userBook.getBookId(),
-                    userBook.getDateAdded(), userBook.isOwned(),
-                    userBook.getCurrentStatus(), userBook.getUserBookId());
+            OwnedMutation<UserBookChangedEvent> result = jdbcTemplate.query(sql,
+                    (ResultSetExtractor<OwnedMutation<UserBookChangedEvent>>) rs -> {
+                rs.next();
+                if (rs.getObject("user_book_id") == null) {
+                    return rs.getBoolean("row_exists") ? OwnedMutation.forbidden() : OwnedMutation.notFound();
+                }
+                return OwnedMutation.ok(UserBookChangedEvent.updated(new UserBookRowMapper().mapRow(rs, 0),
+                        rs.getInt("previous_book_id")));
+            }, userBook.getBookId(), userBook.getDateAdded(), userBook.isOwned(),
+                    userBook.getCurrentStatus(), userBook.getUserBookId(), userId, userBook.getUserBookId());
 
-            if (rowsAffected == 0) {
-                return null;
+            if (result.getStatus() != OwnedMutation.Status.OK) {
+                return OwnedMutation.copyOf(result);
             }
 
-            updatedUserBook = getUserBookById(userBook.getUserBookId());
+            eventPublisher.publishEvent(result.getValue());
+            return OwnedMutation.ok(result.getValue().getUserBook());
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
             throw new DaoException("Data integrity violation", e);
         }
-        return updatedUserBook;
     }
 
     @Override
-    public boolean deleteUserBook(int userBookId) {
-        String sql = "DELETE FROM user_books WHERE user_book_id = ?";
+    public OwnedMutation<Void> deleteUserBook(int userBookId, int userId) {
+        // Same shape as updateUserBook: one row back whether or not anything was deleted
+        String sql = "WITH deleted AS (" +
+                "DELETE FROM user_books WHERE user_book_id = ? AND user_id = ? " +
+                "RETURNING user_book_id, user_id, book_id, is_owned, current_status) " +
+                "SELECT d.user_book_id, d.user_id, d.book_id, d.is_owned, d.current_status, " +
+                "EXISTS (SELECT 1 FROM user_books WHERE user_book_id = ?) AS row_exists " +
+                "FROM (SELECT 1) one LEFT JOIN deleted d ON TRUE";
 
         try {
-            int rowsAffected = jdbcTemplate.update(sql, userBookId);
-            return rowsAffected > 0;
+            OwnedMutation<UserBook> result = jdbcTemplate.query(sql,
+                    (ResultSetExtractor<OwnedMutation<UserBook>>) rs -> {
+                rs.next();
+                if (rs.getObject(1) == null) {
+                    return rs.getBoolean(6) ? OwnedMutation.forbidden() : OwnedMutation.notFound();
+                }
+                UserBook row = new UserBook();
+                row.setUserBookId(rs.getInt(1));
+                row.setUserId(rs.getInt(2));
+                row.setBookId(rs.getInt(3));
+                row.setOwned(rs.getBoolean(4));
+                row.setCurrentStatus(rs.getString(5));
+                return OwnedMutation.ok(row);
+            }, userBookId, userId, userBookId);
+
+            if (result.getStatus() != OwnedMutation.Status.OK) {
+                return OwnedMutation.copyOf(result);
+            }
+
+            eventPublisher.publishEvent(UserBookChangedEvent.deleted(result.getValue()));
+            return OwnedMutation.ok(null);
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         } catch (DataIntegrityViolationException e) {
@@ -175,17 +283,47 @@ public class JdbcUserBookDao implements UserBookDao {
         }
     }
 
-    private UserBook mapRowToUserBook(SqlRowSet rs) {
-        UserBook userBook = new UserBook();
-        userBook.setUserBookId(rs.getInt("user_book_id"));
-        userBook.setUserId(rs.getInt("user_id"));
-        userBook.setBookId(rs.getInt("book_id"));
-        userBook.setDateAdded(rs.getDate("date_added").toLocalDate());
-        userBook.setOwned(rs.getBoolean("is_owned"));
-        userBook.setCurrentStatus(rs.getString("current_status"));
-        userBook.setUsername(rs.getString("username"));
-        userBook.setBookTitle(rs.getString("title"));
-        userBook.setBookAuthor(rs.getString("author"));
-        return userBook;
+    /**
+     * Maps the joined user book projection. Column positions are looked up on the first row and
+     * reused for the rest, so use a fresh instance for each query.
+     */
+    static final class UserBookRowMapper implements RowMapper<UserBook> {
+
+        private int userBookId;
+        private int userId;
+        private int bookId;
+        private int dateAdded;
+        private int owned;
+        private int currentStatus;
+        private int username;
+        private int title;
+        private int author;
+
+        @Override
+        public UserBook mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (userBookId == 0) {
+                userBookId = rs.findColumn("user_book_id");
+                userId = rs.findColumn("user_id");
+                bookId = rs.findColumn("book_id");
+                dateAdded = rs.findColumn("date_added");
+                owned = rs.findColumn("is_owned");
+                currentStatus = rs.findColumn("current_status");
+                username = rs.findColumn("username");
+                title = rs.findColumn("title");
+                author = rs.findColumn("author");
+            }
+
+            UserBook userBook = new UserBook();
+            userBook.setUserBookId(rs.getInt(userBookId));
+            userBook.setUserId(rs.getInt(userId));
+            userBook.setBookId(rs.getInt(bookId));
+            userBook.setDateAdded(rs.getObject(dateAdded, LocalDate.class));
+            userBook.setOwned(rs.getBoolean(owned));
+            userBook.setCurrentStatus(rs.getString(currentStatus));
+            userBook.setUsername(rs.getString(username));
+            userBook.setBookTitle(rs.getString(title));
+            userBook.setBookAuthor(rs.getString(author));
+            return userBook;
+        }
     }
 }
\ No newline at end of file
@@ -3,22 +3,28 @@ package com.bookgoblin.server.dao;
 import com.bookgoblin.server.exception.DaoException;
 import com.bookgoblin.server.model.User;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Component
 public class JdbcUserDao implements UserDao {
 
     private final JdbcTemplate jdbcTemplate;
+    private final PasswordEncoder passwordEncoder;
 
-    public JdbcUserDao(JdbcTemplate jdbcTemplate) {
+    public JdbcUserDao(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder) {
         this.jdbcTemplate = jdbcTemplate;
+        this.passwordEncoder = passwordEncoder;
     }
 
     @Override
@@ -28,10 +34,7 @@ public class JdbcUserDao implements UserDao {
         String sql = "SELECT * FROM users WHERE user_id = ?";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, userId);
-            if (results.next()) {
-                user = mapRowToUser(results);
-            }
+            user = DataAccessUtils.singleResult(jdbcTemplate.query(sql, new UserRowMapper(), userId));
         }
         catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
@@ -42,15 +45,11 @@ public class JdbcUserDao implements UserDao {
     @Override
     public List<User> getUsers() {
 
-        List<User> users = new ArrayList<>();
+        List<User> users;
         String sql = "SELECT * FROM users ORDER BY username";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql);
-            while (results.next()) {
-                User user = mapRowToUser(results);
-                users.add(user);
-            }
+            users = jdbcTemplate.query(sql, new UserRowMapper());
         }
         catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
@@ -68,10 +67,7 @@ public class JdbcUserDao implements UserDao {
         String sql = "SELECT * FROM users WHERE username = ?";
 
         try {
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, username);
-            if (results.next()) {
-                user = mapRowToUser(results);
-            }
+            user = DataAccessUtils.singleResult(jdbcTemplate.query(sql, new UserRowMapper(), username));
         }
         catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
@@ -79,6 +75,30 @@ public class JdbcUserDao implements UserDao {
         return user;
     }
 
+    @Override
+    public boolean isUsernameTaken(String username) {
+        String sql = "SELECT EXISTS (SELECT 1 FROM users WHERE username = ?)";
+
+        try {
+            return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, username));
+        }
+        catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
+    @Override
+    public void forEachUsername(Consumer<String> consumer) {
+        String sql = "SELECT username FROM users";
+
+        try {
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> consumer.accept(rs.getString(1)));
+        }
+        catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
     @Override
     public User createUser(User newUser) {
 
@@ -86,17 +106,18 @@ public class JdbcUserDao implements UserDao {
         String insertUserSql = "INSERT INTO users " +
                 "(username, password_hash, role) " +
                 "VALUES (?, ?, ?) " +
-                "RETURNING user_id";
+                // A taken username inserts nothing and so returns no row
+                "ON CONFLICT (username) DO NOTHING " +
+                "RETURNING user_id, username, password_hash, role";
 
         if (newUser.getHashedPassword() == null) {
             throw new DaoException("User cannot be created with null password");
         }
         try {
-            String passwordHash = new BCryptPasswordEncoder().encode(newUser.getHashedPassword());
+            String passwordHash = passwordEncoder.encode(newUser.getHashedPassword());
 
-            Integer userId = jdbcTemplate.queryForObject(insertUserSql, int.class,
-                    newUser.getUsername(), passwordHash, newUser.getRole());
-            user =  getUserById(userId);
+            user = DataAccessUtils.singleResult(jdbcTemplate.query(insertUserSql, new UserRowMapper(),
+                    newUser.getUsername(), passwordHash, newUser.getRole()));
         }
         catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
@@ -107,12 +128,44 @@ public class JdbcUserDao implements UserDao {
         return user;
     }
 
-    private User mapRowToUser(SqlRowSet rs) {
-        User user = new User();
-        user.setId(rs.getInt("user_id"));
-        user.setUsername(rs.getString("username"));
-        user.setHashedPassword(rs.getString("password_hash"));
-        user.setRole(rs.getString("role"));
-        return user;
+    @Override
+    public boolean updatePasswordHash(String username, String passwordHash) {
+        String sql = "UPDATE users SET password_hash = ? WHERE username = ?";
+
+        try {
+            return jdbcTemplate.update(sql, passwordHash, username) == 1;
+        }
+        catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
+    /**
+     * Column positions are looked up on the first row and reused for the rest, so use a fresh
+     * instance for each query.
+     */
+    private static final class UserRowMapper implements RowMapper<User> {
+
+        private int userId;
+        private int username;
+        private int passwordHash;
+        private int role;
+
+        @Override
+        public User mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (userId == 0) {
+                userId = rs.findColumn("user_id");
+                username = rs.findColumn("username");
+                passwordHash = rs.findColumn("password_hash");
+                role = rs.findColumn("role");
+            }
+
+            User user = new User();
+            user.setId(rs.getInt(userId));
+            user.setUsername(rs.getString(username));
+            user.setHashedPassword(rs.getString(passwordHash));
+            user.setRole(rs.getString(role));
+            return user;
+        }
     }
 }
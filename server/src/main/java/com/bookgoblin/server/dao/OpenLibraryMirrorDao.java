@@ -0,0 +1,31 @@
+package com.bookgoblin.server.dao;
+
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.OpenLibraryAuthor;
+import com.bookgoblin.server.model.OpenLibraryEdition;
+import com.bookgoblin.server.model.OpenLibraryWork;
+
+import java.util.List;
+
+/**
+ * The local copy of the Open Library catalog (ol_authors, ol_works, ol_editions).
+ */
+public interface OpenLibraryMirrorDao {
+
+    /**
+     * Full-text search over work titles and author names, best match first, shaped like the
+     * results of a live Open Library search.
+     */
+    List<Book> searchBooks(String query, int limit);
+
+    // Each batch is written in one transaction; records already present are replaced
+    void upsertAuthors(List<OpenLibraryAuthor> authors);
+    void upsertWorks(List<OpenLibraryWork> works);
+    void upsertEditions(List<OpenLibraryEdition> editions);
+
+    /**
+     * Fills in the columns that depend on other record types: author names on works, and a work's
+     * first publication year from its editions when the work record did not carry one.
+     */
+    void linkImportedRecords();
+}
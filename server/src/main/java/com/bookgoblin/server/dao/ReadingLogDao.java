@@ -1,16 +1,18 @@
 package com.bookgoblin.server.dao;
 
+import com.bookgoblin.server.model.OwnedMutation;
 import com.bookgoblin.server.model.ReadingLog;
 
 import java.util.List;
 
 public interface ReadingLogDao {
     List<ReadingLog> getReadingLogs();
-    ReadingLog getReadingLogById(int logId);
-    List<ReadingLog> getReadingLogsByUserBookId(int userBookId);
-    ReadingLog createReadingLog(ReadingLog readingLog);
-    ReadingLog updateReadingLog(ReadingLog readingLog);
-    boolean deleteReadingLog(int logId);
-    boolean hasUserAccessToUserBook(String username, int userBookId);
-    boolean hasUserAccessToReadingLog(String username, int logId);
-}
\ No newline at end of file
+    // Everything below checks ownership and does the work in a single statement, only for userId's logs
+    OwnedMutation<ReadingLog> getReadingLogById(int logId, int userId);
+    // NOT_FOUND or FORBIDDEN refer to the user book; a book with no logs yet is OK with an empty list
+    OwnedMutation<List<ReadingLog>> getReadingLogsByUserBookId(int userBookId, int userId);
+    OwnedMutation<ReadingLog> createReadingLog(ReadingLog readingLog, int userId);
+    // The log may only be moved to another of userId's own user books
+    OwnedMutation<ReadingLog> updateReadingLog(ReadingLog readingLog, int userId);
+    OwnedMutation<Void> deleteReadingLog(int logId, int userId);
+}
@@ -0,0 +1,17 @@
+package com.bookgoblin.server.dao;
+
+import com.bookgoblin.server.model.ReadingStatsMonth;
+import com.bookgoblin.server.model.ReadingStreaks;
+
+import java.util.List;
+
+public interface ReadingStatsDao {
+    // Oldest month first
+    List<ReadingStatsMonth> getMonthlyStats(int userId);
+    ReadingStreaks getStreaks(int userId);
+    // Highest user id, or 0 when there are no users
+    int getMaxUserId();
+    // Recomputes the rollups of users fromUserId to toUserId inclusive from their logs; returns the logs read.
+    // Throws PessimisticLockingFailureException when chosen as a deadlock victim; nothing is changed then.
+    long rebuildStats(int fromUserId, int toUserId);
+}
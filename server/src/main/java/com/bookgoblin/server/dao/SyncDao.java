@@ -0,0 +1,10 @@
+package com.bookgoblin.server.dao;
+
+
+import com.bookgoblin.server.model.SyncChanges;
+
+public interface SyncDao {
+    // Everything of userId's written at or after version since, or all of it when since is null,
+    // read from one snapshot
+    SyncChanges getChanges(int userId, Long since);
+}
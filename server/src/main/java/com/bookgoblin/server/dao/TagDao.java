@@ -3,12 +3,27 @@ package com.bookgoblin.server.dao;
 
 import com.bookgoblin.server.model.Tag;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface TagDao {
+
+    interface BookTagConsumer {
+        void accept(int bookId, int tagId);
+    }
+
     List<Tag> getTags();
+    // Every tag with its bookCount filled in, ordered by name
+    List<Tag> getTagsWithBookCounts();
+    int countBooksWithTag(int tagId);
     Tag getTagById(int tagId);
     List<Tag> getTagsByBookId(int bookId);
+    // Every requested id is a key, in the order given; books without tags map to an empty list
+    Map<Integer, List<Tag>> getTagsByBookIds(Collection<Integer> bookIds);
+    // Every (book, tag) pair in book_id order straight off a database cursor; untagged books come once with tag 0
+    void streamBookTags(BookTagConsumer consumer);
+    // Null when a tag with that name already exists
     Tag createTag(Tag tag);
     Tag updateTag(Tag tag);
     boolean deleteTag(int tagId);
@@ -1,6 +1,8 @@
 package com.bookgoblin.server.dao;
 
 
+import com.bookgoblin.server.model.LibrarySummary;
+import com.bookgoblin.server.model.OwnedMutation;
 import com.bookgoblin.server.model.UserBook;
 
 import java.util.List;
@@ -10,7 +12,11 @@ public interface UserBookDao {
     UserBook getUserBookById(int userBookId);
     List<UserBook> getUserBooksByUserId(int userId);
     List<UserBook> getUserBooksByUsername(String username);
+    // Read from counters kept by a trigger on user_books, plus the recentLimit newest books
+    LibrarySummary getLibrarySummary(int userId, int recentLimit);
+    // Adds the book to the library of userBook.userId, or updates it if it is already there
     UserBook createUserBook(UserBook userBook);
-    UserBook updateUserBook(UserBook userBook);
-    boolean deleteUserBook(int userBookId);
+    // Only touch rows owned by userId
+    OwnedMutation<UserBook> updateUserBook(UserBook userBook, int userId);
+    OwnedMutation<Void> deleteUserBook(int userBookId, int userId);
 }
@@ -5,6 +5,7 @@ package com.bookgoblin.server.dao;
 import com.bookgoblin.server.model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserDao {
 
@@ -14,5 +15,24 @@ public interface UserDao {
 
     User getUserByUsername(String username);
 
+    boolean isUsernameTaken(String username);
+
+    /**
+     * Passes every username to the consumer, in no particular order.
+     */
+    void forEachUsername(Consumer<String> consumer);
+
+    /**
+     * Creates a user, hashing the password given in {@code hashedPassword}.
+     *
+     * @return the new user, or null if the username is already taken
+     */
     User createUser(User newUser);
+
+    /**
+     * Replaces a user's stored password hash.
+     *
+     * @return false if there is no such user
+     */
+    boolean updatePasswordHash(String username, String passwordHash);
 }
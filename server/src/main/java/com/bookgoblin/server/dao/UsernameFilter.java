@@ -0,0 +1,81 @@
+package com.bookgoblin.server.dao;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over usernames: answers "definitely not taken" or "maybe taken".
+ *
+ * Sized for a target number of names at about a 1% false positive rate. Adding more names than
+ * that keeps it correct but raises the false positive rate, which {@link #isSaturated()} reports.
+ * Bits are set with atomic ORs, so adds and lookups can run from any thread without locking.
+ */
+final class UsernameFilter {
+
+    private static final int HASHES = 7;
+    // Bits per expected name for a 1% false positive rate with 7 hash functions
+    private static final int BITS_PER_NAME = 10;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final long capacity;
+    private final AtomicLong added = new AtomicLong();
+
+    UsernameFilter(long expectedNames) {
+        this.capacity = Math.max(1024, expectedNames);
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (capacity * BITS_PER_NAME + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * 64;
+    }
+
+    void add(String username) {
+        long hash = hash(username);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= HASHES; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+        added.incrementAndGet();
+    }
+
+    boolean mightContain(String username) {
+        long hash = hash(username);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= HASHES; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isSaturated() {
+        return added.get() > capacity;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finished with the MurmurHash3 mixer so both
+     * halves are usable as independent hashes.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,49 @@
+package com.bookgoblin.server.event;
+
+import com.bookgoblin.server.model.Book;
+
+/**
+ * Published by the book DAO after a row in the books table has been written, so in-memory
+ * structures derived from the catalog can stay in sync without polling the database.
+ */
+public class BookChangedEvent {
+
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private final Type type;
+    private final int bookId;
+    private final Book book;
+
+    public BookChangedEvent(Type type, int bookId, Book book) {
+        this.type = type;
+        this.bookId = bookId;
+        this.book = book;
+    }
+
+    public static BookChangedEvent created(Book book) {
+        return new BookChangedEvent(Type.CREATED, book.getBookId(), book);
+    }
+
+    public static BookChangedEvent updated(Book book) {
+        return new BookChangedEvent(Type.UPDATED, book.getBookId(), book);
+    }
+
+    public static BookChangedEvent deleted(int bookId) {
+        return new BookChangedEvent(Type.DELETED, bookId, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    /**
+     * The book as it now stands in the database, or null for deletions.
+     */
+    public Book getBook() {
+        return book;
+    }
+}
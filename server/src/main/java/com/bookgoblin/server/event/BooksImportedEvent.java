@@ -0,0 +1,20 @@
+package com.bookgoblin.server.event;
+
+/**
+ * Published once a bulk import has finished writing. Imports are too large to replay as individual
+ * {@link BookChangedEvent}s, so listeners should reload whatever they derive from the catalog.
+ * Listeners run on the importing request's thread; anything that takes longer than bumping a
+ * version should hand its reload off to a background thread.
+ */
+public class BooksImportedEvent {
+
+    private final long importedCount;
+
+    public BooksImportedEvent(long importedCount) {
+        this.importedCount = importedCount;
+    }
+
+    public long getImportedCount() {
+        return importedCount;
+    }
+}
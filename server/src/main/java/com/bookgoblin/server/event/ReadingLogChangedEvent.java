@@ -0,0 +1,34 @@
+package com.bookgoblin.server.event;
+
+/**
+ * Published by the reading log DAO after a row in reading_logs has been written.
+ */
+public class ReadingLogChangedEvent {
+
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private final Type type;
+    private final int logId;
+    private final int userId;
+
+    public ReadingLogChangedEvent(Type type, int logId, int userId) {
+        this.type = type;
+        this.logId = logId;
+        this.userId = userId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getLogId() {
+        return logId;
+    }
+
+    /**
+     * The user who owns the log.
+     */
+    public int getUserId() {
+        return userId;
+    }
+}
@@ -0,0 +1,66 @@
+package com.bookgoblin.server.event;
+
+import com.bookgoblin.server.model.Tag;
+
+/**
+ * Published by the tag DAO after the tags or book_tags tables have been written, and by the book DAO
+ * as REMOVED_FROM_BOOK for each tag a deleted book carried.
+ */
+public class TagChangedEvent {
+
+    public enum Type { CREATED, UPDATED, DELETED, ADDED_TO_BOOK, REMOVED_FROM_BOOK }
+
+    private final Type type;
+    private final int tagId;
+    private final int bookId;
+    private final Tag tag;
+
+    public TagChangedEvent(Type type, int tagId, int bookId, Tag tag) {
+        this.type = type;
+        this.tagId = tagId;
+        this.bookId = bookId;
+        this.tag = tag;
+    }
+
+    public static TagChangedEvent created(Tag tag) {
+        return new TagChangedEvent(Type.CREATED, tag.getTagId(), 0, tag);
+    }
+
+    public static TagChangedEvent updated(Tag tag) {
+        return new TagChangedEvent(Type.UPDATED, tag.getTagId(), 0, tag);
+    }
+
+    public static TagChangedEvent deleted(int tagId) {
+        return new TagChangedEvent(Type.DELETED, tagId, 0, null);
+    }
+
+    public static TagChangedEvent addedToBook(int tagId, int bookId) {
+        return new TagChangedEvent(Type.ADDED_TO_BOOK, tagId, bookId, null);
+    }
+
+    public static TagChangedEvent removedFromBook(int tagId, int bookId) {
+        return new TagChangedEvent(Type.REMOVED_FROM_BOOK, tagId, bookId, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getTagId() {
+        return tagId;
+    }
+
+    /**
+     * The book a tag was added to or removed from; 0 for the other types.
+     */
+    public int getBookId() {
+        return bookId;
+    }
+
+    /**
+     * The tag as written, for CREATED and UPDATED; null otherwise.
+     */
+    public Tag getTag() {
+        return tag;
+    }
+}
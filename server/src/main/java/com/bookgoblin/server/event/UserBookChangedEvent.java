@@ -0,0 +1,52 @@
+package com.bookgoblin.server.event;
+
+import com.bookgoblin.server.model.UserBook;
+
+/**
+ * Published by the user book DAO after a row in user_books has been written.
+ */
+public class UserBookChangedEvent {
+
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    private final Type type;
+    private final UserBook userBook;
+    private final int previousBookId;
+
+    public UserBookChangedEvent(Type type, UserBook userBook, int previousBookId) {
+        this.type = type;
+        this.userBook = userBook;
+        this.previousBookId = previousBookId;
+    }
+
+    public static UserBookChangedEvent created(UserBook userBook) {
+        return new UserBookChangedEvent(Type.CREATED, userBook, userBook.getBookId());
+    }
+
+    public static UserBookChangedEvent updated(UserBook userBook, int previousBookId) {
+        return new UserBookChangedEvent(Type.UPDATED, userBook, previousBookId);
+    }
+
+    public static UserBookChangedEvent deleted(UserBook userBook) {
+        return new UserBookChangedEvent(Type.DELETED, userBook, userBook.getBookId());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The row as written, or as it was just before deletion. Deleted rows only carry
+     * ids, status and ownership.
+     */
+    public UserBook getUserBook() {
+        return userBook;
+    }
+
+    /**
+     * The book the row pointed at before an update; equal to the current book otherwise.
+     */
+    public int getPreviousBookId() {
+        return previousBookId;
+    }
+}
@@ -0,0 +1,14 @@
+package com.bookgoblin.server.exception;
+
+/**
+ * Thrown instead of downloading a cover when the download pool and its queue are full.
+ */
+public class CoverImageUnavailableException extends RuntimeException {
+    public CoverImageUnavailableException(String message) {
+        super(message);
+    }
+
+    public CoverImageUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,14 @@
+package com.bookgoblin.server.exception;
+
+/**
+ * Thrown instead of hashing a password when the hashing pool and its queue are full.
+ */
+public class PasswordHashingUnavailableException extends RuntimeException {
+    public PasswordHashingUnavailableException(String message) {
+        super(message);
+    }
+
+    public PasswordHashingUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,9 +1,12 @@
 package com.bookgoblin.server.model;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 
+import java.util.List;
+
 public class Book {
     private int bookId;
 
@@ -21,6 +24,10 @@ public class Book {
     private String coverImageUrl;
     private Integer publicationYear;
 
+    // Only filled in when a listing is asked to include tags
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Tag> tags;
+
     // Constructors
     public Book() {
     }
@@ -81,4 +88,12 @@ public class Book {
     public void setPublicationYear(Integer publicationYear) {
         this.publicationYear = publicationYear;
     }
+
+    public List<Tag> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<Tag> tags) {
+        this.tags = tags;
+    }
 }
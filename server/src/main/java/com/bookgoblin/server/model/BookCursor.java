@@ -0,0 +1,53 @@
+package com.bookgoblin.server.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * BookCursor marks a position in the catalog ordering (title, book_id) for keyset pagination.
+ *
+ * Clients never build one themselves - they receive it as an opaque token in the X-Next-Cursor
+ * response header and hand it back in the "after" request parameter to fetch the next page.
+ */
+public class BookCursor {
+
+    private final String title;
+    private final int bookId;
+
+    public BookCursor(String title, int bookId) {
+        this.title = title;
+        this.bookId = bookId;
+    }
+
+    public static BookCursor of(Book book) {
+        return new BookCursor(book.getTitle(), book.getBookId());
+    }
+
+    /**
+     * Decodes a token previously produced by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the token is not a valid cursor
+     */
+    public static BookCursor decode(String token) {
+        String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int separator = decoded.indexOf(':');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        int bookId = Integer.parseInt(decoded.substring(0, separator));
+        return new BookCursor(decoded.substring(separator + 1), bookId);
+    }
+
+    public String encode() {
+        String raw = bookId + ":" + title;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+}
@@ -0,0 +1,26 @@
+package com.bookgoblin.server.model;
+
+import java.util.List;
+
+/**
+ * A row of a bulk import that was not written, with the reasons it was rejected.
+ * Rows are numbered from 1 in the order they appear in the upload, not counting a CSV header.
+ */
+public class BookImportError {
+
+    private long row;
+    private List<String> messages;
+
+    public BookImportError(long row, List<String> messages) {
+        this.row = row;
+        this.messages = messages;
+    }
+
+    public long getRow() {
+        return row;
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+}
@@ -0,0 +1,105 @@
+package com.bookgoblin.server.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. {@code imported} counts the written rows, split into {@code inserted},
+ * {@code updated} and {@code superseded}. Inserted rows are only counted. Rows that changed an
+ * existing book or were overwritten within their batch are listed in {@code rows} with the id of
+ * their book, and rejected rows in {@code errors}. Both lists stop after a configured number of
+ * rows; {@code rowsTruncated} and {@code errorsTruncated} say whether any were left out.
+ */
+public class BookImportResult {
+
+    private long received;
+    private long imported;
+    private long inserted;
+    private long updated;
+    private long superseded;
+    private long rejected;
+    private List<BookImportRow> rows = new ArrayList<>();
+    private boolean rowsTruncated;
+    private List<BookImportError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+
+    public long getReceived() {
+        return received;
+    }
+
+    public void setReceived(long received) {
+        this.received = received;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public void setInserted(long inserted) {
+        this.inserted = inserted;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(long updated) {
+        this.updated = updated;
+    }
+
+    public long getSuperseded() {
+        return superseded;
+    }
+
+    public void setSuperseded(long superseded) {
+        this.superseded = superseded;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public List<BookImportRow> getRows() {
+        return rows;
+    }
+
+    public void setRows(List<BookImportRow> rows) {
+        this.rows = rows;
+    }
+
+    public boolean isRowsTruncated() {
+        return rowsTruncated;
+    }
+
+    public void setRowsTruncated(boolean rowsTruncated) {
+        this.rowsTruncated = rowsTruncated;
+    }
+
+    public List<BookImportError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<BookImportError> errors) {
+        this.errors = errors;
+    }
+
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public void setErrorsTruncated(boolean errorsTruncated) {
+        this.errorsTruncated = errorsTruncated;
+    }
+}
@@ -0,0 +1,40 @@
+package com.bookgoblin.server.model;
+
+/**
+ * A row of a bulk import that was written, and what became of it. Import results only list rows that
+ * did something other than add a new book.
+ * Rows are numbered from 1 in the order they appear in the upload, not counting a CSV header.
+ */
+public class BookImportRow {
+
+    public enum Status {
+        // Added as a new book
+        INSERTED,
+        // Replaced the book with the same ISBN
+        UPDATED,
+        // Overwritten by a later row with the same ISBN in the same batch; bookId is that book
+        SUPERSEDED
+    }
+
+    private long row;
+    private int bookId;
+    private Status status;
+
+    public BookImportRow(long row, int bookId, Status status) {
+        this.row = row;
+        this.bookId = bookId;
+        this.status = status;
+    }
+
+    public long getRow() {
+        return row;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,21 @@
+package com.bookgoblin.server.model;
+
+/**
+ * A book returned from ranked search, together with its relevance score. Higher scores are
+ * better matches; the scale is only meaningful within one result list.
+ */
+public class BookSearchResult extends Book {
+
+    private double score;
+
+    public BookSearchResult() {
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+}
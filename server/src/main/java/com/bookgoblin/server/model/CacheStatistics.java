@@ -0,0 +1,60 @@
+package com.bookgoblin.server.model;
+
+/**
+ * Point-in-time counters for one in-memory cache.
+ */
+public class CacheStatistics {
+
+    private String name;
+    private long size;
+    private long hitCount;
+    private long missCount;
+    private double hitRate;
+    private long loadCount;
+    private double averageLoadMillis;
+    private long evictionCount;
+
+    public CacheStatistics(String name, long size, long hitCount, long missCount, double hitRate,
+                           long loadCount, double averageLoadMillis, long evictionCount) {
+        this.name = name;
+        this.size = size;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.hitRate = hitRate;
+        this.loadCount = loadCount;
+        this.averageLoadMillis = averageLoadMillis;
+        this.evictionCount = evictionCount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    public double getAverageLoadMillis() {
+        return averageLoadMillis;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+}
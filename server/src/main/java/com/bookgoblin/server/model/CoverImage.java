@@ -0,0 +1,33 @@
+package com.bookgoblin.server.model;
+
+import org.springframework.http.MediaType;
+
+import java.nio.file.Path;
+
+/**
+ * A cover image file in the local cover cache, ready to be sent.
+ */
+public class CoverImage {
+
+    private final Path file;
+    private final long length;
+    private final MediaType contentType;
+
+    public CoverImage(Path file, long length, MediaType contentType) {
+        this.file = file;
+        this.length = length;
+        this.contentType = contentType;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public MediaType getContentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,78 @@
+package com.bookgoblin.server.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts over one user's library plus the books they added most recently. Books without a status
+ * count towards {@code total} only.
+ */
+public class LibrarySummary {
+
+    private int total;
+    private int owned;
+    private int unread;
+    private int reading;
+    private int finished;
+    private int dnf;
+    private List<UserBook> recentlyAdded = new ArrayList<>();
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getOwned() {
+        return owned;
+    }
+
+    public void setOwned(int owned) {
+        this.owned = owned;
+    }
+
+    public int getUnread() {
+        return unread;
+    }
+
+    public void setUnread(int unread) {
+        this.unread = unread;
+    }
+
+    public int getReading() {
+        return reading;
+    }
+
+    public void setReading(int reading) {
+        this.reading = reading;
+    }
+
+    public int getFinished() {
+        return finished;
+    }
+
+    public void setFinished(int finished) {
+        this.finished = finished;
+    }
+
+    public int getDnf() {
+        return dnf;
+    }
+
+    public void setDnf(int dnf) {
+        this.dnf = dnf;
+    }
+
+    /**
+     * Newest first.
+     */
+    public List<UserBook> getRecentlyAdded() {
+        return recentlyAdded;
+    }
+
+    public void setRecentlyAdded(List<UserBook> recentlyAdded) {
+        this.recentlyAdded = recentlyAdded;
+    }
+}
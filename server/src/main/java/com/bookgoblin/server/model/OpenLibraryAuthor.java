@@ -0,0 +1,23 @@
+package com.bookgoblin.server.model;
+
+/**
+ * An author record from an Open Library data dump.
+ */
+public class OpenLibraryAuthor {
+
+    private final String authorKey;
+    private final String name;
+
+    public OpenLibraryAuthor(String authorKey, String name) {
+        this.authorKey = authorKey;
+        this.name = name;
+    }
+
+    public String getAuthorKey() {
+        return authorKey;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,48 @@
+package com.bookgoblin.server.model;
+
+/**
+ * An edition record from an Open Library data dump.
+ */
+public class OpenLibraryEdition {
+
+    private final String editionKey;
+    private final String workKey;
+    private final String title;
+    private final String isbn;
+    private final Integer publishYear;
+    private final Integer coverId;
+
+    public OpenLibraryEdition(String editionKey, String workKey, String title, String isbn,
+                              Integer publishYear, Integer coverId) {
+        this.editionKey = editionKey;
+        this.workKey = workKey;
+        this.title = title;
+        this.isbn = isbn;
+        this.publishYear = publishYear;
+        this.coverId = coverId;
+    }
+
+    public String getEditionKey() {
+        return editionKey;
+    }
+
+    public String getWorkKey() {
+        return workKey;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public Integer getPublishYear() {
+        return publishYear;
+    }
+
+    public Integer getCoverId() {
+        return coverId;
+    }
+}
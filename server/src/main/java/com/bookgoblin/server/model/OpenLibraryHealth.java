@@ -0,0 +1,55 @@
+package com.bookgoblin.server.model;
+
+/**
+ * State of the guards around calls to Open Library: the circuit breaker and the bounded pool the
+ * calls run on, plus how many searches were refused or answered from stale data.
+ */
+public class OpenLibraryHealth {
+
+    private String circuitState;
+    private int consecutiveFailures;
+    private int activeCalls;
+    private int queuedCalls;
+    private long rejectedCalls;
+    private long shortCircuitedCalls;
+    private long degradedResponses;
+
+    public OpenLibraryHealth(String circuitState, int consecutiveFailures, int activeCalls, int queuedCalls,
+                             long rejectedCalls, long shortCircuitedCalls, long degradedResponses) {
+        this.circuitState = circuitState;
+        this.consecutiveFailures = consecutiveFailures;
+        this.activeCalls = activeCalls;
+        this.queuedCalls = queuedCalls;
+        this.rejectedCalls = rejectedCalls;
+        this.shortCircuitedCalls = shortCircuitedCalls;
+        this.degradedResponses = degradedResponses;
+    }
+
+    public String getCircuitState() {
+        return circuitState;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public int getActiveCalls() {
+        return activeCalls;
+    }
+
+    public int getQueuedCalls() {
+        return queuedCalls;
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    public long getShortCircuitedCalls() {
+        return shortCircuitedCalls;
+    }
+
+    public long getDegradedResponses() {
+        return degradedResponses;
+    }
+}
@@ -0,0 +1,84 @@
+package com.bookgoblin.server.model;
+
+import java.time.Instant;
+
+/**
+ * Progress of the most recent Open Library dump import.
+ */
+public class OpenLibraryImportStatus {
+
+    public enum State { IDLE, RUNNING, COMPLETED, FAILED }
+
+    private State state;
+    private String file;
+    private long linesRead;
+    private long authors;
+    private long works;
+    private long editions;
+    private long skipped;
+    // Editions imported without their ISBN because it was too long to be one
+    private long isbnsDropped;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+
+    public OpenLibraryImportStatus(State state, String file, long linesRead, long authors, long works, long editions,
+                                   long skipped, long isbnsDropped, Instant startedAt, Instant finishedAt,
+                                   String error) {
+        this.state = state;
+        this.file = file;
+        this.linesRead = linesRead;
+        this.authors = authors;
+        this.works = works;
+        this.editions = editions;
+        this.skipped = skipped;
+        this.isbnsDropped = isbnsDropped;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.error = error;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public long getAuthors() {
+        return authors;
+    }
+
+    public long getWorks() {
+        return works;
+    }
+
+    public long getEditions() {
+        return editions;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getIsbnsDropped() {
+        return isbnsDropped;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
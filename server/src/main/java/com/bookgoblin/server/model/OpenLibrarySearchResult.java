@@ -0,0 +1,27 @@
+package com.bookgoblin.server.model;
+
+import java.util.List;
+
+/**
+ * Books found on Open Library. When {@code degraded} is set the live search could not be made
+ * (upstream slow, failing or overloaded) and the books are the last results seen for the query,
+ * or empty if there were none.
+ */
+public class OpenLibrarySearchResult {
+
+    private final List<Book> books;
+    private final boolean degraded;
+
+    public OpenLibrarySearchResult(List<Book> books, boolean degraded) {
+        this.books = books;
+        this.degraded = degraded;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+}
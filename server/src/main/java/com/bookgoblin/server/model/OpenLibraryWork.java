@@ -0,0 +1,41 @@
+package com.bookgoblin.server.model;
+
+/**
+ * A work record from an Open Library data dump. Only the first listed author is kept.
+ */
+public class OpenLibraryWork {
+
+    private final String workKey;
+    private final String title;
+    private final String authorKey;
+    private final Integer firstPublishYear;
+    private final Integer coverId;
+
+    public OpenLibraryWork(String workKey, String title, String authorKey, Integer firstPublishYear, Integer coverId) {
+        this.workKey = workKey;
+        this.title = title;
+        this.authorKey = authorKey;
+        this.firstPublishYear = firstPublishYear;
+        this.coverId = coverId;
+    }
+
+    public String getWorkKey() {
+        return workKey;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthorKey() {
+        return authorKey;
+    }
+
+    public Integer getFirstPublishYear() {
+        return firstPublishYear;
+    }
+
+    public Integer getCoverId() {
+        return coverId;
+    }
+}
@@ -0,0 +1,51 @@
+package com.bookgoblin.server.model;
+
+/**
+ * Outcome of a read or write that is only allowed on the caller's own row. The ownership check and
+ * the access happen in one statement, so the DAO reports which of the three cases applied.
+ */
+public class OwnedMutation<T> {
+
+    public enum Status { OK, NOT_FOUND, FORBIDDEN }
+
+    private final Status status;
+    private final T value;
+
+    private OwnedMutation(Status status, T value) {
+        this.status = status;
+        this.value = value;
+    }
+
+    public static <T> OwnedMutation<T> ok(T value) {
+        return new OwnedMutation<>(Status.OK, value);
+    }
+
+    public static <T> OwnedMutation<T> notFound() {
+        return new OwnedMutation<>(Status.NOT_FOUND, null);
+    }
+
+    public static <T> OwnedMutation<T> forbidden() {
+        return new OwnedMutation<>(Status.FORBIDDEN, null);
+    }
+
+    /**
+     * Carries a NOT_FOUND or FORBIDDEN outcome over to another value type.
+     */
+    public static <T> OwnedMutation<T> copyOf(OwnedMutation<?> failed) {
+        if (failed.status == Status.OK) {
+            throw new IllegalArgumentException("Only failed outcomes can be copied");
+        }
+        return new OwnedMutation<>(failed.status, null);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * The row as read or written; null unless the status is OK.
+     */
+    public T getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,73 @@
+package com.bookgoblin.server.model;
+
+/**
+ * State of the pool that runs password hashing for logins and registrations.
+ */
+public class PasswordHashingStats {
+
+    private int strength;
+    private int threads;
+    private int activeHashes;
+    private int queuedHashes;
+    private int queueCapacity;
+    private long completedHashes;
+    private long rejectedHashes;
+    private long rehashedPasswords;
+    private double averageHashMillis;
+    private double averageQueueWaitMillis;
+
+    public PasswordHashingStats(int strength, int threads, int activeHashes, int queuedHashes, int queueCapacity,
+                                long completedHashes, long rejectedHashes, long rehashedPasswords,
+                                double averageHashMillis, double averageQueueWaitMillis) {
+        this.strength = strength;
+        this.threads = threads;
+        this.activeHashes = activeHashes;
+        this.queuedHashes = queuedHashes;
+        this.queueCapacity = queueCapacity;
+        this.completedHashes = completedHashes;
+        this.rejectedHashes = rejectedHashes;
+        this.rehashedPasswords = rehashedPasswords;
+        this.averageHashMillis = averageHashMillis;
+        this.averageQueueWaitMillis = averageQueueWaitMillis;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getActiveHashes() {
+        return activeHashes;
+    }
+
+    public int getQueuedHashes() {
+        return queuedHashes;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getCompletedHashes() {
+        return completedHashes;
+    }
+
+    public long getRejectedHashes() {
+        return rejectedHashes;
+    }
+
+    public long getRehashedPasswords() {
+        return rehashedPasswords;
+    }
+
+    public double getAverageHashMillis() {
+        return averageHashMillis;
+    }
+
+    public double getAverageQueueWaitMillis() {
+        return averageQueueWaitMillis;
+    }
+}
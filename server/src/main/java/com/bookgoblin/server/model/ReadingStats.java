@@ -0,0 +1,81 @@
+package com.bookgoblin.server.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A user's reading statistics, computed from their rollups rather than their logs. Months and years
+ * are keyed "2024-01" and "2024", oldest first, and only those with a finished book are listed.
+ */
+public class ReadingStats {
+
+    private int totalFinished;
+    private Map<String, Integer> finishedPerMonth = new LinkedHashMap<>();
+    private Map<String, Integer> finishedPerYear = new LinkedHashMap<>();
+    private Double averageDaysToFinish;
+    private Map<Integer, Integer> ratingHistogram = new LinkedHashMap<>();
+    private int currentStreak;
+    private int longestStreak;
+
+    public int getTotalFinished() {
+        return totalFinished;
+    }
+
+    public void setTotalFinished(int totalFinished) {
+        this.totalFinished = totalFinished;
+    }
+
+    public Map<String, Integer> getFinishedPerMonth() {
+        return finishedPerMonth;
+    }
+
+    public void setFinishedPerMonth(Map<String, Integer> finishedPerMonth) {
+        this.finishedPerMonth = finishedPerMonth;
+    }
+
+    public Map<String, Integer> getFinishedPerYear() {
+        return finishedPerYear;
+    }
+
+    public void setFinishedPerYear(Map<String, Integer> finishedPerYear) {
+        this.finishedPerYear = finishedPerYear;
+    }
+
+    /**
+     * Null until a book has been finished.
+     */
+    public Double getAverageDaysToFinish() {
+        return averageDaysToFinish;
+    }
+
+    public void setAverageDaysToFinish(Double averageDaysToFinish) {
+        this.averageDaysToFinish = averageDaysToFinish;
+    }
+
+    /**
+     * Number of rated logs per rating, 1 to 5.
+     */
+    public Map<Integer, Integer> getRatingHistogram() {
+        return ratingHistogram;
+    }
+
+    public void setRatingHistogram(Map<Integer, Integer> ratingHistogram) {
+        this.ratingHistogram = ratingHistogram;
+    }
+
+    public int getCurrentStreak() {
+        return currentStreak;
+    }
+
+    public void setCurrentStreak(int currentStreak) {
+        this.currentStreak = currentStreak;
+    }
+
+    public int getLongestStreak() {
+        return longestStreak;
+    }
+
+    public void setLongestStreak(int longestStreak) {
+        this.longestStreak = longestStreak;
+    }
+}
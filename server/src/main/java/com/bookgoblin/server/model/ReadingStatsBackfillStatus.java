@@ -0,0 +1,64 @@
+package com.bookgoblin.server.model;
+
+import java.time.Instant;
+
+/**
+ * Progress of the most recent reading statistics backfill.
+ */
+public class ReadingStatsBackfillStatus {
+
+    public enum State { IDLE, RUNNING, COMPLETED, FAILED }
+
+    private final State state;
+    private final int chunks;
+    private final int chunksDone;
+    private final long logs;
+    private final Instant startedAt;
+    private final Instant finishedAt;
+    private final String error;
+
+    public ReadingStatsBackfillStatus(State state, int chunks, int chunksDone, long logs,
+                                      Instant startedAt, Instant finishedAt, String error) {
+        this.state = state;
+        this.chunks = chunks;
+        this.chunksDone = chunksDone;
+        this.logs = logs;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.error = error;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Ranges of user ids the backfill is split into.
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    public int getChunksDone() {
+        return chunksDone;
+    }
+
+    /**
+     * Reading logs rolled up so far.
+     */
+    public long getLogs() {
+        return logs;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,38 @@
+package com.bookgoblin.server.model;
+
+import java.time.YearMonth;
+
+/**
+ * One user's reading_stats_monthly rollup row.
+ */
+public class ReadingStatsMonth {
+
+    private final YearMonth month;
+    private final int finishedCount;
+    private final int finishDaysTotal;
+    // Index 0 holds the number of 1-star ratings
+    private final int[] ratingCounts;
+
+    public ReadingStatsMonth(YearMonth month, int finishedCount, int finishDaysTotal, int[] ratingCounts) {
+        this.month = month;
+        this.finishedCount = finishedCount;
+        this.finishDaysTotal = finishDaysTotal;
+        this.ratingCounts = ratingCounts;
+    }
+
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    public int getFinishedCount() {
+        return finishedCount;
+    }
+
+    public int getFinishDaysTotal() {
+        return finishDaysTotal;
+    }
+
+    public int getRatingCount(int rating) {
+        return ratingCounts[rating - 1];
+    }
+}
@@ -0,0 +1,24 @@
+package com.bookgoblin.server.model;
+
+/**
+ * Runs of consecutive days on which a user started or finished a book. The current streak is the
+ * one ending today or yesterday, so it does not reset before the day is over.
+ */
+public class ReadingStreaks {
+
+    private final int current;
+    private final int longest;
+
+    public ReadingStreaks(int current, int longest) {
+        this.current = current;
+        this.longest = longest;
+    }
+
+    public int getCurrent() {
+        return current;
+    }
+
+    public int getLongest() {
+        return longest;
+    }
+}
@@ -0,0 +1,55 @@
+package com.bookgoblin.server.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * SearchCursor marks a position in a relevance-ranked search (score descending, then book_id) for
+ * keyset pagination of {@code GET /books/search}.
+ *
+ * Like {@link BookCursor}, clients receive it as an opaque token in the X-Next-Cursor response header
+ * and hand it back in the "after" request parameter. The two tokens are not interchangeable: each
+ * decodes only its own kind.
+ */
+public class SearchCursor {
+
+    private static final String PREFIX = "rank:";
+
+    private final float score;
+    private final int bookId;
+
+    public SearchCursor(float score, int bookId) {
+        this.score = score;
+        this.bookId = bookId;
+    }
+
+    /**
+     * Decodes a token previously produced by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the token is not a valid search cursor
+     */
+    public static SearchCursor decode(String token) {
+        String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int separator = decoded.indexOf(':', PREFIX.length());
+        if (!decoded.startsWith(PREFIX) || separator < 0) {
+            throw new IllegalArgumentException("Malformed search cursor");
+        }
+        // The score travels as its exact bits so the next page starts exactly where this one ended
+        int scoreBits = Integer.parseUnsignedInt(decoded.substring(PREFIX.length(), separator), 16);
+        int bookId = Integer.parseInt(decoded.substring(separator + 1));
+        return new SearchCursor(Float.intBitsToFloat(scoreBits), bookId);
+    }
+
+    public String encode() {
+        String raw = PREFIX + Integer.toHexString(Float.floatToIntBits(score)) + ":" + bookId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+}
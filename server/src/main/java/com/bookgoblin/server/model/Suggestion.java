@@ -0,0 +1,64 @@
+package com.bookgoblin.server.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A typeahead completion: either a book title or an author name, ranked by how many
+ * users have the matching book(s) in their library.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Suggestion {
+
+    public static final String TYPE_TITLE = "title";
+    public static final String TYPE_AUTHOR = "author";
+
+    private String text;
+    private String type;
+    private Integer bookId;
+    private int popularity;
+
+    public Suggestion() {
+    }
+
+    public Suggestion(String text, String type, Integer bookId, int popularity) {
+        this.text = text;
+        this.type = type;
+        this.bookId = bookId;
+        this.popularity = popularity;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * The book a title suggestion refers to; null for author suggestions.
+     */
+    public Integer getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(Integer bookId) {
+        this.bookId = bookId;
+    }
+
+    public int getPopularity() {
+        return popularity;
+    }
+
+    public void setPopularity(int popularity) {
+        this.popularity = popularity;
+    }
+}
@@ -0,0 +1,35 @@
+package com.bookgoblin.server.model;
+
+/**
+ * Size and approximate heap footprint of the typeahead index.
+ */
+public class SuggestionIndexStats {
+
+    private boolean ready;
+    private int entries;
+    private int nodes;
+    private long estimatedBytes;
+
+    public SuggestionIndexStats(boolean ready, int entries, int nodes, long estimatedBytes) {
+        this.ready = ready;
+        this.entries = entries;
+        this.nodes = nodes;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+}
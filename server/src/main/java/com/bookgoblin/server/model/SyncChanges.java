@@ -0,0 +1,78 @@
+package com.bookgoblin.server.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What changed in a user's library and reading logs since their last sync.
+ */
+public class SyncChanges {
+
+    private long version;
+    private boolean full;
+    private List<UserBook> userBooks = new ArrayList<>();
+    private List<ReadingLog> readingLogs = new ArrayList<>();
+    private List<Integer> deletedUserBookIds = new ArrayList<>();
+    private List<Integer> deletedReadingLogIds = new ArrayList<>();
+
+    /**
+     * Pass back as "since" on the next sync.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * True when every row is included and the client should replace what it has rather than
+     * merge. Deletions are not listed in that case.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+
+    /**
+     * User books added or changed, to insert or replace by id. May repeat rows already sent.
+     */
+    public List<UserBook> getUserBooks() {
+        return userBooks;
+    }
+
+    public void setUserBooks(List<UserBook> userBooks) {
+        this.userBooks = userBooks;
+    }
+
+    /**
+     * Reading logs added or changed, to insert or replace by id. May repeat rows already sent.
+     */
+    public List<ReadingLog> getReadingLogs() {
+        return readingLogs;
+    }
+
+    public void setReadingLogs(List<ReadingLog> readingLogs) {
+        this.readingLogs = readingLogs;
+    }
+
+    public List<Integer> getDeletedUserBookIds() {
+        return deletedUserBookIds;
+    }
+
+    public void setDeletedUserBookIds(List<Integer> deletedUserBookIds) {
+        this.deletedUserBookIds = deletedUserBookIds;
+    }
+
+    public List<Integer> getDeletedReadingLogIds() {
+        return deletedReadingLogIds;
+    }
+
+    public void setDeletedReadingLogIds(List<Integer> deletedReadingLogIds) {
+        this.deletedReadingLogIds = deletedReadingLogIds;
+    }
+}
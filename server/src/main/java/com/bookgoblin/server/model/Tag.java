@@ -1,6 +1,7 @@
 package com.bookgoblin.server.model;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 
@@ -11,6 +12,10 @@ public class Tag {
     @Size(max = 50, message = "Tag name cannot exceed 50 characters")
     private String name;
 
+    // Only filled in by the full tag listing
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer bookCount;
+
     // Constructors
     public Tag() {
     }
@@ -35,4 +40,12 @@ public class Tag {
     public void setName(String name) {
         this.name = name;
     }
-}
\ No newline at end of file
+
+    public Integer getBookCount() {
+        return bookCount;
+    }
+
+    public void setBookCount(Integer bookCount) {
+        this.bookCount = bookCount;
+    }
+}
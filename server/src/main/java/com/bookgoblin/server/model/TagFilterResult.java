@@ -0,0 +1,47 @@
+package com.bookgoblin.server.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Books matching a tag filter, one page at a time, with facet counts over all matches: for every
+ * tag carried by at least one matching book, how many matching books carry it.
+ */
+public class TagFilterResult {
+
+    private int total;
+    private List<Book> books = new ArrayList<>();
+    private Map<Integer, Integer> facets = new LinkedHashMap<>();
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    /**
+     * The requested page of matches, in book_id order.
+     */
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public void setBooks(List<Book> books) {
+        this.books = books;
+    }
+
+    /**
+     * Tag id to number of matching books, most common tag first.
+     */
+    public Map<Integer, Integer> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Map<Integer, Integer> facets) {
+        this.facets = facets;
+    }
+}
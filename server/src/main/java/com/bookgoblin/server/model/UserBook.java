@@ -1,9 +1,11 @@
 package com.bookgoblin.server.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 
 import java.time.LocalDate;
+import java.util.List;
 
 public class UserBook {
     private int userBookId;
@@ -23,6 +25,10 @@ public class UserBook {
     private String bookTitle;
     private String bookAuthor;
 
+    // Only filled in when a listing is asked to include tags
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Tag> tags;
+
     // Constructors
     public UserBook() {
     }
@@ -107,5 +113,13 @@ public class UserBook {
     public void setBookAuthor(String bookAuthor) {
         this.bookAuthor = bookAuthor;
     }
+
+    public List<Tag> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<Tag> tags) {
+        this.tags = tags;
+    }
 }
 
@@ -0,0 +1,25 @@
+package com.bookgoblin.server.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * The principal for a logged-in user. Carries the user's id as well as the username, so requests
+ * can scope their queries by user_id without looking the user up.
+ */
+public class AuthenticatedUser extends User {
+
+    private final int userId;
+
+    public AuthenticatedUser(int userId, String username, String password,
+                             Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.userId = userId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+}
@@ -0,0 +1,131 @@
+package com.bookgoblin.server.security;
+
+import com.bookgoblin.server.exception.PasswordHashingUnavailableException;
+import com.bookgoblin.server.model.PasswordHashingStats;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt with admission control.
+ *
+ * Every hash and every check runs on a pool with one thread per core and a short queue, so a burst
+ * of logins or registrations can use the CPUs but cannot take over the request threads: once the
+ * queue is full further attempts fail straight away with
+ * {@link PasswordHashingUnavailableException} instead of waiting. The calling thread blocks only
+ * while its own hash is queued or running.
+ *
+ * {@link #upgradeEncoding} reports any hash made with a cost other than the configured one, so
+ * passwords are re-hashed at the current cost the next time their owner logs in.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[aby]?\\$(\\d{2})\\$");
+
+    private final BCryptPasswordEncoder bcrypt;
+    private final int strength;
+    private final ThreadPoolExecutor pool;
+    private final int queueCapacity;
+
+    private final LongAdder completedHashes = new LongAdder();
+    private final LongAdder rejectedHashes = new LongAdder();
+    private final LongAdder rehashedPasswords = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+
+    public BoundedPasswordEncoder(int strength, int threads, int queueCapacity) {
+        this.bcrypt = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        this.queueCapacity = queueCapacity;
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hashing-"));
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> bcrypt.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> bcrypt.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * True for hashes made at a different cost than the configured one, in either direction, so
+     * lowering the cost takes effect as well as raising it.
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    /**
+     * Counts a password re-hashed at the current cost once the new hash has been stored. Login can
+     * ask for an upgrade and still fail afterwards, so {@link #upgradeEncoding} does not count.
+     */
+    public void recordRehash() {
+        rehashedPasswords.increment();
+    }
+
+    public PasswordHashingStats getStats() {
+        long completed = completedHashes.sum();
+        return new PasswordHashingStats(strength, pool.getMaximumPoolSize(), pool.getActiveCount(),
+                pool.getQueue().size(), queueCapacity, completed, rejectedHashes.sum(), rehashedPasswords.sum(),
+                completed == 0 ? 0 : hashNanos.sum() / 1_000_000.0 / completed,
+                completed == 0 ? 0 : queueWaitNanos.sum() / 1_000_000.0 / completed);
+    }
+
+    private <T> T run(Callable<T> hash) {
+        long submitted = System.nanoTime();
+        Future<T> result;
+        try {
+            result = pool.submit(() -> {
+                long started = System.nanoTime();
+                queueWaitNanos.add(started - submitted);
+                try {
+                    return hash.call();
+                } finally {
+                    hashNanos.add(System.nanoTime() - started);
+                    completedHashes.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedHashes.increment();
+            throw new PasswordHashingUnavailableException("Too many password checks in progress", e);
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException("Interrupted while waiting for a password check", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
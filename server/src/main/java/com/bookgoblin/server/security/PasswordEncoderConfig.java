@@ -0,0 +1,20 @@
+package com.bookgoblin.server.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class PasswordEncoderConfig {
+
+    /**
+     * The one PasswordEncoder in the application. Spring Security's login check and user
+     * registration both hash through it, so both share its bounded pool.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public BoundedPasswordEncoder passwordEncoder(
+            @Value("${security.password.bcrypt-strength}") int strength,
+            @Value("${security.password.hashing.queue-size}") int queueSize) {
+        return new BoundedPasswordEncoder(strength, Runtime.getRuntime().availableProcessors(), queueSize);
+    }
+}
@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -17,15 +18,20 @@ import java.util.List;
 
 /**
  * Authenticate a user from the database.
+ *
+ * As a UserDetailsPasswordService it also stores the new hash when Spring Security re-hashes a
+ * password at login because the configured BCrypt cost has changed.
  */
 @Service
-public class UserModelDetailsService implements UserDetailsService {
+public class UserModelDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final Logger log = LoggerFactory.getLogger(UserModelDetailsService.class);
     private final UserDao userDao;
+    private final BoundedPasswordEncoder passwordEncoder;
 
-    public UserModelDetailsService(UserDao userDao) {
+    public UserModelDetailsService(UserDao userDao, BoundedPasswordEncoder passwordEncoder) {
         this.userDao = userDao;
+        this.passwordEncoder = passwordEncoder;
     }
 
     @Override
@@ -40,12 +46,23 @@ public class UserModelDetailsService implements UserDetailsService {
         return createSpringSecurityUser(user);
     }
 
-    private org.springframework.security.core.userdetails.User createSpringSecurityUser(User user) {
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        log.debug("Storing re-hashed password for user '{}'", user.getUsername());
+        if (userDao.updatePasswordHash(user.getUsername(), newPassword)) {
+            passwordEncoder.recordRehash();
+        }
+        return new AuthenticatedUser(((AuthenticatedUser) user).getUserId(), user.getUsername(), newPassword,
+                user.getAuthorities());
+    }
+
+    private AuthenticatedUser createSpringSecurityUser(User user) {
 
         List<GrantedAuthority> grantedAuthorities = new ArrayList<>();
         grantedAuthorities.add(new SimpleGrantedAuthority(user.getRole()));
 
-        return new org.springframework.security.core.userdetails.User(user.getUsername(),
+        return new AuthenticatedUser(user.getId(),
+                user.getUsername(),
                 user.getHashedPassword(),
                 grantedAuthorities);
     }
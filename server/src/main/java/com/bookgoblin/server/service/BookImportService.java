@@ -0,0 +1,188 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.dao.BookDao;
+import com.bookgoblin.server.event.BooksImportedEvent;
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.BookImportError;
+import com.bookgoblin.server.model.BookImportResult;
+import com.bookgoblin.server.model.BookImportRow;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads books into the catalog from an uploaded stream of rows.
+ *
+ * Rows are parsed one at a time straight off the request body, validated with the same constraints
+ * as {@code POST /books}, and written through {@link BookDao#upsertBooks} in fixed-size batches, so
+ * the upload itself is never held in memory. Inserted rows are only counted; the response lists the
+ * rows that updated or were superseded, and the rejected ones, up to configured limits. Each batch commits on its own: a failure part way through leaves the earlier batches in
+ * place, and re-running the same upload is safe because rows are matched on ISBN.
+ */
+@Service
+public class BookImportService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BookImportService.class);
+
+    private final BookDao bookDao;
+    private final Validator validator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectReader ndjsonReader;
+    private final ObjectReader csvReader;
+    private final int batchSize;
+    private final int maxReportedRows;
+    private final int maxReportedErrors;
+
+    public BookImportService(BookDao bookDao, Validator validator, ApplicationEventPublisher eventPublisher,
+                             ObjectMapper objectMapper,
+                             @Value("${books.import.batch-size}") int batchSize,
+                             @Value("${books.import.max-reported-rows}") int maxReportedRows,
+                             @Value("${books.import.max-reported-errors}") int maxReportedErrors) {
+        this.bookDao = bookDao;
+        this.validator = validator;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.maxReportedRows = maxReportedRows;
+        this.maxReportedErrors = maxReportedErrors;
+        this.ndjsonReader = objectMapper.readerFor(Book.class);
+        // Columns are named after the JSON properties (title, author, isbn, coverImageUrl,
+        // publicationYear) and may come in any order; empty cells read as null
+        this.csvReader = new CsvMapper()
+                .readerFor(Book.class)
+                .with(CsvSchema.emptySchema().withHeader())
+                .with(CsvParser.Feature.EMPTY_STRING_AS_NULL)
+                .with(CsvParser.Feature.TRIM_SPACES)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * Imports newline-delimited JSON, one book object per line.
+     */
+    public BookImportResult importNdjson(InputStream in) throws IOException {
+        try (MappingIterator<Book> rows = ndjsonReader.readValues(in)) {
+            return importRows(rows);
+        }
+    }
+
+    /**
+     * Imports CSV with a header row.
+     */
+    public BookImportResult importCsv(InputStream in) throws IOException {
+        try (MappingIterator<Book> rows = csvReader.readValues(in)) {
+            return importRows(rows);
+        }
+    }
+
+    private BookImportResult importRows(MappingIterator<Book> rows) throws IOException {
+        BookImportResult result = new BookImportResult();
+        List<Book> batch = new ArrayList<>(batchSize);
+        List<Long> batchRows = new ArrayList<>(batchSize);
+        long row = 0;
+
+        try {
+            while (true) {
+                Book book;
+                try {
+                    if (!rows.hasNextValue()) {
+                        break;
+                    }
+                    row++;
+                    book = rows.nextValue();
+                } catch (JsonProcessingException e) {
+                    // The parser cannot reliably find the start of the next row, so stop here
+                    reject(result, row, List.of("Malformed row: " + e.getOriginalMessage()));
+                    break;
+                }
+
+                List<String> problems = validate(book);
+                if (!problems.isEmpty()) {
+                    reject(result, row, problems);
+                    continue;
+                }
+                batch.add(book);
+                batchRows.add(row);
+                if (batch.size() == batchSize) {
+                    write(result, batch, batchRows);
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(result, batch, batchRows);
+            }
+        } finally {
+            result.setReceived(row);
+            if (result.getImported() > 0) {
+                LOG.info("Imported {} books ({} rows received, {} rejected)",
+                        result.getImported(), row, result.getRejected());
+                eventPublisher.publishEvent(new BooksImportedEvent(result.getImported()));
+            }
+        }
+        return result;
+    }
+
+    private void write(BookImportResult result, List<Book> batch, List<Long> batchRows) {
+        List<BookImportRow.Status> statuses = bookDao.upsertBooks(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            BookImportRow.Status status = statuses.get(i);
+            switch (status) {
+                case INSERTED -> {
+                    result.setInserted(result.getInserted() + 1);
+                    continue;
+                }
+                case UPDATED -> result.setUpdated(result.getUpdated() + 1);
+                case SUPERSEDED -> result.setSuperseded(result.getSuperseded() + 1);
+            }
+            if (result.getRows().size() < maxReportedRows) {
+                result.getRows().add(new BookImportRow(batchRows.get(i), batch.get(i).getBookId(), status));
+            } else {
+                result.setRowsTruncated(true);
+            }
+        }
+        result.setImported(result.getImported() + batch.size());
+        batch.clear();
+        batchRows.clear();
+    }
+
+    private List<String> validate(Book book) {
+        List<String> problems = new ArrayList<>();
+        if (book == null) {
+            problems.add("Row is empty");
+            return problems;
+        }
+        // A blank ISBN would collide with every other blank one in the upsert
+        if (book.getIsbn() != null && book.getIsbn().isBlank()) {
+            book.setIsbn(null);
+        }
+        Set<ConstraintViolation<Book>> violations = validator.validate(book);
+        for (ConstraintViolation<Book> violation : violations) {
+            problems.add(violation.getMessage());
+        }
+        return problems;
+    }
+
+    private void reject(BookImportResult result, long row, List<String> messages) {
+        result.setRejected(result.getRejected() + 1);
+        if (result.getErrors().size() < maxReportedErrors) {
+            result.getErrors().add(new BookImportError(row, messages));
+        } else {
+            result.setErrorsTruncated(true);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.dao.BookDao;
+import com.bookgoblin.server.event.BookChangedEvent;
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.SearchCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over book titles and authors.
+ *
+ * Text is accent-folded and tokenized by {@link TextNormalizer}. Every term maps to a sorted
+ * {@link PostingList} of book ids, so a search is a handful of array intersections instead of an
+ * ILIKE scan over the books table. The final term of each query is matched as a prefix so results
+ * keep up with a user who is still typing.
+ *
+ * The index is built from the database once the application is ready and is then kept current by
+ * {@link BookChangedEvent}s published by the book DAO. Until the first build completes,
+ * {@link #isReady()} returns false and callers should fall back to the database.
+ */
+@Service
+public class BookSearchIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BookSearchIndex.class);
+
+    // Title matches count for more than author matches when ranking
+    private static final double TITLE_WEIGHT = 2.0;
+    private static final double AUTHOR_WEIGHT = 1.0;
+
+    private final BookDao bookDao;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FieldIndex titles = new FieldIndex();
+    private FieldIndex authors = new FieldIndex();
+    private int documentCount;
+    private volatile boolean ready;
+
+    // Changes seen while a rebuild is streaming the catalog, replayed onto the new index afterwards
+    private List<BookChangedEvent> pendingChanges;
+
+    public BookSearchIndex(BookDao bookDao) {
+        this.bookDao = bookDao;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Rebuilds the whole index from the books table. Searches keep using the previous index until
+     * the new one is swapped in. Runs at startup and, through {@link CatalogIndexRebuilder}, after
+     * every bulk import, one rebuild at a time.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        FieldIndex newTitles = new FieldIndex();
+        FieldIndex newAuthors = new FieldIndex();
+        int[] count = new int[1];
+        try {
+            bookDao.streamBooks(null, null, book -> {
+                newTitles.add(book.getBookId(), TextNormalizer.tokenize(book.getTitle()));
+                newAuthors.add(book.getBookId(), TextNormalizer.tokenize(book.getAuthor()));
+                count[0]++;
+            });
+        } catch (DaoException e) {
+            LOG.warn("Unable to build book search index, searches will use the database: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+        newTitles.trim();
+        newAuthors.trim();
+
+        lock.writeLock().lock();
+        try {
+            titles = newTitles;
+            authors = newAuthors;
+            documentCount = count[0];
+            for (BookChangedEvent change : pendingChanges) {
+                applyUnlocked(change);
+            }
+            pendingChanges = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Book search index built with {} books, {} title terms, {} author terms",
+                count[0], newTitles.termCount(), newAuthors.termCount());
+    }
+
+    @EventListener
+    public void onBookChanged(BookChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            applyUnlocked(event);
+            if (pendingChanges != null) {
+                pendingChanges.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Whether the index can answer a search on these fields. A field given but made up only of
+     * punctuation has no terms to look up; the database can still match it as a substring.
+     */
+    public boolean canSearch(String title, String author) {
+        return (title == null || !TextNormalizer.tokenize(title).isEmpty())
+                && (author == null || !TextNormalizer.tokenize(author).isEmpty());
+    }
+
+    /**
+     * Finds books whose title contains every term of {@code title} and whose author contains every
+     * term of {@code author}; either may be null. Results are ordered by relevance.
+     *
+     * @return how many books matched, and the ids of up to {@code limit} of them, best match first
+     */
+    public Hits search(String title, String author, int limit) {
+        return search(title, author, limit, null);
+    }
+
+    /**
+     * Like {@link #search(String, String, int)}, but starts after {@code after}, the position a
+     * previous page ended at, when it is not null. Pages follow the current ranking, so books that
+     * move past the cursor between requests (their score changed, or other books changing shifted
+     * term weights) can be skipped or repeated.
+     */
+    public Hits search(String title, String author, int limit, SearchCursor after) {
+        List<String> titleTerms = TextNormalizer.tokenize(title);
+        List<String> authorTerms = TextNormalizer.tokenize(author);
+        List<Integer> bookIds = new ArrayList<>();
+        if (titleTerms.isEmpty() && authorTerms.isEmpty()) {
+            return new Hits(0, bookIds, null);
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Clause> clauses = new ArrayList<>();
+            addClauses(clauses, titles, titleTerms, TITLE_WEIGHT);
+            addClauses(clauses, authors, authorTerms, AUTHOR_WEIGHT);
+
+            // Intersect from the rarest clause up so the candidate set shrinks as fast as possible
+            clauses.sort((a, b) -> Integer.compare(a.docs.length, b.docs.length));
+            int[] candidates = clauses.get(0).docs;
+            for (int i = 1; i < clauses.size() && candidates.length > 0; i++) {
+                candidates = intersect(candidates, clauses.get(i).docs);
+            }
+            if (candidates.length == 0) {
+                return new Hits(0, bookIds, null);
+            }
+
+            // Pack (score, book id) into longs so the ranking sort stays on primitives:
+            // float bits of a positive score order like the score, and lower ids win ties.
+            long[] ranked = new long[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                int doc = candidates[i];
+                double score = 0;
+                for (Clause clause : clauses) {
+                    score += clause.weight * clause.idf / Math.sqrt(clause.field.length(doc));
+                }
+                ranked[i] = rank((float) score, doc);
+            }
+            Arrays.sort(ranked);
+
+            // Everything ranked at or above the cursor was on an earlier page
+            int i = ranked.length - 1;
+            if (after != null) {
+                long afterRank = rank(after.getScore(), after.getBookId());
+                while (i >= 0 && ranked[i] >= afterRank) {
+                    i--;
+                }
+            }
+            for (; i >= 0 && bookIds.size() < limit; i--) {
+                bookIds.add(Integer.MAX_VALUE - (int) ranked[i]);
+            }
+            SearchCursor next = null;
+            if (i >= 0) {
+                long last = ranked[i + 1];
+                next = new SearchCursor(Float.intBitsToFloat((int) (last >>> 32)), Integer.MAX_VALUE - (int) last);
+            }
+            return new Hits(candidates.length, bookIds, next);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long rank(float score, int doc) {
+        return ((long) Float.floatToIntBits(score) << 32) | (Integer.MAX_VALUE - doc);
+    }
+
+    private void addClauses(List<Clause> clauses, FieldIndex field, List<String> terms, double weight) {
+        for (int i = 0; i < terms.size(); i++) {
+            int[] docs = field.match(terms.get(i), i == terms.size() - 1);
+            double idf = Math.log(1 + (double) documentCount / Math.max(1, docs.length));
+            clauses.add(new Clause(field, docs, weight, idf));
+        }
+    }
+
+    private void applyUnlocked(BookChangedEvent event) {
+        int bookId = event.getBookId();
+        boolean existed = titles.remove(bookId);
+        authors.remove(bookId);
+        if (existed) {
+            documentCount--;
+        }
+        Book book = event.getBook();
+        if (event.getType() != BookChangedEvent.Type.DELETED && book != null) {
+            titles.add(bookId, TextNormalizer.tokenize(book.getTitle()));
+            authors.add(bookId, TextNormalizer.tokenize(book.getAuthor()));
+            documentCount++;
+        }
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static final class Clause {
+        final FieldIndex field;
+        final int[] docs;
+        final double weight;
+        final double idf;
+
+        Clause(FieldIndex field, int[] docs, double weight, double idf) {
+            this.field = field;
+            this.docs = docs;
+            this.weight = weight;
+            this.idf = idf;
+        }
+    }
+
+    /**
+     * Postings for one field plus a forward index (book id to its terms) so a book can be
+     * removed or re-indexed without knowing its previous text.
+     */
+    private static final class FieldIndex {
+
+        private final TreeMap<String, PostingList> postings = new TreeMap<>();
+        // Indexed directly by book_id, which is a dense serial
+        private String[][] docTerms = new String[1024][];
+
+        void add(int doc, List<String> tokens) {
+            if (doc >= docTerms.length) {
+                docTerms = Arrays.copyOf(docTerms, Math.max(doc + 1, docTerms.length * 2));
+            }
+            Set<String> distinct = new LinkedHashSet<>(tokens);
+            String[] terms = new String[distinct.size()];
+            int i = 0;
+            for (String token : distinct) {
+                PostingList list = postings.get(token);
+                if (list == null) {
+                    list = new PostingList();
+                    postings.put(token, list);
+                } else {
+                    // Share the dictionary's copy of the string instead of keeping one per book
+                    token = postings.ceilingKey(token);
+                }
+                list.add(doc);
+                terms[i++] = token;
+            }
+            docTerms[doc] = terms;
+        }
+
+        boolean remove(int doc) {
+            if (doc >= docTerms.length || docTerms[doc] == null) {
+                return false;
+            }
+            for (String term : docTerms[doc]) {
+                PostingList list = postings.get(term);
+                if (list != null) {
+                    list.remove(doc);
+                    if (list.size() == 0) {
+                        postings.remove(term);
+                    }
+                }
+            }
+            docTerms[doc] = null;
+            return true;
+        }
+
+        int length(int doc) {
+            return Math.max(1, docTerms[doc].length);
+        }
+
+        int termCount() {
+            return postings.size();
+        }
+
+        void trim() {
+            for (PostingList list : postings.values()) {
+                list.trim();
+            }
+        }
+
+        /**
+         * Returns the sorted ids of books containing the term, or any term starting with it
+         * when {@code prefix} is set.
+         */
+        int[] match(String term, boolean prefix) {
+            if (!prefix) {
+                PostingList list = postings.get(term);
+                return list == null ? new int[0] : list.toArray();
+            }
+            NavigableMap<String, PostingList> range =
+                    postings.subMap(term, true, term + Character.MAX_VALUE, false);
+            return union(range.values());
+        }
+
+        private static int[] union(Collection<PostingList> lists) {
+            int total = 0;
+            for (PostingList list : lists) {
+                total += list.size();
+            }
+            int[] merged = new int[total];
+            int n = 0;
+            for (PostingList list : lists) {
+                for (int i = 0; i < list.size(); i++) {
+                    merged[n++] = list.get(i);
+                }
+            }
+            if (lists.size() > 1) {
+                Arrays.sort(merged);
+                int unique = 0;
+                for (int i = 0; i < merged.length; i++) {
+                    if (i == 0 || merged[i] != merged[i - 1]) {
+                        merged[unique++] = merged[i];
+                    }
+                }
+                merged = Arrays.copyOf(merged, unique);
+            }
+            return merged;
+        }
+    }
+
+    public static final class Hits {
+        private final int total;
+        private final List<Integer> bookIds;
+        private final SearchCursor nextCursor;
+
+        Hits(int total, List<Integer> bookIds, SearchCursor nextCursor) {
+            this.total = total;
+            this.bookIds = bookIds;
+            this.nextCursor = nextCursor;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public List<Integer> getBookIds() {
+            return bookIds;
+        }
+
+        /**
+         * Where the next page starts, or null when these were the last matches.
+         */
+        public SearchCursor getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.event.BooksImportedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rebuilds the in-memory catalog indexes after a bulk import.
+ *
+ * Each rebuild streams the whole catalog, so it runs on a background thread instead of the request
+ * that finished the import, and the indexes keep answering from their previous state until the new
+ * one is swapped in. Imports that finish while a rebuild is waiting to start share it; one that
+ * finishes while a rebuild is running queues a single rebuild after it.
+ */
+@Service
+public class CatalogIndexRebuilder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CatalogIndexRebuilder.class);
+
+    private final BookSearchIndex bookSearchIndex;
+    private final SuggestionIndex suggestionIndex;
+    private final TagFilterIndex tagFilterIndex;
+
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final ExecutorService rebuilder =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("catalog-index-"));
+
+    public CatalogIndexRebuilder(BookSearchIndex bookSearchIndex, SuggestionIndex suggestionIndex,
+                                 TagFilterIndex tagFilterIndex) {
+        this.bookSearchIndex = bookSearchIndex;
+        this.suggestionIndex = suggestionIndex;
+        this.tagFilterIndex = tagFilterIndex;
+    }
+
+    @EventListener
+    public void onBooksImported(BooksImportedEvent event) {
+        if (rebuildQueued.compareAndSet(false, true)) {
+            rebuilder.execute(() -> {
+                // Cleared before rebuilding, so an import finishing from here on queues another pass
+                rebuildQueued.set(false);
+                rebuildAll();
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    private void rebuildAll() {
+        // The indexes fall back to the database on their own when it is unavailable; anything else
+        // should not stop the others from being rebuilt
+        for (Runnable rebuild : new Runnable[] {bookSearchIndex::rebuild, suggestionIndex::rebuild,
+                tagFilterIndex::rebuild}) {
+            try {
+                rebuild.run();
+            } catch (RuntimeException e) {
+                LOG.error("Catalog index rebuild after import failed", e);
+            }
+        }
+    }
+}
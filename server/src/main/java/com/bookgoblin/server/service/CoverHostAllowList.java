@@ -0,0 +1,47 @@
+package com.bookgoblin.server.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Hosts the server may fetch cover images from (covers.allowed-hosts).
+ *
+ * Cover URLs are stored with the book and can be set by anyone who can edit one, so without a list
+ * the server would fetch whatever address it is handed, internal ones included. An entry matches
+ * its host exactly; an entry starting with a dot matches any host under that domain. The check
+ * applies to the stored URL and again to every redirect the download follows.
+ */
+@Component
+public class CoverHostAllowList {
+
+    private final List<String> hosts;
+
+    public CoverHostAllowList(@Value("${covers.allowed-hosts}") List<String> hosts) {
+        this.hosts = hosts.stream()
+                .map(host -> host.trim().toLowerCase(Locale.ROOT))
+                .filter(host -> !host.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Whether the URI is an http or https address on an allowed host.
+     */
+    public boolean isAllowed(URI uri) {
+        String scheme = uri.getScheme();
+        String host = uri.getHost();
+        if (host == null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+            return false;
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        for (String allowed : hosts) {
+            if (allowed.startsWith(".") ? host.endsWith(allowed) : host.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
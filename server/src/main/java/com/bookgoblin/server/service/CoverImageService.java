@@ -0,0 +1,456 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.exception.CoverImageException;
+import com.bookgoblin.server.exception.CoverImageUnavailableException;
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.CoverImage;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Local copies of book cover images.
+ *
+ * The first request for a cover downloads it from the book's cover_image_url and writes the
+ * original plus a thumbnail for every {@link Size} into a directory of its own under the cache
+ * directory. Later requests are served from disk. The directory name includes a hash of the URL, so
+ * changing a book's cover URL moves it to a fresh entry and the old one simply ages out.
+ *
+ * Total disk use is capped in bytes. When a new cover would go over the cap, Caffeine picks covers
+ * to delete by its W-TinyLFU policy, which keeps those requested often as well as recently.
+ * Concurrent requests for a cover that is not cached yet wait for the one download already in
+ * progress.
+ *
+ * Covers are only fetched from hosts on the {@link CoverHostAllowList}; a book whose cover URL points
+ * anywhere else is treated as having no cover. Redirects are checked against the same list.
+ *
+ * Downloads run on a small bounded pool with connections of their own, so a page of uncached covers
+ * neither ties up request threads without limit nor competes with Open Library searches. When the
+ * pool and its queue are full the request is turned away rather than left waiting. Images are
+ * checked against a pixel cap before they are decoded, since a small file can declare dimensions
+ * that would not fit in memory.
+ */
+@Service
+public class CoverImageService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoverImageService.class);
+
+    public enum Size {
+        SMALL(120), MEDIUM(300), ORIGINAL(0);
+
+        private final int width;
+
+        Size(int width) {
+            this.width = width;
+        }
+
+        String fileName() {
+            return name().toLowerCase(Locale.ROOT) + ".jpg";
+        }
+    }
+
+    private static final String ORIGINAL = "original";
+    // Downloads and half-written entries; never served, and cleared out at startup
+    private static final String INCOMPLETE_PREFIX = ".";
+
+    private final RestTemplate restTemplate;
+    private final CoverHostAllowList allowedHosts;
+    private final Path cacheDir;
+    private final long maxImageBytes;
+    private final long maxImagePixels;
+    private final AsyncCache<String, CachedCover> covers;
+    private final ThreadPoolExecutor downloads;
+
+    public CoverImageService(RestTemplate coverRestTemplate, CoverHostAllowList allowedHosts,
+                             @Value("${covers.cache-dir}") Path cacheDir,
+                             @Value("${covers.cache.max-size}") DataSize maxSize,
+                             @Value("${covers.max-image-size}") DataSize maxImageSize,
+                             @Value("${covers.max-image-pixels}") long maxImagePixels,
+                             @Value("${covers.download.max-concurrent}") int maxConcurrent,
+                             @Value("${covers.download.queue-size}") int queueSize) {
+        this.restTemplate = coverRestTemplate;
+        this.allowedHosts = allowedHosts;
+        this.cacheDir = cacheDir.toAbsolutePath().normalize();
+        this.maxImageBytes = maxImageSize.toBytes();
+        this.maxImagePixels = maxImagePixels;
+        this.downloads = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("cover-download-"));
+        this.downloads.allowCoreThreadTimeOut(true);
+        this.covers = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, CachedCover cover) -> (int) Math.min(cover.bytes, Integer.MAX_VALUE))
+                .evictionListener((String key, CachedCover cover, RemovalCause cause) ->
+                        deleteQuietly(this.cacheDir.resolve(key)))
+                .buildAsync();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        downloads.shutdownNow();
+    }
+
+    /**
+     * Picks up the covers left on disk by a previous run, oldest first so they are evicted first.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadCache() {
+        List<Path> entries = new ArrayList<>();
+        try {
+            Files.createDirectories(cacheDir);
+            try (Stream<Path> list = Files.list(cacheDir)) {
+                list.forEach(entries::add);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to read cover cache directory {}: {}", cacheDir, e.getMessage());
+            return;
+        }
+        entries.sort(Comparator.comparing(CoverImageService::lastModified));
+
+        int loaded = 0;
+        for (Path entry : entries) {
+            CachedCover cover = entry.getFileName().toString().startsWith(INCOMPLETE_PREFIX) ? null : readEntry(entry);
+            if (cover == null) {
+                deleteQuietly(entry);
+            } else if (covers.asMap().putIfAbsent(entry.getFileName().toString(),
+                    CompletableFuture.completedFuture(cover)) == null) {
+                loaded++;
+            }
+        }
+        LOG.info("Cover cache at {} holds {} covers", cacheDir, loaded);
+    }
+
+    /**
+     * A validator for the cover as it would be served now, without touching the disk or the
+     * network, or null if the book has no cover that can be fetched.
+     */
+    public String getETag(Book book, Size size) {
+        String key = cacheKey(book);
+        return key == null ? null : "\"" + key + "-" + size.name().toLowerCase(Locale.ROOT) + "\"";
+    }
+
+    /**
+     * Returns the cached cover file for a book, downloading it first if needed.
+     *
+     * @return the cover, or null if the book has no cover that can be fetched
+     * @throws CoverImageException if the cover could not be downloaded or is not a readable image
+     * @throws CoverImageUnavailableException if the cover has to be downloaded and too many downloads
+     *         are already waiting
+     */
+    public CoverImage getCover(Book book, Size size) {
+        String key = cacheKey(book);
+        if (key == null) {
+            return null;
+        }
+
+        CompletableFuture<CachedCover> entry = covers.getIfPresent(key);
+        if (entry == null) {
+            CompletableFuture<CachedCover> download = new CompletableFuture<>();
+            entry = covers.asMap().putIfAbsent(key, download);
+            if (entry == null) {
+                entry = download;
+                // Fails are removed from the cache automatically, so the next request tries again
+                URI source = URI.create(book.getCoverImageUrl());
+                try {
+                    downloads.execute(() -> {
+                        try {
+                            download.complete(store(key, source));
+                        } catch (RuntimeException e) {
+                            download.completeExceptionally(e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    download.completeExceptionally(
+                            new CoverImageUnavailableException("Too many cover downloads in progress", e));
+                }
+            }
+        }
+
+        CachedCover cover;
+        try {
+            cover = entry.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CoverImageException) {
+                throw (CoverImageException) e.getCause();
+            }
+            if (e.getCause() instanceof CoverImageUnavailableException) {
+                throw (CoverImageUnavailableException) e.getCause();
+            }
+            throw new CoverImageException("Unable to cache cover for book " + book.getBookId(), e.getCause());
+        }
+
+        Path file = cacheDir.resolve(key).resolve(size == Size.ORIGINAL ? cover.originalFile : size.fileName());
+        MediaType contentType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        try {
+            return new CoverImage(file, Files.size(file), contentType);
+        } catch (IOException e) {
+            // Evicted or removed since it was looked up; the next request downloads it again
+            covers.synchronous().invalidate(key);
+            throw new CoverImageException("Cover for book " + book.getBookId() + " is no longer cached", e);
+        }
+    }
+
+    /**
+     * Downloads a cover and writes it with its thumbnails into the entry directory for the key.
+     */
+    private CachedCover store(String key, URI source) {
+        Path entry = cacheDir.resolve(key);
+        CachedCover existing = readEntry(entry);
+        if (existing != null) {
+            return existing;
+        }
+
+        Path incoming = null;
+        try {
+            Files.createDirectories(cacheDir);
+            incoming = Files.createTempDirectory(cacheDir, INCOMPLETE_PREFIX);
+            Path download = incoming.resolve("download");
+            download(source, download);
+
+            String format;
+            BufferedImage image;
+            try (ImageInputStream in = ImageIO.createImageInputStream(download.toFile())) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+                if (!readers.hasNext()) {
+                    throw new CoverImageException("Cover at " + source + " is not a supported image");
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in);
+                    format = reader.getFormatName().toLowerCase(Locale.ROOT);
+                    // Only reads the header; decoding is what allocates width * height pixels
+                    long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                    if (pixels > maxImagePixels) {
+                        throw new CoverImageException("Cover at " + source + " is " + reader.getWidth(0) + "x"
+                                + reader.getHeight(0) + ", over the limit of " + maxImagePixels + " pixels");
+                    }
+                    image = reader.read(0);
+                } finally {
+                    reader.dispose();
+                }
+            }
+
+            String originalFile = ORIGINAL + "." + ("jpeg".equals(format) ? "jpg" : format);
+            Files.move(download, incoming.resolve(originalFile));
+            for (Size size : Size.values()) {
+                if (size != Size.ORIGINAL) {
+                    writeThumbnail(image, size.width, incoming.resolve(size.fileName()));
+                }
+            }
+
+            deleteQuietly(entry);
+            Files.move(incoming, entry, StandardCopyOption.ATOMIC_MOVE);
+            return new CachedCover(directorySize(entry), originalFile);
+        } catch (IOException | UncheckedIOException e) {
+            throw new CoverImageException("Unable to cache cover from " + source, e);
+        } finally {
+            if (incoming != null) {
+                deleteQuietly(incoming);
+            }
+        }
+    }
+
+    private void download(URI source, Path target) {
+        try {
+            restTemplate.execute(source, HttpMethod.GET,
+                    request -> request.getHeaders().setAccept(List.of(MediaType.parseMediaType("image/*"))),
+                    response -> {
+                        long declared = response.getHeaders().getContentLength();
+                        if (declared > maxImageBytes) {
+                            throw new CoverImageException("Cover at " + source + " is larger than " + maxImageBytes + " bytes");
+                        }
+                        try (InputStream in = response.getBody(); OutputStream out = Files.newOutputStream(target)) {
+                            byte[] buffer = new byte[8192];
+                            long total = 0;
+                            int read;
+                            while ((read = in.read(buffer)) != -1) {
+                                total += read;
+                                if (total > maxImageBytes) {
+                                    throw new CoverImageException("Cover at " + source + " is larger than " + maxImageBytes + " bytes");
+                                }
+                                out.write(buffer, 0, read);
+                            }
+                        }
+                        return null;
+                    });
+        } catch (RestClientException e) {
+            throw new CoverImageException("Unable to download cover from " + source + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Scales the image down to the given width, keeping its aspect ratio, and writes it as a JPEG.
+     * Images already narrower than that are re-encoded at their own size.
+     */
+    private static void writeThumbnail(BufferedImage image, int width, Path target) throws IOException {
+        BufferedImage scaled = image;
+        int targetWidth = Math.min(width, image.getWidth());
+        // Halve at a time: a single bilinear pass from a large original drops most of the pixels
+        while (scaled.getWidth() > targetWidth) {
+            int stepWidth = Math.max(targetWidth, scaled.getWidth() / 2);
+            int stepHeight = Math.max(1, Math.round((float) image.getHeight() * stepWidth / image.getWidth()));
+            scaled = resize(scaled, stepWidth, stepHeight);
+        }
+        if (scaled == image) {
+            scaled = resize(image, image.getWidth(), image.getHeight());
+        }
+        if (!ImageIO.write(scaled, "jpg", target.toFile())) {
+            throw new IOException("No JPEG writer available");
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        // JPEG has no alpha channel, so transparent areas are painted white
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    /**
+     * Describes a complete entry directory, or returns null if it is missing or incomplete.
+     */
+    private static CachedCover readEntry(Path entry) {
+        if (!Files.isDirectory(entry)) {
+            return null;
+        }
+        String originalFile = null;
+        try (Stream<Path> files = Files.list(entry)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().startsWith(ORIGINAL + ".")) {
+                    originalFile = file.getFileName().toString();
+                }
+            }
+            for (Size size : Size.values()) {
+                if (size != Size.ORIGINAL && !Files.isRegularFile(entry.resolve(size.fileName()))) {
+                    return null;
+                }
+            }
+            return originalFile == null ? null : new CachedCover(directorySize(entry), originalFile);
+        } catch (IOException | UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * "{bookId}-{first 16 hex digits of SHA-256 of the cover URL}", or null if there is nothing
+     * to fetch, including when the URL is not on an allowed host.
+     */
+    private String cacheKey(Book book) {
+        String url = book.getCoverImageUrl();
+        if (url == null || !(url.startsWith("http://") || url.startsWith("https://"))) {
+            return null;
+        }
+        try {
+            if (!allowedHosts.isAllowed(URI.create(url))) {
+                return null;
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return book.getBookId() + "-" + HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static long directorySize(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            long total = 0;
+            for (Path file : (Iterable<Path>) files::iterator) {
+                total += Files.size(file);
+            }
+            return total;
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException | UncheckedIOException e) {
+            LOG.warn("Unable to delete {} from the cover cache: {}", path, e.getMessage());
+        }
+    }
+
+    private static final class CachedCover {
+        final long bytes;
+        final String originalFile;
+
+        CachedCover(long bytes, String originalFile) {
+            this.bytes = bytes;
+            this.originalFile = originalFile;
+        }
+    }
+}
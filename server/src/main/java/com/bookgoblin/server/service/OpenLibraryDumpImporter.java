@@ -0,0 +1,346 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.dao.OpenLibraryMirrorDao;
+import com.bookgoblin.server.model.OpenLibraryAuthor;
+import com.bookgoblin.server.model.OpenLibraryEdition;
+import com.bookgoblin.server.model.OpenLibraryImportStatus;
+import com.bookgoblin.server.model.OpenLibraryWork;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads Open Library data dumps (https://openlibrary.org/developers/dumps) into the local mirror.
+ *
+ * Dumps are tab-separated: type, key, revision, last modified, and the record as JSON. The authors,
+ * works and editions dumps can be imported in any order, or all at once from the combined dump;
+ * every other record type is skipped. Files are read from the configured dump directory only, and
+ * may be gzipped as published.
+ *
+ * One thread streams the file and hands chunks of lines to a pool with a worker per core, which
+ * parse the JSON and write each chunk as one batch. The pool's queue is short and the reader runs
+ * a chunk itself when it is full, so a fast disk cannot get far ahead of the database. Re-importing
+ * a newer dump replaces records by key. Only one import runs at a time.
+ */
+@Service
+public class OpenLibraryDumpImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OpenLibraryDumpImporter.class);
+
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final Pattern YEAR = Pattern.compile("(?<!\\d)(\\d{4})(?!\\d)");
+    // Widths of the ol_* key and isbn columns; a longer value would fail its whole batch
+    private static final int MAX_KEY_LENGTH = 32;
+    private static final int MAX_ISBN_LENGTH = 13;
+    private static final Pattern ISBN_SEPARATORS = Pattern.compile("[-\\s]");
+
+    private final OpenLibraryMirrorDao mirrorDao;
+    private final ObjectMapper objectMapper;
+    private final Path dumpDir;
+    private final int batchSize;
+    private final int workers;
+
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder authors = new LongAdder();
+    private final LongAdder works = new LongAdder();
+    private final LongAdder editions = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder isbnsDropped = new LongAdder();
+
+    private volatile OpenLibraryImportStatus.State state = OpenLibraryImportStatus.State.IDLE;
+    private volatile String file;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile Thread reader;
+
+    public OpenLibraryDumpImporter(OpenLibraryMirrorDao mirrorDao, ObjectMapper objectMapper,
+                                   @Value("${openlibrary.mirror.dump-dir}") Path dumpDir,
+                                   @Value("${openlibrary.mirror.batch-size}") int batchSize) {
+        this.mirrorDao = mirrorDao;
+        this.objectMapper = objectMapper;
+        this.dumpDir = dumpDir.toAbsolutePath().normalize();
+        this.batchSize = batchSize;
+        this.workers = Runtime.getRuntime().availableProcessors();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread running = reader;
+        if (running != null) {
+            running.interrupt();
+        }
+    }
+
+    /**
+     * Starts importing a dump file in the background.
+     *
+     * @param fileName name of a file in the dump directory
+     * @throws IllegalArgumentException if the file is outside the dump directory or does not exist
+     * @throws IllegalStateException if an import is already running
+     */
+    public synchronized OpenLibraryImportStatus start(String fileName) {
+        Path path = dumpDir.resolve(fileName).normalize();
+        if (!path.startsWith(dumpDir) || !Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("No dump file named " + fileName);
+        }
+        if (state == OpenLibraryImportStatus.State.RUNNING) {
+            throw new IllegalStateException("An import of " + file + " is already running");
+        }
+
+        linesRead.reset();
+        authors.reset();
+        works.reset();
+        editions.reset();
+        skipped.reset();
+        isbnsDropped.reset();
+        file = dumpDir.relativize(path).toString();
+        startedAt = Instant.now();
+        finishedAt = null;
+        error = null;
+        state = OpenLibraryImportStatus.State.RUNNING;
+
+        reader = new Thread(() -> run(path), "openlibrary-import");
+        reader.start();
+        return getStatus();
+    }
+
+    public OpenLibraryImportStatus getStatus() {
+        return new OpenLibraryImportStatus(state, file, linesRead.sum(), authors.sum(), works.sum(),
+                editions.sum(), skipped.sum(), isbnsDropped.sum(), startedAt, finishedAt, error);
+    }
+
+    private void run(Path path) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(workers * 2), new CustomizableThreadFactory("openlibrary-import-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        try (BufferedReader in = open(path)) {
+            List<String> chunk = new ArrayList<>(batchSize);
+            String line;
+            while ((line = in.readLine()) != null && failure.get() == null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                linesRead.increment();
+                chunk.add(line);
+                if (chunk.size() == batchSize) {
+                    submit(pool, chunk, failure);
+                    chunk = new ArrayList<>(batchSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(pool, chunk, failure);
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            mirrorDao.linkImportedRecords();
+            finish(OpenLibraryImportStatus.State.COMPLETED, null);
+            LOG.info("Imported Open Library dump {}: {} authors, {} works, {} editions, {} lines skipped, "
+                    + "{} ISBNs dropped", file, authors.sum(), works.sum(), editions.sum(), skipped.sum(),
+                    isbnsDropped.sum());
+        } catch (InterruptedException e) {
+            finish(OpenLibraryImportStatus.State.FAILED, "Interrupted");
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Open Library dump import of {} failed: {}", file, e.getMessage());
+            finish(OpenLibraryImportStatus.State.FAILED, e.getMessage());
+        } finally {
+            pool.shutdownNow();
+            reader = null;
+        }
+    }
+
+    private void finish(OpenLibraryImportStatus.State finalState, String message) {
+        finishedAt = Instant.now();
+        error = message;
+        state = finalState;
+    }
+
+    private BufferedReader open(Path path) throws IOException {
+        // Memory-mapping is no help here: published dumps are gzipped and have to be inflated as a stream
+        InputStream in = Files.newInputStream(path);
+        if (path.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, READ_BUFFER_SIZE);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+    }
+
+    private void submit(ThreadPoolExecutor pool, List<String> chunk, AtomicReference<RuntimeException> failure) {
+        pool.execute(() -> {
+            if (failure.get() != null) {
+                return;
+            }
+            try {
+                importChunk(chunk);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+    }
+
+    private void importChunk(List<String> lines) {
+        List<OpenLibraryAuthor> chunkAuthors = new ArrayList<>();
+        List<OpenLibraryWork> chunkWorks = new ArrayList<>();
+        List<OpenLibraryEdition> chunkEditions = new ArrayList<>();
+
+        for (String line : lines) {
+            String[] columns = line.split("\t", 5);
+            if (columns.length < 5) {
+                skipped.increment();
+                continue;
+            }
+            JsonNode record;
+            try {
+                record = objectMapper.readTree(columns[4]);
+            } catch (JsonProcessingException e) {
+                skipped.increment();
+                continue;
+            }
+
+            String key = stripPrefix(columns[1]);
+            if (key.length() > MAX_KEY_LENGTH) {
+                skipped.increment();
+                continue;
+            }
+            switch (columns[0]) {
+                case "/type/author" -> {
+                    String name = text(record, "name");
+                    if (name == null) {
+                        skipped.increment();
+                    } else {
+                        chunkAuthors.add(new OpenLibraryAuthor(key, name));
+                    }
+                }
+                case "/type/work" -> {
+                    String title = text(record, "title");
+                    if (title == null) {
+                        skipped.increment();
+                    } else {
+                        String authorKey = stripPrefix(text(record.path("authors").path(0).path("author"), "key"));
+                        if (authorKey != null && authorKey.length() > MAX_KEY_LENGTH) {
+                            // Could not match any author row anyway
+                            authorKey = null;
+                        }
+                        chunkWorks.add(new OpenLibraryWork(key, title, authorKey,
+                                year(text(record, "first_publish_date")), cover(record)));
+                    }
+                }
+                case "/type/edition" -> {
+                    String workKey = stripPrefix(text(record.path("works").path(0), "key"));
+                    String title = text(record, "title");
+                    if (workKey == null || workKey.length() > MAX_KEY_LENGTH || title == null) {
+                        // Orphan editions cannot be found through a work, so there is no point keeping them;
+                        // untitled ones would fail the whole batch on ol_editions.title
+                        skipped.increment();
+                    } else {
+                        chunkEditions.add(new OpenLibraryEdition(key, workKey, title, isbn(record),
+                                year(text(record, "publish_date")), cover(record)));
+                    }
+                }
+                default -> skipped.increment();
+            }
+        }
+
+        if (!chunkAuthors.isEmpty()) {
+            mirrorDao.upsertAuthors(chunkAuthors);
+            authors.add(chunkAuthors.size());
+        }
+        if (!chunkWorks.isEmpty()) {
+            mirrorDao.upsertWorks(chunkWorks);
+            works.add(chunkWorks.size());
+        }
+        if (!chunkEditions.isEmpty()) {
+            mirrorDao.upsertEditions(chunkEditions);
+            editions.add(chunkEditions.size());
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.path(field);
+        return value.isTextual() && !value.asText().isBlank() ? value.asText().strip() : null;
+    }
+
+    private static String text(JsonNode array, int index) {
+        JsonNode value = array.path(index);
+        return value.isTextual() && !value.asText().isBlank() ? value.asText().strip() : null;
+    }
+
+    /**
+     * "/works/OL45804W" becomes "OL45804W".
+     */
+    private static String stripPrefix(String key) {
+        if (key == null) {
+            return null;
+        }
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Dates in the dumps are free text ("1954", "July 29, 1954", "c1954"), so take the first
+     * four-digit run.
+     */
+    private static Integer year(String date) {
+        if (date == null) {
+            return null;
+        }
+        Matcher matcher = YEAR.matcher(date);
+        return matcher.find() ? Integer.valueOf(matcher.group(1)) : null;
+    }
+
+    /**
+     * The first ISBN-13, or failing that ISBN-10, without hyphens or spaces. ISBNs are free text in
+     * the dumps; one still longer than an ISBN-13 is left out (and counted) rather than stored, and
+     * the edition is kept without it.
+     */
+    private String isbn(JsonNode record) {
+        String isbn = text(record.path("isbn_13"), 0);
+        if (isbn == null) {
+            isbn = text(record.path("isbn_10"), 0);
+        }
+        if (isbn == null) {
+            return null;
+        }
+        isbn = ISBN_SEPARATORS.matcher(isbn).replaceAll("");
+        if (isbn.isEmpty() || isbn.length() > MAX_ISBN_LENGTH) {
+            isbnsDropped.increment();
+            return null;
+        }
+        return isbn;
+    }
+
+    private static Integer cover(JsonNode record) {
+        // -1 marks a cover that was removed
+        JsonNode cover = record.path("covers").path(0);
+        return cover.canConvertToInt() && cover.asInt() > 0 ? cover.asInt() : null;
+    }
+}
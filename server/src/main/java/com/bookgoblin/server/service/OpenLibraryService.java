@@ -1,56 +1,237 @@
 package com.bookgoblin.server.service;
 
+import com.bookgoblin.server.dao.OpenLibraryMirrorDao;
+import com.bookgoblin.server.exception.DaoException;
 import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.CacheStatistics;
+import com.bookgoblin.server.model.OpenLibraryHealth;
+import com.bookgoblin.server.model.OpenLibrarySearchResult;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.text.Normalizer;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
 
+/**
+ * Searches the Open Library catalog.
+ *
+ * Results are cached by normalized query, so "The Hobbit" and "  the hobbit" share an entry and a
+ * popular search only reaches openlibrary.org once per TTL. Searches that found nothing are kept for
+ * a shorter time. Concurrent requests for a query that is not cached yet wait on the one call
+ * already fetching it instead of each making their own. Failed calls are not cached.
+ *
+ * Upstream calls never run on request threads. They go to a small bounded pool (a bulkhead), so a
+ * slow openlibrary.org can hold at most that many threads, and a circuit breaker stops calling it
+ * altogether after repeated failures. Whenever a live search cannot be made the last good results
+ * for the query are served instead, flagged as degraded.
+ *
+ * With {@code openlibrary.mode=mirror} searches are answered from the local copy of the catalog
+ * loaded by {@link OpenLibraryDumpImporter} instead, and openlibrary.org is not called at all.
+ */
 @Service
 public class OpenLibraryService {
 
-    private static final String OPEN_LIBRARY_SEARCH_URL = "https://openlibrary.org/search.json?q={query}&fields=title,author_name,isbn,first_publish_year,cover_i,edition_key&limit=20";
+    private static final Logger LOG = LoggerFactory.getLogger(OpenLibraryService.class);
+
+    private static final String OPEN_LIBRARY_SEARCH_PATH = "/search.json?q={query}&fields=title,author_name,isbn,first_publish_year,cover_i,edition_key&limit=20";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final int MIRROR_RESULT_LIMIT = 20;
 
     private final RestTemplate restTemplate;
+    private final OpenLibraryMirrorDao mirrorDao;
+    private final boolean mirrorMode;
+    private final AsyncCache<String, List<Book>> searches;
+    // Outlives the main cache so there is something to fall back on while upstream is down
+    private final Cache<String, List<Book>> lastGoodResults;
+    private final ThreadPoolExecutor bulkhead;
+    private final CircuitBreaker circuitBreaker;
+
+    private final LongAdder rejectedCalls = new LongAdder();
+    private final LongAdder shortCircuitedCalls = new LongAdder();
+    private final LongAdder degradedResponses = new LongAdder();
 
-    public OpenLibraryService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    public OpenLibraryService(RestTemplate openLibraryRestTemplate, OpenLibraryMirrorDao mirrorDao,
+                              @Value("${openlibrary.mode}") String mode,
+                              @Value("${openlibrary.cache.maximum-size}") long maximumSize,
+                              @Value("${openlibrary.cache.ttl}") Duration ttl,
+                              @Value("${openlibrary.cache.empty-result-ttl}") Duration emptyResultTtl,
+                              @Value("${openlibrary.cache.stale-ttl}") Duration staleTtl,
+                              @Value("${openlibrary.bulkhead.max-concurrent}") int maxConcurrent,
+                              @Value("${openlibrary.bulkhead.queue-size}") int queueSize,
+                              @Value("${openlibrary.circuit-breaker.failure-threshold}") int failureThreshold,
+                              @Value("${openlibrary.circuit-breaker.open-duration}") Duration openDuration) {
+        this.restTemplate = openLibraryRestTemplate;
+        this.mirrorDao = mirrorDao;
+        this.mirrorMode = switch (mode) {
+            case "live" -> false;
+            case "mirror" -> true;
+            default -> throw new IllegalArgumentException("openlibrary.mode must be live or mirror, not " + mode);
+        };
+        this.searches = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new ResultExpiry(ttl, emptyResultTtl))
+                .recordStats()
+                .buildAsync();
+        this.lastGoodResults = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(staleTtl)
+                .build();
+        this.bulkhead = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("openlibrary-"));
+        this.bulkhead.allowCoreThreadTimeOut(true);
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openDuration);
     }
 
-    public List<Book> searchBooks(String query) {
-        List<Book> books = new ArrayList<>();
+    @PreDestroy
+    public void shutdown() {
+        bulkhead.shutdownNow();
+    }
+
+    /**
+     * Searches Open Library without blocking the caller. The returned future always completes
+     * normally; upstream problems produce a degraded result instead of an error.
+     */
+    public CompletableFuture<OpenLibrarySearchResult> searchBooks(String query) {
+        String key = normalizeQuery(query);
+        if (key.isEmpty()) {
+            return CompletableFuture.completedFuture(new OpenLibrarySearchResult(new ArrayList<>(), false));
+        }
+        if (mirrorMode) {
+            return CompletableFuture.completedFuture(searchMirror(key));
+        }
+
+        CompletableFuture<List<Book>> books;
+        try {
+            books = searches.get(key, (k, executor) -> CompletableFuture.supplyAsync(() -> fetch(k), bulkhead));
+        } catch (RejectedExecutionException e) {
+            rejectedCalls.increment();
+            books = CompletableFuture.failedFuture(e);
+        }
+
+        return books.handle((found, error) -> {
+            if (error == null) {
+                return new OpenLibrarySearchResult(new ArrayList<>(found), false);
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (!(cause instanceof CallNotPermittedException) && !(cause instanceof RejectedExecutionException)) {
+                LOG.warn("Error calling Open Library API: {}", cause.getMessage());
+            }
+            degradedResponses.increment();
+            List<Book> stale = lastGoodResults.getIfPresent(key);
+            return new OpenLibrarySearchResult(stale == null ? new ArrayList<>() : new ArrayList<>(stale), true);
+        });
+    }
+
+    /**
+     * A local query, so it runs on the caller's thread and skips the cache, bulkhead and breaker.
+     */
+    private OpenLibrarySearchResult searchMirror(String query) {
+        try {
+            return new OpenLibrarySearchResult(mirrorDao.searchBooks(query, MIRROR_RESULT_LIMIT), false);
+        } catch (DaoException e) {
+            LOG.warn("Error searching the Open Library mirror: {}", e.getMessage());
+            degradedResponses.increment();
+            return new OpenLibrarySearchResult(new ArrayList<>(), true);
+        }
+    }
+
+    public OpenLibraryHealth getHealth() {
+        return new OpenLibraryHealth(circuitBreaker.getState().name(), circuitBreaker.getConsecutiveFailures(),
+                bulkhead.getActiveCount(), bulkhead.getQueue().size(), rejectedCalls.sum(),
+                shortCircuitedCalls.sum(), degradedResponses.sum());
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats stats = searches.synchronous().stats();
+        // Every load is one upstream call, so loadCount doubles as the number of requests sent
+        return new CacheStatistics("openlibrary-search", searches.synchronous().estimatedSize(),
+                stats.hitCount(), stats.missCount(), stats.hitRate(), stats.loadCount(),
+                stats.averageLoadPenalty() / 1_000_000.0, stats.evictionCount());
+    }
+
+    /**
+     * Calls Open Library and maps the response. Runs on the bulkhead pool. Errors from the API
+     * (4xx, 5xx, network issues, timeouts) are thrown so they are never cached.
+     */
+    private List<Book> fetch(String query) {
+        if (!circuitBreaker.tryAcquire()) {
+            shortCircuitedCalls.increment();
+            throw new CallNotPermittedException();
+        }
 
+        ResponseEntity<OpenLibraryResponse> response;
         try {
-            // Make the GET request to the Open Library API
-            ResponseEntity<OpenLibraryResponse> response = restTemplate.getForEntity(
-                    OPEN_LIBRARY_SEARCH_URL,
+            response = restTemplate.getForEntity(
+                    OPEN_LIBRARY_SEARCH_PATH,
                     OpenLibraryResponse.class,
                     query // This replaces the {query} placeholder in the URL
             );
+            circuitBreaker.onSuccess();
+        } catch (HttpClientErrorException e) {
+            // Upstream answered, so it is healthy; only rate limiting means it wants us to back off
+            if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure();
+            throw e;
+        }
 
-            OpenLibraryResponse body = response.getBody();
+        List<Book> books = new ArrayList<>();
+        OpenLibraryResponse body = response.getBody();
 
-            // Check if we got a response and map the docs to our Book model
-            if (body != null && body.getDocs() != null) {
-                for (OpenLibraryBook olBook : body.getDocs()) {
-                    Book book = mapOpenLibraryBookToBook(olBook);
-                    books.add(book);
-                }
+        // Check if we got a response and map the docs to our Book model
+        if (body != null && body.getDocs() != null) {
+            for (OpenLibraryBook olBook : body.getDocs()) {
+                Book book = mapOpenLibraryBookToBook(olBook);
+                books.add(book);
             }
-
-        } catch (RestClientException e) {
-            // Handle errors from the API (e.g., 4xx, 5xx, network issues)
-            System.err.println("Error calling Open Library API: " + e.getMessage());
-            // You could throw a custom exception here to be handled by the controller
-            // throw new OpenLibraryException("Failed to search Open Library: " + e.getMessage(), e);
         }
-
+        lastGoodResults.put(query, books);
         return books;
     }
 
+    /**
+     * Case and spacing make no difference to Open Library's search, so they should not make a
+     * difference to the cache key either. Accents are kept: they matter in some scripts.
+     */
+    static String normalizeQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(query, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
     /**
      * Maps a book object from the Open Library API format to our internal Book model.
      * @param olBook The book object from the Open Library response
@@ -84,6 +265,44 @@ public class OpenLibraryService {
         return book;
     }
 
+    /**
+     * Keeps results for the full TTL and empty results for the shorter one.
+     */
+    private static final class ResultExpiry implements Expiry<String, List<Book>> {
+
+        private final long ttlNanos;
+        private final long emptyResultTtlNanos;
+
+        ResultExpiry(Duration ttl, Duration emptyResultTtl) {
+            this.ttlNanos = ttl.toNanos();
+            this.emptyResultTtlNanos = emptyResultTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String key, List<Book> value, long currentTime) {
+            return value.isEmpty() ? emptyResultTtlNanos : ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, List<Book> value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, List<Book> value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Thrown in place of a call while the circuit breaker is open.
+     */
+    private static final class CallNotPermittedException extends RuntimeException {
+        CallNotPermittedException() {
+            super("Open Library circuit breaker is open", null, false, false);
+        }
+    }
+
     // --- Inner Classes to Model the Open Library API Response ---
     // These classes are used by Jackson to deserialize the JSON response.
 
@@ -0,0 +1,76 @@
+package com.bookgoblin.server.service;
+
+import java.util.Arrays;
+
+/**
+ * A sorted, duplicate-free list of book ids backed by a plain int array.
+ *
+ * Appends of increasing ids (the common case while bulk loading in book_id order) are O(1);
+ * out-of-order inserts and removals shift the tail.
+ */
+final class PostingList {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] docs = EMPTY;
+    private int size;
+
+    void add(int doc) {
+        if (size > 0 && docs[size - 1] >= doc) {
+            int index = Arrays.binarySearch(docs, 0, size, doc);
+            if (index >= 0) {
+                return;
+            }
+            insertAt(-index - 1, doc);
+            return;
+        }
+        ensureCapacity();
+        docs[size++] = doc;
+    }
+
+    void remove(int doc) {
+        int index = Arrays.binarySearch(docs, 0, size, doc);
+        if (index < 0) {
+            return;
+        }
+        System.arraycopy(docs, index + 1, docs, index, size - index - 1);
+        size--;
+        if (size == 0) {
+            docs = EMPTY;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int index) {
+        return docs[index];
+    }
+
+    /**
+     * Shrinks the backing array to the exact size, used once a bulk load is finished.
+     */
+    void trim() {
+        if (docs.length != size) {
+            docs = size == 0 ? EMPTY : Arrays.copyOf(docs, size);
+        }
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(docs, size);
+    }
+
+    private void insertAt(int index, int doc) {
+        ensureCapacity();
+        System.arraycopy(docs, index, docs, index + 1, size - index);
+        docs[index] = doc;
+        size++;
+    }
+
+    private void ensureCapacity() {
+        if (size == docs.length) {
+            docs = Arrays.copyOf(docs, Math.max(4, size + (size >> 1)));
+        }
+    }
+}
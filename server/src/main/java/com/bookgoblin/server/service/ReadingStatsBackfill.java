@@ -0,0 +1,147 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.dao.ReadingStatsDao;
+import com.bookgoblin.server.model.ReadingStatsBackfillStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recomputes the reading statistics rollups from reading_logs, for logs written before the rollup
+ * triggers existed or to repair drift.
+ *
+ * Users are split into ranges of consecutive ids and each range is rebuilt in its own transaction,
+ * a configured number at a time. Every worker holds a pooled connection for as long as its range
+ * takes, so there are always fewer workers than connections and requests can still get one. A range
+ * briefly holds back stats writes for its own users while it is rebuilt (see
+ * {@link ReadingStatsDao#rebuildStats}), and their stats are correct again once it commits. A range
+ * that loses a deadlock, for instance against a user book being deleted, is rolled back and retried.
+ * Only one backfill runs at a time.
+ */
+@Service
+public class ReadingStatsBackfill {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadingStatsBackfill.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    private final ReadingStatsDao readingStatsDao;
+    private final int chunkSize;
+    private final int workers;
+
+    private final AtomicInteger chunksDone = new AtomicInteger();
+    private final LongAdder logs = new LongAdder();
+
+    private volatile ReadingStatsBackfillStatus.State state = ReadingStatsBackfillStatus.State.IDLE;
+    private volatile int chunks;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    public ReadingStatsBackfill(ReadingStatsDao readingStatsDao,
+                                @Value("${reading-stats.backfill.chunk-size}") int chunkSize,
+                                @Value("${reading-stats.backfill.workers}") int workers,
+                                @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        this.readingStatsDao = readingStatsDao;
+        this.chunkSize = chunkSize;
+        this.workers = Math.max(1, Math.min(workers, poolSize - 1));
+        if (this.workers != workers) {
+            LOG.warn("Reading stats backfill limited to {} workers to leave connections for requests (pool size {})",
+                    this.workers, poolSize);
+        }
+    }
+
+    /**
+     * Starts a backfill in the background.
+     *
+     * @throws IllegalStateException if a backfill is already running
+     */
+    public synchronized ReadingStatsBackfillStatus start() {
+        if (state == ReadingStatsBackfillStatus.State.RUNNING) {
+            throw new IllegalStateException("A reading stats backfill is already running");
+        }
+
+        chunksDone.set(0);
+        logs.reset();
+        chunks = 0;
+        startedAt = Instant.now();
+        finishedAt = null;
+        error = null;
+        state = ReadingStatsBackfillStatus.State.RUNNING;
+
+        new Thread(this::run, "reading-stats-backfill").start();
+        return getStatus();
+    }
+
+    public ReadingStatsBackfillStatus getStatus() {
+        return new ReadingStatsBackfillStatus(state, chunks, chunksDone.get(), logs.sum(),
+                startedAt, finishedAt, error);
+    }
+
+    private void run() {
+        ExecutorService pool = Executors.newFixedThreadPool(workers,
+                new CustomizableThreadFactory("reading-stats-backfill-"));
+        try {
+            int maxUserId = readingStatsDao.getMaxUserId();
+            chunks = (maxUserId + chunkSize - 1) / chunkSize;
+            List<Future<?>> results = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int from = chunk * chunkSize + 1;
+                int to = Math.min(from + chunkSize - 1, maxUserId);
+                results.add(pool.submit(() -> {
+                    logs.add(rebuildChunk(from, to));
+                    chunksDone.incrementAndGet();
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            finish(ReadingStatsBackfillStatus.State.COMPLETED, null);
+            LOG.info("Reading stats backfill rolled up {} logs in {} chunks", logs.sum(), chunks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(ReadingStatsBackfillStatus.State.FAILED, "Interrupted");
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            LOG.warn("Reading stats backfill failed: {}", cause.getMessage());
+            finish(ReadingStatsBackfillStatus.State.FAILED, cause.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private long rebuildChunk(int fromUserId, int toUserId) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return readingStatsDao.rebuildStats(fromUserId, toUserId);
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                LOG.debug("Reading stats for users {} to {} hit a lock conflict, retrying", fromUserId, toUserId);
+                Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+            }
+        }
+    }
+
+    private void finish(ReadingStatsBackfillStatus.State finalState, String message) {
+        finishedAt = Instant.now();
+        error = message;
+        state = finalState;
+    }
+}
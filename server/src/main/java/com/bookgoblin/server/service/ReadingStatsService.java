@@ -0,0 +1,53 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.dao.ReadingStatsDao;
+import com.bookgoblin.server.model.ReadingStats;
+import com.bookgoblin.server.model.ReadingStatsMonth;
+import com.bookgoblin.server.model.ReadingStreaks;
+import org.springframework.stereotype.Service;
+
+/**
+ * Builds a user's reading statistics from the monthly and daily rollups. Both are indexed by user,
+ * so the cost depends on how many months and days the user has been active, not on how many logs
+ * they have written.
+ */
+@Service
+public class ReadingStatsService {
+
+    private final ReadingStatsDao readingStatsDao;
+
+    public ReadingStatsService(ReadingStatsDao readingStatsDao) {
+        this.readingStatsDao = readingStatsDao;
+    }
+
+    public ReadingStats getStats(int userId) {
+        ReadingStats stats = new ReadingStats();
+        int[] ratings = new int[5];
+        long finishDays = 0;
+
+        for (ReadingStatsMonth month : readingStatsDao.getMonthlyStats(userId)) {
+            for (int rating = 1; rating <= 5; rating++) {
+                ratings[rating - 1] += month.getRatingCount(rating);
+            }
+            if (month.getFinishedCount() > 0) {
+                stats.getFinishedPerMonth().put(month.getMonth().toString(), month.getFinishedCount());
+                stats.getFinishedPerYear().merge(String.valueOf(month.getMonth().getYear()),
+                        month.getFinishedCount(), Integer::sum);
+                stats.setTotalFinished(stats.getTotalFinished() + month.getFinishedCount());
+                finishDays += month.getFinishDaysTotal();
+            }
+        }
+
+        if (stats.getTotalFinished() > 0) {
+            stats.setAverageDaysToFinish((double) finishDays / stats.getTotalFinished());
+        }
+        for (int rating = 1; rating <= 5; rating++) {
+            stats.getRatingHistogram().put(rating, ratings[rating - 1]);
+        }
+
+        ReadingStreaks streaks = readingStatsDao.getStreaks(userId);
+        stats.setCurrentStreak(streaks.getCurrent());
+        stats.setLongestStreak(streaks.getLongest());
+        return stats;
+    }
+}
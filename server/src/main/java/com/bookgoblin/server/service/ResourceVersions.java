@@ -0,0 +1,106 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.event.BookChangedEvent;
+import com.bookgoblin.server.event.BooksImportedEvent;
+import com.bookgoblin.server.event.ReadingLogChangedEvent;
+import com.bookgoblin.server.event.TagChangedEvent;
+import com.bookgoblin.server.event.UserBookChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version counters for the data behind the list endpoints, from which they build their ETags.
+ *
+ * The catalog and tag counters are global; the user book and reading log counters are kept per
+ * user. Each is bumped by the events the DAOs publish after a write, so an ETag can be worked out,
+ * and an unchanged list answered with 304, before any query runs. A list's ETag combines every
+ * counter its rows depend on: a user's library shows book titles, so editing a book changes it too.
+ *
+ * The counters live in this process only and start again at zero on restart, so every ETag also
+ * carries the time the process started. That makes the server a single-instance deployment, like
+ * the other in-memory indexes and caches: an instance never sees writes made through another one,
+ * so it would keep answering 304 for a list that has changed. Running more than one instance needs
+ * these counters moved to shared storage first.
+ */
+@Service
+public class ResourceVersions {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong books = new AtomicLong();
+    private final AtomicLong tags = new AtomicLong();
+    private final Map<Integer, AtomicLong> userBooks = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> readingLogs = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onBookChanged(BookChangedEvent event) {
+        books.incrementAndGet();
+    }
+
+    @EventListener
+    public void onBooksImported(BooksImportedEvent event) {
+        books.incrementAndGet();
+    }
+
+    @EventListener
+    public void onTagChanged(TagChangedEvent event) {
+        tags.incrementAndGet();
+    }
+
+    @EventListener
+    public void onUserBookChanged(UserBookChangedEvent event) {
+        bump(userBooks, event.getUserBook().getUserId());
+    }
+
+    @EventListener
+    public void onReadingLogChanged(ReadingLogChangedEvent event) {
+        bump(readingLogs, event.getUserId());
+    }
+
+    /**
+     * ETag for catalog listings, which also change with tags when they include them.
+     */
+    public String getBooksTag(boolean includeTags) {
+        return includeTags ? tag("b", books.get(), tags.get()) : tag("b", books.get());
+    }
+
+    /**
+     * ETag for a user's library listing.
+     */
+    public String getUserBooksTag(int userId, boolean includeTags) {
+        long userVersion = current(userBooks, userId);
+        return includeTags
+                ? tag("ub", userId, userVersion, books.get(), tags.get())
+                : tag("ub", userId, userVersion, books.get());
+    }
+
+    /**
+     * ETag for the reading logs on one user book, as listed to the given user. The logs show the book
+     * their user book points at. Since the tag is made from the caller's own counters, one that
+     * matches a user book the caller does not own gives nothing away about it.
+     */
+    public String getReadingLogsTag(int userId, int userBookId) {
+        return tag("rl", userId, userBookId, current(readingLogs, userId), current(userBooks, userId), books.get());
+    }
+
+    private String tag(String resource, long... versions) {
+        StringBuilder tag = new StringBuilder("\"").append(resource).append('.').append(epoch);
+        for (long version : versions) {
+            tag.append('.').append(version);
+        }
+        return tag.append('"').toString();
+    }
+
+    private static void bump(Map<Integer, AtomicLong> counters, int userId) {
+        counters.computeIfAbsent(userId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static long current(Map<Integer, AtomicLong> counters, int userId) {
+        AtomicLong counter = counters.get(userId);
+        return counter != null ? counter.get() : 0;
+    }
+}
@@ -0,0 +1,739 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.dao.BookDao;
+import com.bookgoblin.server.event.BookChangedEvent;
+import com.bookgoblin.server.event.UserBookChangedEvent;
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.Suggestion;
+import com.bookgoblin.server.model.SuggestionIndexStats;
+import com.bookgoblin.server.model.UserBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Radix trie over normalized book titles and author names for typeahead. Runs of characters with
+ * no branch in between share one node, so the trie has about one node per entry and per branch
+ * point, whatever the length of the keys.
+ *
+ * Every branch point caches the ids of the {@link #MAX_SUGGESTIONS} most popular entries in its
+ * subtree; any other node has at most one child and merges its list from that child's when asked.
+ * Answering a prefix is therefore a walk down the trie plus a short merge, independent of how many
+ * entries share the prefix. Popularity is the number of user_books rows for the book (summed over
+ * all of an author's books for author entries).
+ *
+ * Built from the database once the application is ready, rebuilt after bulk imports by
+ * {@link CatalogIndexRebuilder}, and otherwise maintained from {@link BookChangedEvent}s and
+ * {@link UserBookChangedEvent}s; each change only recomputes the cached lists along the affected
+ * key's path. Reader counts change by one per event, so a rebuild cannot replay the user-book
+ * changes it overlapped: it cannot tell which of them its own query already counted. It re-reads
+ * the counts of the books they touched instead.
+ */
+@Service
+public class SuggestionIndex {
+
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SuggestionIndex.class);
+
+    // Nobody types further than this into a search box; capping keys bounds trie depth and memory
+    private static final int MAX_KEY_LENGTH = 64;
+
+    // Re-reads of reader counts after a rebuild before giving up on books that keep changing
+    private static final int MAX_RECOUNT_ROUNDS = 5;
+
+    private final BookDao bookDao;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Trie trie = new Trie();
+    private volatile boolean ready;
+
+    // Book changes seen while a rebuild is streaming the catalog, replayed onto the new trie afterwards
+    private List<BookChangedEvent> pendingChanges;
+    // Books whose reader count changed while a rebuild was running, recounted once it is swapped in
+    private Set<Integer> pendingRecounts;
+
+    public SuggestionIndex(BookDao bookDao) {
+        this.bookDao = bookDao;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+            pendingRecounts = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Trie newTrie = new Trie();
+        try {
+            bookDao.streamBookPopularity(newTrie::addBookWithoutRefresh);
+        } catch (DaoException e) {
+            LOG.warn("Unable to build suggestion index: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                pendingChanges = null;
+                pendingRecounts = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+        newTrie.refreshAll();
+
+        lock.writeLock().lock();
+        try {
+            trie = newTrie;
+            for (BookChangedEvent change : pendingChanges) {
+                applyUnlocked(change);
+            }
+            pendingChanges = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        recountPending();
+        LOG.info("Suggestion index built with {} entries", newTrie.liveEntries);
+    }
+
+    /**
+     * Replaces the reader counts of books changed during the rebuild with fresh ones. A book that
+     * changes again while its count is being read keeps the one-by-one updates and is read again
+     * in the next round.
+     */
+    private void recountPending() {
+        for (int round = 0; ; round++) {
+            List<Integer> bookIds;
+            lock.writeLock().lock();
+            try {
+                bookIds = new ArrayList<>(pendingRecounts);
+                if (bookIds.isEmpty() || round == MAX_RECOUNT_ROUNDS) {
+                    pendingRecounts = null;
+                    if (!bookIds.isEmpty()) {
+                        LOG.warn("Reader counts of {} books kept changing during the suggestion index rebuild", bookIds.size());
+                    }
+                    return;
+                }
+                pendingRecounts = new HashSet<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Map<Integer, Integer> counts;
+            try {
+                counts = bookDao.getReaderCounts(bookIds);
+            } catch (DaoException e) {
+                LOG.warn("Unable to recount readers after the suggestion index rebuild: {}", e.getMessage());
+                lock.writeLock().lock();
+                try {
+                    pendingRecounts = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                return;
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (int bookId : bookIds) {
+                    if (!pendingRecounts.contains(bookId)) {
+                        trie.setReaders(bookId, counts.getOrDefault(bookId, 0));
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @EventListener
+    public void onBookChanged(BookChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            applyUnlocked(event);
+            if (pendingChanges != null) {
+                pendingChanges.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onUserBookChanged(UserBookChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            applyUnlocked(event);
+            if (pendingRecounts != null) {
+                pendingRecounts.add(event.getUserBook().getBookId());
+                pendingRecounts.add(event.getPreviousBookId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} completions for the prefix, most popular first.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        List<Suggestion> suggestions = new ArrayList<>();
+        String key = toKey(prefix);
+        if (key.isEmpty() || !ready) {
+            return suggestions;
+        }
+
+        lock.readLock().lock();
+        try {
+            Node node = trie.find(key);
+            if (node == null) {
+                return suggestions;
+            }
+
+            // Several books can share a title; only offer each completion once
+            Set<String> seen = new HashSet<>();
+            for (int id : trie.topOf(node)) {
+                if (suggestions.size() >= limit) {
+                    break;
+                }
+                boolean isTitle = trie.entryKind[id] == Trie.TITLE;
+                if (seen.add(trie.entryKind[id] + trie.keyOf(id))) {
+                    suggestions.add(new Suggestion(trie.entryText[id],
+                            isTitle ? Suggestion.TYPE_TITLE : Suggestion.TYPE_AUTHOR,
+                            isTitle ? trie.entryBookId[id] : null,
+                            trie.entryScore[id]));
+                }
+            }
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public SuggestionIndexStats getStats() {
+        lock.readLock().lock();
+        try {
+            long[] totals = new long[2];
+            trie.measure(trie.root, totals);
+            return new SuggestionIndexStats(ready, trie.liveEntries, (int) totals[0], totals[1] + trie.entryBytes());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void applyUnlocked(BookChangedEvent event) {
+        int readers = trie.removeBook(event.getBookId());
+        if (event.getType() != BookChangedEvent.Type.DELETED && event.getBook() != null) {
+            trie.addBook(event.getBook(), readers);
+        }
+    }
+
+    private void applyUnlocked(UserBookChangedEvent event) {
+        UserBook userBook = event.getUserBook();
+        switch (event.getType()) {
+            case CREATED -> trie.adjustReaders(userBook.getBookId(), 1);
+            case DELETED -> trie.adjustReaders(userBook.getBookId(), -1);
+            case UPDATED -> {
+                if (event.getPreviousBookId() != userBook.getBookId()) {
+                    trie.adjustReaders(event.getPreviousBookId(), -1);
+                    trie.adjustReaders(userBook.getBookId(), 1);
+                }
+            }
+        }
+    }
+
+    private static String toKey(String text) {
+        String key = TextNormalizer.normalize(text);
+        return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+    }
+
+    /**
+     * Ranks entries by popularity, breaking ties by entry id. The (score, id) pair is packed into
+     * a long so candidate lists can be ordered with a primitive sort.
+     */
+    private static long rank(int score, int id) {
+        return ((long) Math.max(0, score) << 32) | (Integer.MAX_VALUE - id);
+    }
+
+    /**
+     * A trie node. The edge from its parent is labelled with one or more characters: a node with
+     * a single child and no entries of its own is merged into that child, so there is one node per
+     * distinct key or branch point rather than one per character.
+     */
+    private static final class Node {
+        private static final char[] NO_LABEL = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        char[] label = NO_LABEL;
+        // Ordered by the first character of their labels, which are all different
+        Node[] children = NO_CHILDREN;
+        int[] terminals = Trie.NO_IDS;
+        // Cached only at branch points; elsewhere it is merged from at most one child when needed
+        int[] top;
+
+        Node(char[] label) {
+            this.label = label;
+        }
+
+        Node child(char c) {
+            int index = indexOf(c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        void addChild(Node child) {
+            int insertAt = -indexOf(child.label[0]) - 1;
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newChildren[insertAt] = child;
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            children = newChildren;
+        }
+
+        void replaceChild(Node child) {
+            children[indexOf(child.label[0])] = child;
+        }
+
+        void removeChild(Node child) {
+            int index = indexOf(child.label[0]);
+            if (children.length == 1) {
+                children = NO_CHILDREN;
+                return;
+            }
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            children = newChildren;
+        }
+
+        /**
+         * Absorbs the only child, appending its label to this node's.
+         */
+        void mergeChild() {
+            Node child = children[0];
+            char[] merged = Arrays.copyOf(label, label.length + child.label.length);
+            System.arraycopy(child.label, 0, merged, label.length, child.label.length);
+            label = merged;
+            children = child.children;
+            terminals = child.terminals;
+            top = child.top;
+        }
+
+        /**
+         * Number of leading characters of the label that match the key from position {@code from}.
+         */
+        int matchLength(String key, int from) {
+            int n = Math.min(label.length, key.length() - from);
+            int i = 0;
+            while (i < n && label[i] == key.charAt(from + i)) {
+                i++;
+            }
+            return i;
+        }
+
+        private int indexOf(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midChar = children[mid].label[0];
+                if (midChar < c) {
+                    low = mid + 1;
+                } else if (midChar > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    /**
+     * The trie plus its entry table. Entries live in parallel arrays indexed by entry id, and
+     * per-book bookkeeping lives in arrays indexed by book_id. An entry's key is not stored; it is
+     * normalized again from the entry text when the entry is removed or rescored.
+     */
+    private static final class Trie {
+        static final int[] NO_IDS = new int[0];
+        static final byte TITLE = 0;
+        static final byte AUTHOR = 1;
+
+        final Node root = new Node(Node.NO_LABEL);
+
+        String[] entryText = new String[1024];
+        byte[] entryKind = new byte[1024];
+        int[] entryBookId = new int[1024];
+        int[] entryScore = new int[1024];
+        // Number of books sharing an author entry
+        int[] entryRefs = new int[1024];
+        int entryHighWater;
+        int liveEntries;
+        int[] freeIds = new int[16];
+        int freeCount;
+
+        // Indexed by book_id; entry ids are stored +1 so that 0 means "none"
+        int[] titleEntryByBook = new int[1024];
+        int[] authorEntryByBook = new int[1024];
+        int[] readersByBook = new int[1024];
+
+        final Map<String, Integer> authorEntries = new HashMap<>();
+
+        void addBookWithoutRefresh(Book book, int readers) {
+            addBook(book, readers, false);
+        }
+
+        void addBook(Book book, int readers) {
+            addBook(book, readers, true);
+        }
+
+        private void addBook(Book book, int readers, boolean refresh) {
+            int bookId = book.getBookId();
+            ensureBookCapacity(bookId);
+            readersByBook[bookId] = readers;
+
+            String titleKey = toKey(book.getTitle());
+            if (!titleKey.isEmpty()) {
+                int id = newEntry(book.getTitle(), TITLE, bookId, readers);
+                insertTerminal(titleKey, id);
+                titleEntryByBook[bookId] = id + 1;
+                if (refresh) {
+                    refreshPath(titleKey);
+                }
+            }
+
+            String authorKey = toKey(book.getAuthor());
+            if (!authorKey.isEmpty()) {
+                Integer existing = authorEntries.get(authorKey);
+                int id;
+                if (existing == null) {
+                    id = newEntry(book.getAuthor(), AUTHOR, 0, readers);
+                    insertTerminal(authorKey, id);
+                    authorEntries.put(authorKey, id);
+                } else {
+                    id = existing;
+                    entryScore[id] += readers;
+                }
+                entryRefs[id]++;
+                authorEntryByBook[bookId] = id + 1;
+                if (refresh) {
+                    refreshPath(authorKey);
+                }
+            }
+        }
+
+        /**
+         * Removes a book's entries and returns its reader count so an update can carry it over.
+         */
+        int removeBook(int bookId) {
+            if (bookId >= readersByBook.length) {
+                return 0;
+            }
+            int readers = readersByBook[bookId];
+            readersByBook[bookId] = 0;
+
+            int titleId = titleEntryByBook[bookId] - 1;
+            if (titleId >= 0) {
+                titleEntryByBook[bookId] = 0;
+                String key = keyOf(titleId);
+                removeTerminal(key, titleId);
+                freeEntry(titleId);
+                refreshPath(key);
+            }
+
+            int authorId = authorEntryByBook[bookId] - 1;
+            if (authorId >= 0) {
+                authorEntryByBook[bookId] = 0;
+                String key = keyOf(authorId);
+                entryScore[authorId] -= readers;
+                if (--entryRefs[authorId] == 0) {
+                    authorEntries.remove(key);
+                    removeTerminal(key, authorId);
+                    freeEntry(authorId);
+                }
+                refreshPath(key);
+            }
+            return readers;
+        }
+
+        void setReaders(int bookId, int readers) {
+            if (bookId < readersByBook.length) {
+                adjustReaders(bookId, readers - readersByBook[bookId]);
+            }
+        }
+
+        void adjustReaders(int bookId, int delta) {
+            if (bookId >= readersByBook.length) {
+                return;
+            }
+            readersByBook[bookId] = Math.max(0, readersByBook[bookId] + delta);
+            int titleId = titleEntryByBook[bookId] - 1;
+            if (titleId >= 0) {
+                entryScore[titleId] = readersByBook[bookId];
+                refreshPath(keyOf(titleId));
+            }
+            int authorId = authorEntryByBook[bookId] - 1;
+            if (authorId >= 0) {
+                entryScore[authorId] = Math.max(0, entryScore[authorId] + delta);
+                refreshPath(keyOf(authorId));
+            }
+        }
+
+        String keyOf(int id) {
+            return toKey(entryText[id]);
+        }
+
+        /**
+         * The node whose subtree holds exactly the keys starting with the prefix, or null. The
+         * prefix may end part way along that node's label.
+         */
+        Node find(String prefix) {
+            Node node = root;
+            int i = 0;
+            while (i < prefix.length()) {
+                Node child = node.child(prefix.charAt(i));
+                if (child == null) {
+                    return null;
+                }
+                int matched = child.matchLength(prefix, i);
+                if (i + matched == prefix.length()) {
+                    return child;
+                }
+                if (matched < child.label.length) {
+                    return null;
+                }
+                node = child;
+                i += matched;
+            }
+            return node;
+        }
+
+        /**
+         * The most popular entries under the node, from its cache at a branch point or merged from
+         * its entries and its only child otherwise. Below a node without a cache there is a chain of
+         * at most one node per key character before the next branch point or leaf.
+         */
+        int[] topOf(Node node) {
+            return node.top != null ? node.top : computeTop(node);
+        }
+
+        private int newEntry(String text, byte kind, int bookId, int score) {
+            int id;
+            if (freeCount > 0) {
+                id = freeIds[--freeCount];
+            } else {
+                id = entryHighWater++;
+                if (id == entryText.length) {
+                    int capacity = id * 2;
+                    entryText = Arrays.copyOf(entryText, capacity);
+                    entryKind = Arrays.copyOf(entryKind, capacity);
+                    entryBookId = Arrays.copyOf(entryBookId, capacity);
+                    entryScore = Arrays.copyOf(entryScore, capacity);
+                    entryRefs = Arrays.copyOf(entryRefs, capacity);
+                }
+            }
+            entryText[id] = text;
+            entryKind[id] = kind;
+            entryBookId[id] = bookId;
+            entryScore[id] = score;
+            entryRefs[id] = 0;
+            liveEntries++;
+            return id;
+        }
+
+        private void freeEntry(int id) {
+            entryText[id] = null;
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            }
+            freeIds[freeCount++] = id;
+            liveEntries--;
+        }
+
+        /**
+         * Adds the entry under its key, splitting an edge where the key leaves it part way along.
+         */
+        private void insertTerminal(String key, int id) {
+            Node node = root;
+            int i = 0;
+            while (i < key.length()) {
+                Node child = node.child(key.charAt(i));
+                if (child == null) {
+                    Node leaf = new Node(key.substring(i).toCharArray());
+                    leaf.terminals = new int[] {id};
+                    node.addChild(leaf);
+                    return;
+                }
+                int matched = child.matchLength(key, i);
+                if (matched < child.label.length) {
+                    Node split = new Node(Arrays.copyOf(child.label, matched));
+                    node.replaceChild(split);
+                    child.label = Arrays.copyOfRange(child.label, matched, child.label.length);
+                    split.children = new Node[] {child};
+                    child = split;
+                }
+                node = child;
+                i += matched;
+            }
+            int[] terminals = Arrays.copyOf(node.terminals, node.terminals.length + 1);
+            terminals[terminals.length - 1] = id;
+            node.terminals = terminals;
+        }
+
+        private void removeTerminal(String key, int id) {
+            Node node = root;
+            int i = 0;
+            while (i < key.length() && node != null) {
+                Node child = node.child(key.charAt(i));
+                if (child == null || child.matchLength(key, i) < child.label.length) {
+                    return;
+                }
+                node = child;
+                i += child.label.length;
+            }
+            int[] terminals = node.terminals;
+            for (int t = 0; t < terminals.length; t++) {
+                if (terminals[t] == id) {
+                    int[] remaining = new int[terminals.length - 1];
+                    System.arraycopy(terminals, 0, remaining, 0, t);
+                    System.arraycopy(terminals, t + 1, remaining, t, terminals.length - t - 1);
+                    node.terminals = remaining.length == 0 ? NO_IDS : remaining;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Recomputes the cached top lists along the key's path, deepest node first. Nodes that no
+         * longer lead anywhere are pruned, and a node left with one child and no entries is merged
+         * into it.
+         */
+        private void refreshPath(String key) {
+            Node[] path = new Node[key.length() + 1];
+            path[0] = root;
+            int depth = 0;
+            int i = 0;
+            while (i < key.length()) {
+                Node next = path[depth].child(key.charAt(i));
+                if (next == null || next.matchLength(key, i) < next.label.length) {
+                    break;
+                }
+                path[++depth] = next;
+                i += next.label.length;
+            }
+            for (int d = depth; d >= 0; d--) {
+                Node node = path[d];
+                if (d > 0 && node.terminals.length == 0) {
+                    if (node.children.length == 0) {
+                        path[d - 1].removeChild(node);
+                        continue;
+                    }
+                    if (node.children.length == 1) {
+                        node.mergeChild();
+                    }
+                }
+                node.top = node.children.length > 1 ? computeTop(node) : null;
+            }
+        }
+
+        void refreshAll() {
+            refreshSubtree(root);
+        }
+
+        private void refreshSubtree(Node node) {
+            for (Node child : node.children) {
+                refreshSubtree(child);
+            }
+            node.top = node.children.length > 1 ? computeTop(node) : null;
+        }
+
+        private int[] computeTop(Node node) {
+            int candidates = node.terminals.length;
+            int[][] childTops = new int[node.children.length][];
+            for (int c = 0; c < childTops.length; c++) {
+                childTops[c] = topOf(node.children[c]);
+                candidates += childTops[c].length;
+            }
+            if (candidates == 0) {
+                return NO_IDS;
+            }
+            long[] ranked = new long[candidates];
+            int n = 0;
+            for (int id : node.terminals) {
+                ranked[n++] = rank(entryScore[id], id);
+            }
+            for (int[] childTop : childTops) {
+                for (int id : childTop) {
+                    ranked[n++] = rank(entryScore[id], id);
+                }
+            }
+            Arrays.sort(ranked);
+            int[] top = new int[Math.min(MAX_SUGGESTIONS, ranked.length)];
+            for (int i = 0; i < top.length; i++) {
+                top[i] = Integer.MAX_VALUE - (int) ranked[ranked.length - 1 - i];
+            }
+            return top;
+        }
+
+        private void ensureBookCapacity(int bookId) {
+            if (bookId >= readersByBook.length) {
+                int capacity = Math.max(bookId + 1, readersByBook.length * 2);
+                titleEntryByBook = Arrays.copyOf(titleEntryByBook, capacity);
+                authorEntryByBook = Arrays.copyOf(authorEntryByBook, capacity);
+                readersByBook = Arrays.copyOf(readersByBook, capacity);
+            }
+        }
+
+        /**
+         * Accumulates node count and approximate node bytes (object headers, references and
+         * 8-byte aligned array payloads on a compressed-oops JVM) for the subtree. The shared empty
+         * arrays are not counted.
+         */
+        void measure(Node node, long[] totals) {
+            totals[0]++;
+            totals[1] += 32 + arrayBytes(2L * node.label.length) + arrayBytes(4L * node.children.length)
+                    + arrayBytes(4L * node.terminals.length) + (node.top != null ? arrayBytes(4L * node.top.length) : 0);
+            for (Node child : node.children) {
+                measure(child, totals);
+            }
+        }
+
+        long entryBytes() {
+            long bytes = (long) entryText.length * (4 + 1 + 4 + 4 + 4)
+                    + 3L * 4 * readersByBook.length
+                    + 4L * freeIds.length;
+            for (Map.Entry<String, Integer> author : authorEntries.entrySet()) {
+                // Map node, boxed id and the key string with its compact Latin-1 payload
+                bytes += 32 + 16 + 24 + arrayBytes(author.getKey().length());
+            }
+            for (int id = 0; id < entryHighWater; id++) {
+                if (entryText[id] != null) {
+                    bytes += 24 + arrayBytes(entryText[id].length());
+                }
+            }
+            return bytes;
+        }
+
+        private static long arrayBytes(long payload) {
+            return payload == 0 ? 0 : (16 + payload + 7) & ~7L;
+        }
+    }
+}
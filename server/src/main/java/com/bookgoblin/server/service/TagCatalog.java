@@ -0,0 +1,169 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.dao.TagDao;
+import com.bookgoblin.server.event.TagChangedEvent;
+import com.bookgoblin.server.exception.DaoException;
+import com.bookgoblin.server.model.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The full tag list, with how many books carry each tag, held as an immutable snapshot.
+ *
+ * Tags only change through the admin endpoints, so readers share one snapshot without locking or
+ * copying. Every change builds a new snapshot with a higher version and swaps it in whole: tag
+ * create, rename and delete are applied from the {@link TagChangedEvent} itself, and adding or
+ * removing a tag on a book recounts that one tag. Deleting a book removes it from each of its tags,
+ * which the book DAO reports as one such event per tag. If a reload or recount fails the snapshot
+ * is dropped and the next read loads it again.
+ *
+ * Tags are ordered by name, case-insensitively, in Java rather than by the database's collation,
+ * which differs between installations.
+ */
+@Service
+public class TagCatalog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TagCatalog.class);
+
+    // Sorted here rather than by the database so that renamed and new tags land where a reload would put them
+    private static final Comparator<Tag> BY_NAME =
+            Comparator.comparing(Tag::getName, String.CASE_INSENSITIVE_ORDER).thenComparing(Tag::getName);
+
+    private final TagDao tagDao;
+
+    private volatile Snapshot snapshot;
+    // Starts from the clock so versions keep increasing across restarts; only written under the lock
+    private long version = System.currentTimeMillis();
+
+    public TagCatalog(TagDao tagDao) {
+        this.tagDao = tagDao;
+    }
+
+    /**
+     * The current snapshot, loading it first if there is none.
+     *
+     * @throws DaoException if the snapshot has to be loaded and the database cannot be reached
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : load();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            Snapshot loaded = load();
+            LOG.info("Tag catalog loaded with {} tags", loaded.getTags().size());
+        } catch (DaoException e) {
+            LOG.warn("Unable to load tag catalog, it will be loaded on first use: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public synchronized void onTagChanged(TagChangedEvent event) {
+        if (snapshot == null) {
+            // Nothing to update; the next read loads the catalog with this change in it
+            return;
+        }
+        try {
+            switch (event.getType()) {
+                case CREATED -> {
+                    // Already in the snapshot if it was loaded after the insert; keep what was counted
+                    Tag existing = snapshot.getTag(event.getTagId());
+                    replace(event.getTagId(), copyOf(event.getTag(), existing != null ? existing.getBookCount() : 0));
+                }
+                case UPDATED -> {
+                    Tag existing = snapshot.getTag(event.getTagId());
+                    replace(event.getTagId(), copyOf(event.getTag(),
+                            existing != null ? existing.getBookCount() : tagDao.countBooksWithTag(event.getTagId())));
+                }
+                case DELETED -> replace(event.getTagId(), null);
+                case ADDED_TO_BOOK, REMOVED_FROM_BOOK -> {
+                    Tag existing = snapshot.getTag(event.getTagId());
+                    if (existing != null) {
+                        // Recounted rather than incremented so that replaying a change cannot skew it
+                        replace(event.getTagId(), copyOf(existing, tagDao.countBooksWithTag(event.getTagId())));
+                    }
+                }
+            }
+        } catch (DaoException e) {
+            LOG.warn("Unable to update tag catalog, it will be reloaded on next use: {}", e.getMessage());
+            snapshot = null;
+        }
+    }
+
+    private synchronized Snapshot load() {
+        List<Tag> tags = tagDao.getTagsWithBookCounts();
+        tags.sort(BY_NAME);
+        snapshot = new Snapshot(++version, tags);
+        return snapshot;
+    }
+
+    /**
+     * Swaps in a copy of the current snapshot with one tag replaced, added or, when {@code tag} is
+     * null, removed. Callers hold the lock.
+     */
+    private void replace(int tagId, Tag tag) {
+        List<Tag> tags = new ArrayList<>(snapshot.getTags().size() + 1);
+        for (Tag existing : snapshot.getTags()) {
+            if (existing.getTagId() != tagId) {
+                tags.add(existing);
+            }
+        }
+        if (tag != null) {
+            tags.add(tag);
+            tags.sort(BY_NAME);
+        }
+        snapshot = new Snapshot(++version, tags);
+    }
+
+    private static Tag copyOf(Tag tag, int bookCount) {
+        Tag copy = new Tag(tag.getName());
+        copy.setTagId(tag.getTagId());
+        copy.setBookCount(bookCount);
+        return copy;
+    }
+
+    /**
+     * One version of the catalog. Neither the list nor the tags in it may be modified.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final List<Tag> tags;
+        private final Map<Integer, Tag> tagsById;
+
+        Snapshot(long version, List<Tag> tags) {
+            this.version = version;
+            this.tags = Collections.unmodifiableList(tags);
+            this.tagsById = new HashMap<>(tags.size() * 2);
+            for (Tag tag : tags) {
+                tagsById.put(tag.getTagId(), tag);
+            }
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Every tag with its book count, ordered by name.
+         */
+        public List<Tag> getTags() {
+            return tags;
+        }
+
+        public Tag getTag(int tagId) {
+            return tagsById.get(tagId);
+        }
+    }
+}
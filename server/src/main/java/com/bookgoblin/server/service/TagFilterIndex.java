@@ -0,0 +1,269 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.dao.TagDao;
+import com.bookgoblin.server.event.BookChangedEvent;
+import com.bookgoblin.server.event.TagChangedEvent;
+import com.bookgoblin.server.exception.DaoException;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of which books carry which tags, for combining tags with AND, OR and NOT.
+ *
+ * Each tag maps to a compressed bitmap of book ids, and one more bitmap holds every book in the
+ * catalog so that a filter made only of exclusions has something to exclude from. A filter is a
+ * handful of bitmap operations and the facet counts are one intersection count per tag, none of
+ * which touch the database.
+ *
+ * The index is built from book_tags once the application is ready and is then kept current by
+ * {@link TagChangedEvent}s and {@link BookChangedEvent}s. Until the first build completes,
+ * {@link #isReady()} returns false.
+ */
+@Service
+public class TagFilterIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TagFilterIndex.class);
+
+    private final TagDao tagDao;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private RoaringBitmap allBooks = new RoaringBitmap();
+    private Map<Integer, RoaringBitmap> booksByTag = new HashMap<>();
+    private volatile boolean ready;
+
+    // Changes seen while a rebuild is streaming book_tags, replayed onto the new index afterwards
+    private List<Runnable> pendingChanges;
+
+    public TagFilterIndex(TagDao tagDao) {
+        this.tagDao = tagDao;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Rebuilds the whole index from the database. Filters keep using the previous index until the
+     * new one is swapped in. Runs at startup and, through {@link CatalogIndexRebuilder}, after every
+     * bulk import, one rebuild at a time.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        RoaringBitmap newAllBooks = new RoaringBitmap();
+        Map<Integer, RoaringBitmap> newBooksByTag = new HashMap<>();
+        try {
+            // Rows arrive in book_id order, so every add appends to the end of its bitmap
+            tagDao.streamBookTags((bookId, tagId) -> {
+                newAllBooks.add(bookId);
+                if (tagId != 0) {
+                    newBooksByTag.computeIfAbsent(tagId, id -> new RoaringBitmap()).add(bookId);
+                }
+            });
+        } catch (DaoException e) {
+            LOG.warn("Unable to build tag filter index: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+        newAllBooks.runOptimize();
+        for (RoaringBitmap books : newBooksByTag.values()) {
+            books.runOptimize();
+        }
+
+        lock.writeLock().lock();
+        try {
+            allBooks = newAllBooks;
+            booksByTag = newBooksByTag;
+            for (Runnable change : pendingChanges) {
+                change.run();
+            }
+            pendingChanges = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Tag filter index built with {} books and {} tags, {} bytes",
+                newAllBooks.getCardinality(), newBooksByTag.size(), sizeInBytes(newAllBooks, newBooksByTag));
+    }
+
+    @EventListener
+    public void onTagChanged(TagChangedEvent event) {
+        apply(() -> {
+            switch (event.getType()) {
+                case ADDED_TO_BOOK -> booksByTag.computeIfAbsent(event.getTagId(), id -> new RoaringBitmap())
+                        .add(event.getBookId());
+                case REMOVED_FROM_BOOK -> {
+                    RoaringBitmap books = booksByTag.get(event.getTagId());
+                    if (books != null) {
+                        books.remove(event.getBookId());
+                        if (books.isEmpty()) {
+                            booksByTag.remove(event.getTagId());
+                        }
+                    }
+                }
+                case DELETED -> booksByTag.remove(event.getTagId());
+                default -> {
+                    // Renaming or creating a tag does not change which books carry it
+                }
+            }
+        });
+    }
+
+    @EventListener
+    public void onBookChanged(BookChangedEvent event) {
+        apply(() -> {
+            switch (event.getType()) {
+                case CREATED -> allBooks.add(event.getBookId());
+                case DELETED -> {
+                    // book_tags rows go with the book
+                    allBooks.remove(event.getBookId());
+                    Iterator<RoaringBitmap> tags = booksByTag.values().iterator();
+                    while (tags.hasNext()) {
+                        RoaringBitmap books = tags.next();
+                        books.remove(event.getBookId());
+                        if (books.isEmpty()) {
+                            tags.remove();
+                        }
+                    }
+                }
+                default -> {
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds the books carrying every tag in {@code all}, at least one tag in {@code any} and none
+     * of the tags in {@code none}. Empty collections place no restriction, so with all three empty
+     * every book matches.
+     *
+     * @return the total number of matches, up to {@code limit} of their ids starting at
+     *         {@code offset} in book_id order, and the facet counts over all matches
+     */
+    public Match filter(Collection<Integer> all, Collection<Integer> any, Collection<Integer> none,
+                        int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matches = null;
+            for (Integer tagId : all) {
+                RoaringBitmap books = booksOf(tagId);
+                matches = matches == null ? books.clone() : RoaringBitmap.and(matches, books);
+            }
+            if (!any.isEmpty()) {
+                RoaringBitmap union = RoaringBitmap.or(any.stream().map(this::booksOf).iterator());
+                matches = matches == null ? union : RoaringBitmap.and(matches, union);
+            }
+            if (matches == null) {
+                matches = allBooks.clone();
+            }
+            if (!none.isEmpty()) {
+                matches.andNot(RoaringBitmap.or(none.stream().map(this::booksOf).iterator()));
+            }
+
+            int total = matches.getCardinality();
+            List<Integer> page = new ArrayList<>(Math.min(limit, Math.max(0, total - offset)));
+            if (offset < total) {
+                PeekableIntIterator ids = matches.getIntIterator();
+                if (offset > 0) {
+                    ids.advanceIfNeeded(matches.select(offset));
+                }
+                while (ids.hasNext() && page.size() < limit) {
+                    page.add(ids.next());
+                }
+            }
+
+            List<Map.Entry<Integer, Integer>> counts = new ArrayList<>();
+            for (Map.Entry<Integer, RoaringBitmap> tag : booksByTag.entrySet()) {
+                int count = RoaringBitmap.andCardinality(matches, tag.getValue());
+                if (count > 0) {
+                    counts.add(Map.entry(tag.getKey(), count));
+                }
+            }
+            counts.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+            Map<Integer, Integer> facets = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Integer> count : counts) {
+                facets.put(count.getKey(), count.getValue());
+            }
+
+            return new Match(total, page, facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap booksOf(int tagId) {
+        RoaringBitmap books = booksByTag.get(tagId);
+        return books != null ? books : new RoaringBitmap();
+    }
+
+    private void apply(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static long sizeInBytes(RoaringBitmap allBooks, Map<Integer, RoaringBitmap> booksByTag) {
+        long bytes = allBooks.getLongSizeInBytes();
+        for (RoaringBitmap books : booksByTag.values()) {
+            bytes += books.getLongSizeInBytes();
+        }
+        return bytes;
+    }
+
+    public static final class Match {
+        private final int total;
+        private final List<Integer> bookIds;
+        private final Map<Integer, Integer> facets;
+
+        Match(int total, List<Integer> bookIds, Map<Integer, Integer> facets) {
+            this.total = total;
+            this.bookIds = bookIds;
+            this.facets = facets;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public List<Integer> getBookIds() {
+            return bookIds;
+        }
+
+        public Map<Integer, Integer> getFacets() {
+            return facets;
+        }
+    }
+}
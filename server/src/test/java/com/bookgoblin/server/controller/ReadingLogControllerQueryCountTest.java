@@ -0,0 +1,231 @@
+package com.bookgoblin.server.controller;
+
+import com.bookgoblin.server.security.AuthenticatedUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Every reading log endpoint checks ownership in the statement that does the work, so each request
+ * runs exactly one SQL statement whether it succeeds, is forbidden or finds nothing.
+ *
+ * Runs against the PostgreSQL database configured in application.properties (override the
+ * connection with -Dspring.datasource.url=... and friends) and is skipped when it cannot be
+ * reached. Each test runs in a transaction that is rolled back, so nothing is left behind.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+@EnabledIf("databaseAvailable")
+class ReadingLogControllerQueryCountTest {
+
+    private static final int MISSING_ID = Integer.MAX_VALUE;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StatementCounter statements;
+
+    private AuthenticatedUser owner;
+    private int ownerBookId;
+    private int otherBookId;
+    private int ownerLogId;
+    private int otherLogId;
+
+    @BeforeEach
+    void createFixtures() {
+        int ownerId = createUser("query-count-owner");
+        int otherId = createUser("query-count-other");
+        int bookId = jdbcTemplate.queryForObject(
+                "INSERT INTO books (title, author) VALUES ('Query Count', 'Tester') RETURNING book_id", int.class);
+        ownerBookId = createUserBook(ownerId, bookId);
+        otherBookId = createUserBook(otherId, bookId);
+        ownerLogId = createLog(ownerBookId);
+        otherLogId = createLog(otherBookId);
+        owner = new AuthenticatedUser(ownerId, "query-count-owner", "",
+                List.of(new SimpleGrantedAuthority("ROLE_USER")));
+    }
+
+    @Test
+    void getByIdRunsOneStatement() throws Exception {
+        assertStatements(get("/reading-logs/" + ownerLogId), 200);
+        assertStatements(get("/reading-logs/" + otherLogId), 403);
+        assertStatements(get("/reading-logs/" + MISSING_ID), 404);
+    }
+
+    @Test
+    void getByUserBookRunsOneStatement() throws Exception {
+        assertStatements(get("/reading-logs/user-book/" + ownerBookId), 200);
+        assertStatements(get("/reading-logs/user-book/" + otherBookId), 403);
+        assertStatements(get("/reading-logs/user-book/" + MISSING_ID), 404);
+    }
+
+    @Test
+    void createRunsOneStatement() throws Exception {
+        assertStatements(withLog(post("/reading-logs"), ownerBookId), 201);
+        assertStatements(withLog(post("/reading-logs"), otherBookId), 403);
+        assertStatements(withLog(post("/reading-logs"), MISSING_ID), 404);
+    }
+
+    @Test
+    void updateRunsOneStatement() throws Exception {
+        assertStatements(withLog(put("/reading-logs/" + ownerLogId), ownerBookId), 200);
+        assertStatements(withLog(put("/reading-logs/" + otherLogId), otherBookId), 403);
+        assertStatements(withLog(put("/reading-logs/" + MISSING_ID), ownerBookId), 404);
+    }
+
+    @Test
+    void deleteRunsOneStatement() throws Exception {
+        assertStatements(delete("/reading-logs/" + ownerLogId), 204);
+        assertStatements(delete("/reading-logs/" + otherLogId), 403);
+        assertStatements(delete("/reading-logs/" + MISSING_ID), 404);
+    }
+
+    private void assertStatements(MockHttpServletRequestBuilder request, int expectedStatus) throws Exception {
+        RequestBuilder authenticated = request.with(authentication(
+                new UsernamePasswordAuthenticationToken(owner, null, owner.getAuthorities())));
+        statements.reset();
+        mockMvc.perform(authenticated).andExpect(status().is(expectedStatus));
+        assertThat(statements.count())
+                .as("statements for %s %s answered %d", request.buildRequest(null).getMethod(),
+                        request.buildRequest(null).getRequestURI(), expectedStatus)
+                .isEqualTo(1);
+    }
+
+    private static MockHttpServletRequestBuilder withLog(MockHttpServletRequestBuilder request, int userBookId) {
+        return request.contentType(MediaType.APPLICATION_JSON)
+                .content("{\"userBookId\":" + userBookId + ",\"startDate\":\"2026-01-02\",\"rating\":4}");
+    }
+
+    private int createUser(String username) {
+        return jdbcTemplate.queryForObject("INSERT INTO users (username, password_hash, role) " +
+                "VALUES (?, '', 'ROLE_USER') RETURNING user_id", int.class, username);
+    }
+
+    private int createUserBook(int userId, int bookId) {
+        return jdbcTemplate.queryForObject("INSERT INTO user_books (user_id, book_id, current_status) " +
+                "VALUES (?, ?, 'reading') RETURNING user_book_id", int.class, userId, bookId);
+    }
+
+    private int createLog(int userBookId) {
+        return jdbcTemplate.queryForObject("INSERT INTO reading_logs (user_book_id, start_date) " +
+                "VALUES (?, DATE '2026-01-01') RETURNING log_id", int.class, userBookId);
+    }
+
+    static boolean databaseAvailable() throws IOException {
+        Properties properties = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        properties.putAll(System.getProperties());
+        DriverManager.setLoginTimeout(2);
+        try (Connection ignored = DriverManager.getConnection(properties.getProperty("spring.datasource.url"),
+                properties.getProperty("spring.datasource.username"),
+                properties.getProperty("spring.datasource.password"))) {
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Counts the statements prepared on connections from the application's DataSource.
+     */
+    static final class StatementCounter {
+        private final AtomicInteger count = new AtomicInteger();
+
+        void reset() {
+            count.set(0);
+        }
+
+        int count() {
+            return count.get();
+        }
+
+        DataSource wrap(DataSource dataSource) {
+            return new DelegatingDataSource(dataSource) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    return countStatements(super.getConnection());
+                }
+
+                @Override
+                public Connection getConnection(String username, String password) throws SQLException {
+                    return countStatements(super.getConnection(username, password));
+                }
+            };
+        }
+
+        private Connection countStatements(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "prepareStatement", "prepareCall", "createStatement" -> count.incrementAndGet();
+                            default -> {
+                            }
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+
+    @TestConfiguration
+    static class CountingDataSourceConfig {
+
+        @Bean
+        static StatementCounter statementCounter() {
+            return new StatementCounter();
+        }
+
+        @Bean
+        static BeanPostProcessor countingDataSourcePostProcessor(StatementCounter statementCounter) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? statementCounter.wrap(dataSource) : bean;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.bookgoblin.server.controller;
+
+import com.bookgoblin.server.config.AppConfig;
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.UserBook;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.client.RestTemplateAutoConfiguration;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Serialization cost and size of list responses in each format {@link ResponseFormats} offers,
+ * measured with the writers the streamed listings use. The mappers come from AppConfig and Boot's
+ * Jackson auto-configuration with application.properties, as in the running server.
+ *
+ * Not part of the regular test run; run it with
+ * {@code mvn test -Dtest=ResponseFormatsBenchmark} and read the table it prints.
+ */
+class ResponseFormatsBenchmark {
+
+    private static final int LIST_SIZE = 10_000;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 100;
+
+    private static final List<MediaType> FORMATS =
+            List.of(MediaType.APPLICATION_JSON, ResponseFormats.CBOR, ResponseFormats.SMILE);
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withInitializer(new ConfigDataApplicationContextInitializer())
+            .withInitializer(context -> context.getBeanFactory()
+                    .setConversionService(ApplicationConversionService.getSharedInstance()))
+            .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class,
+                    RestTemplateAutoConfiguration.class))
+            .withUserConfiguration(AppConfig.class)
+            .withBean(ContentNegotiationManager.class)
+            .withBean(ResponseFormats.class);
+
+    @Test
+    void serializeLists() {
+        contextRunner.run(context -> {
+            ResponseFormats responseFormats = context.getBean(ResponseFormats.class);
+            System.out.printf("%n%-9s %-6s %10s %12s %12s%n", "", "", "ms/list", "bytes", "gzipped");
+            measure("Book", books(), responseFormats);
+            measure("UserBook", userBooks(), responseFormats);
+        });
+    }
+
+    private static void measure(String name, List<?> list, ResponseFormats responseFormats) throws IOException {
+        JsonNode expected = null;
+        for (MediaType mediaType : FORMATS) {
+            ResponseFormats.Format format = responseFormats.negotiate(accepting(mediaType));
+
+            byte[] body = format.getWriter().writeValueAsBytes(list);
+            JsonNode decoded = reader(mediaType).readTree(body);
+            if (expected == null) {
+                expected = decoded;
+            }
+            // Every format has to carry the same values, dates included, for the comparison to be fair.
+            // The first row shows what differs without printing the whole list.
+            assertThat(decoded.get(0)).as("%s as %s", name, mediaType).isEqualTo(expected.get(0));
+            assertThat(decoded.equals(expected)).as("%s as %s", name, mediaType).isTrue();
+
+            for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                format.getWriter().writeValueAsBytes(list);
+            }
+            long start = System.nanoTime();
+            for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                format.getWriter().writeValueAsBytes(list);
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+
+            System.out.printf("%-9s %-6s %10.1f %,12d %,12d%n", name, mediaType.getSubtype().replace("x-jackson-", ""), millis,
+                    body.length, gzip(body).length);
+            name = "";
+        }
+    }
+
+    private static ServletWebRequest accepting(MediaType mediaType) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ACCEPT, mediaType.toString());
+        return new ServletWebRequest(request);
+    }
+
+    private static ObjectMapper reader(MediaType mediaType) {
+        if (mediaType.equals(ResponseFormats.CBOR)) {
+            return new ObjectMapper(new CBORFactory());
+        }
+        if (mediaType.equals(ResponseFormats.SMILE)) {
+            return new ObjectMapper(new SmileFactory());
+        }
+        return new ObjectMapper();
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static List<Book> books() {
+        List<Book> books = new ArrayList<>(LIST_SIZE);
+        for (int i = 1; i <= LIST_SIZE; i++) {
+            Book book = new Book("The Goblin Chronicles, Volume " + i, "Author Number " + (i % 500),
+                    String.format("978%010d", i), "https://covers.openlibrary.org/b/id/" + (100_000 + i) + "-L.jpg",
+                    1900 + i % 125);
+            book.setBookId(i);
+            books.add(book);
+        }
+        return books;
+    }
+
+    private static List<UserBook> userBooks() {
+        String[] statuses = {"unread", "reading", "finished", "dnf"};
+        LocalDate firstAdded = LocalDate.of(2020, 1, 1);
+        List<UserBook> userBooks = new ArrayList<>(LIST_SIZE);
+        for (int i = 1; i <= LIST_SIZE; i++) {
+            UserBook userBook = new UserBook(1, i, firstAdded.plusDays(i % 2000), i % 3 == 0, statuses[i % 4]);
+            userBook.setUserBookId(i);
+            userBook.setUsername("reader");
+            userBook.setBookTitle("The Goblin Chronicles, Volume " + i);
+            userBook.setBookAuthor("Author Number " + (i % 500));
+            userBooks.add(userBook);
+        }
+        return userBooks;
+    }
+}
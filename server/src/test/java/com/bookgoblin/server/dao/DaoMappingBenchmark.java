@@ -0,0 +1,188 @@
+package com.bookgoblin.server.dao;
+
+import com.bookgoblin.server.model.ReadingLog;
+import com.bookgoblin.server.model.UserBook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Time and allocation of mapping the two largest listings, getUserBooks() and getReadingLogs(),
+ * three ways:
+ * <ul>
+ *     <li>queryForRowSet: the disconnected row set the DAOs used to read, copied into models by
+ *     column name;</li>
+ *     <li>RowMapper, autocommit: the DAO's row mapper outside a transaction, where the driver buffers
+ *     the whole result before the first row is mapped;</li>
+ *     <li>DAO method: the DAO as it runs in the server, reading through a cursor
+ *     spring.jdbc.template.fetch-size rows at a time.</li>
+ * </ul>
+ * Allocation is what the benchmark thread allocated, driver buffers included.
+ *
+ * Runs against the PostgreSQL database configured in application.properties and is skipped when it
+ * cannot be reached. It commits {@value #USERS} users with {@value #BOOKS_PER_USER} books and one
+ * reading log each, and deletes them again at the end. Not part of the regular test run; run it with
+ * {@code mvn test -Dtest=DaoMappingBenchmark} and read the table it prints.
+ */
+@EnabledIf("com.bookgoblin.server.controller.ReadingLogControllerQueryCountTest#databaseAvailable")
+class DaoMappingBenchmark {
+
+    private static final int USERS = 100;
+    private static final int BOOKS_PER_USER = 1_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    private static final String USER_BOOKS_SQL = "SELECT ub.user_book_id, ub.user_id, ub.book_id, ub.date_added, " +
+            "ub.is_owned, ub.current_status, u.username, b.title, b.author " +
+            "FROM user_books ub " +
+            "JOIN users u ON ub.user_id = u.user_id " +
+            "JOIN books b ON ub.book_id = b.book_id " +
+            "ORDER BY ub.date_added DESC";
+    private static final String READING_LOGS_SQL = "SELECT rl.log_id, rl.user_book_id, rl.start_date, rl.end_date, " +
+            "rl.rating, rl.notes, ub.user_id, u.username, b.title, b.author " +
+            "FROM reading_logs rl " +
+            "JOIN user_books ub ON rl.user_book_id = ub.user_book_id " +
+            "JOIN users u ON ub.user_id = u.user_id " +
+            "JOIN books b ON ub.book_id = b.book_id " +
+            "ORDER BY rl.start_date DESC";
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withInitializer(new ConfigDataApplicationContextInitializer())
+            .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class,
+                    JdbcTemplateAutoConfiguration.class, DataSourceTransactionManagerAutoConfiguration.class))
+            .withBean(JdbcUserBookDao.class)
+            .withBean(JdbcReadingLogDao.class);
+
+    @Test
+    void mapLargeListings() {
+        contextRunner.run(context -> {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            UserBookDao userBookDao = context.getBean(UserBookDao.class);
+            ReadingLogDao readingLogDao = context.getBean(ReadingLogDao.class);
+
+            deleteFixtures(jdbcTemplate);
+            try {
+                createFixtures(jdbcTemplate);
+                int userBooks = userBookDao.getUserBooks().size();
+                int readingLogs = readingLogDao.getReadingLogs().size();
+                assertThat(userBooks).isGreaterThanOrEqualTo(USERS * BOOKS_PER_USER);
+                assertThat(readingLogs).isGreaterThanOrEqualTo(USERS * BOOKS_PER_USER);
+
+                System.out.printf("%n%-12s %-22s %10s %10s%n", "", "", "ms/op", "MB/op");
+                System.out.printf("%-12s %,d rows%n", "user books", userBooks);
+                report("queryForRowSet", measure(() -> userBooksFromRowSet(jdbcTemplate)));
+                report("RowMapper, autocommit", measure(() ->
+                        jdbcTemplate.query(USER_BOOKS_SQL, new JdbcUserBookDao.UserBookRowMapper())));
+                report("getUserBooks()", measure(userBookDao::getUserBooks));
+                System.out.printf("%-12s %,d rows%n", "reading logs", readingLogs);
+                report("queryForRowSet", measure(() -> readingLogsFromRowSet(jdbcTemplate)));
+                report("RowMapper, autocommit", measure(() ->
+                        jdbcTemplate.query(READING_LOGS_SQL, new JdbcReadingLogDao.ReadingLogRowMapper())));
+                report("getReadingLogs()", measure(readingLogDao::getReadingLogs));
+            } finally {
+                deleteFixtures(jdbcTemplate);
+            }
+        });
+    }
+
+    private static void createFixtures(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("INSERT INTO users (username, password_hash, role) " +
+                "SELECT 'mapping-benchmark-' || n, '', 'ROLE_USER' FROM generate_series(1, ?) AS n", USERS);
+        jdbcTemplate.update("INSERT INTO books (title, author, isbn, publication_year) " +
+                "SELECT 'Mapping Benchmark Volume ' || n, 'Author Number ' || (n % 500), 'MAPBENCH' || n, " +
+                "1900 + n % 125 FROM generate_series(1, ?) AS n", BOOKS_PER_USER);
+        jdbcTemplate.update("INSERT INTO user_books (user_id, book_id, date_added, is_owned, current_status) " +
+                "SELECT u.user_id, b.book_id, DATE '2020-01-01' + (b.book_id % 2000), b.book_id % 3 = 0, " +
+                "(ARRAY['unread', 'reading', 'finished', 'dnf'])[1 + b.book_id % 4] " +
+                "FROM users u CROSS JOIN books b " +
+                "WHERE u.username LIKE 'mapping-benchmark-%' AND b.isbn LIKE 'MAPBENCH%'");
+        jdbcTemplate.update("INSERT INTO reading_logs (user_book_id, start_date, end_date, rating, notes) " +
+                "SELECT ub.user_book_id, ub.date_added, ub.date_added + 14, 1 + ub.user_book_id % 5, " +
+                "'Notes on volume ' || ub.book_id " +
+                "FROM user_books ub JOIN users u ON ub.user_id = u.user_id " +
+                "WHERE u.username LIKE 'mapping-benchmark-%'");
+    }
+
+    private static void deleteFixtures(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("DELETE FROM users WHERE username LIKE 'mapping-benchmark-%'");
+        jdbcTemplate.update("DELETE FROM books WHERE isbn LIKE 'MAPBENCH%'");
+    }
+
+    // The read path before the DAOs moved to row mappers
+    private static List<UserBook> userBooksFromRowSet(JdbcTemplate jdbcTemplate) {
+        List<UserBook> userBooks = new ArrayList<>();
+        SqlRowSet rs = jdbcTemplate.queryForRowSet(USER_BOOKS_SQL);
+        while (rs.next()) {
+            UserBook userBook = new UserBook();
+            userBook.setUserBookId(rs.getInt("user_book_id"));
+            userBook.setUserId(rs.getInt("user_id"));
+            userBook.setBookId(rs.getInt("book_id"));
+            userBook.setDateAdded(rs.getDate("date_added").toLocalDate());
+            userBook.setOwned(rs.getBoolean("is_owned"));
+            userBook.setCurrentStatus(rs.getString("current_status"));
+            userBook.setUsername(rs.getString("username"));
+            userBook.setBookTitle(rs.getString("title"));
+            userBook.setBookAuthor(rs.getString("author"));
+            userBooks.add(userBook);
+        }
+        return userBooks;
+    }
+
+    private static List<ReadingLog> readingLogsFromRowSet(JdbcTemplate jdbcTemplate) {
+        List<ReadingLog> readingLogs = new ArrayList<>();
+        SqlRowSet rs = jdbcTemplate.queryForRowSet(READING_LOGS_SQL);
+        while (rs.next()) {
+            ReadingLog readingLog = new ReadingLog();
+            readingLog.setLogId(rs.getInt("log_id"));
+            readingLog.setUserBookId(rs.getInt("user_book_id"));
+            readingLog.setStartDate(rs.getDate("start_date").toLocalDate());
+            if (rs.getDate("end_date") != null) {
+                readingLog.setEndDate(rs.getDate("end_date").toLocalDate());
+            }
+            if (rs.getObject("rating") != null) {
+                readingLog.setRating(rs.getInt("rating"));
+            }
+            readingLog.setNotes(rs.getString("notes"));
+            readingLog.setUserId(rs.getInt("user_id"));
+            readingLog.setUsername(rs.getString("username"));
+            readingLog.setBookTitle(rs.getString("title"));
+            readingLog.setBookAuthor(rs.getString("author"));
+            readingLogs.add(readingLog);
+        }
+        return readingLogs;
+    }
+
+    private static double[] measure(Supplier<List<?>> query) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            query.get();
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            query.get();
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+        double megabytes = (threads.getThreadAllocatedBytes(thread) - allocatedBefore) / 1e6 / MEASURED_ROUNDS;
+        return new double[] {millis, megabytes};
+    }
+
+    private static void report(String path, double[] result) {
+        System.out.printf("%-12s %-22s %10.0f %10.1f%n", "", path, result[0], result[1]);
+    }
+}
@@ -0,0 +1,129 @@
+package com.bookgoblin.server.security.jwt;
+
+import com.bookgoblin.server.dao.UserDao;
+import com.bookgoblin.server.security.AuthenticatedUser;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Per-request cost of authenticating a bearer token, single-threaded, for three paths:
+ * <ul>
+ *     <li>before: validateToken then getAuthentication as they were before tokens were verified
+ *     once, each building its own parser and checking the signature;</li>
+ *     <li>filter, new token: {@link JwtFilter} seeing every token for the first time, so each
+ *     request verifies its token once with the shared parser and caches the result;</li>
+ *     <li>filter, cached: {@link JwtFilter} re-sending the same token, answered from the cache.</li>
+ * </ul>
+ * Uses the secret and settings from application.properties.
+ *
+ * Not part of the regular test run; run it with
+ * {@code mvn test -Dtest=JwtFilterBenchmark} and read the table it prints.
+ */
+class JwtFilterBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 100_000;
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    @Test
+    void authenticateRequests() throws Exception {
+        Properties properties = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        String secret = properties.getProperty("jwt.base64-secret");
+        long validity = Long.parseLong(properties.getProperty("jwt.token-validity-in-seconds"));
+        long cacheSize = Long.parseLong(properties.getProperty("jwt.cache.maximum-size"));
+
+        TokenProvider tokenProvider = new TokenProvider(secret, validity, validity, cacheSize, mock(UserDao.class));
+        tokenProvider.afterPropertiesSet();
+        JwtFilter filter = new JwtFilter(tokenProvider);
+        Key key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+
+        // Tokens differ by subject, since tokens issued within the same second are otherwise identical
+        String[] newTokens = new String[WARMUP_ITERATIONS + MEASURED_ITERATIONS];
+        for (int i = 0; i < newTokens.length; i++) {
+            newTokens[i] = createToken(tokenProvider, "reader" + i);
+        }
+        String token = createToken(tokenProvider, "reader");
+
+        assertThat(authenticateBefore(key, token).getName()).isEqualTo("reader");
+        assertThat(filter(filter, token).getName()).isEqualTo("reader");
+
+        System.out.printf("%n%-18s %10s%n", "", "us/request");
+        report("before", measure(i -> authenticateBefore(key, token)));
+        report("filter, new token", measure(i -> filter(filter, newTokens[i])));
+        report("filter, cached", measure(i -> filter(filter, token)));
+    }
+
+    private static String createToken(TokenProvider tokenProvider, String username) {
+        List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+        AuthenticatedUser user = new AuthenticatedUser(1, username, "", authorities);
+        return tokenProvider.createToken(new UsernamePasswordAuthenticationToken(user, null, authorities), false);
+    }
+
+    private static Authentication filter(JwtFilter filter, String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user-books");
+        request.addHeader(JwtFilter.AUTHORIZATION_HEADER, "Bearer " + token);
+        SecurityContextHolder.clearContext();
+        filter.doFilter(request, new MockHttpServletResponse(), NO_OP_CHAIN);
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    /**
+     * The filter's work before tokens were verified once: validateToken, then getAuthentication,
+     * each with a parser of its own.
+     */
+    private static Authentication authenticateBefore(Key key, String token) {
+        Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
+        Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+        Collection<? extends GrantedAuthority> authorities =
+                Arrays.stream(claims.get("auth").toString().split(","))
+                        .map(SimpleGrantedAuthority::new)
+                        .collect(Collectors.toList());
+        User principal = new User(claims.getSubject(), "", authorities);
+        return new UsernamePasswordAuthenticationToken(principal, token, authorities);
+    }
+
+    private static double measure(Request request) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            request.run(i);
+        }
+        long start = System.nanoTime();
+        for (int i = WARMUP_ITERATIONS; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+            request.run(i);
+        }
+        return (System.nanoTime() - start) / 1e3 / MEASURED_ITERATIONS;
+    }
+
+    private static void report(String path, double micros) {
+        System.out.printf("%-18s %10.1f%n", path, micros);
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        Authentication run(int iteration) throws Exception;
+    }
+}
@@ -0,0 +1,125 @@
+package com.bookgoblin.server.service;
+
+import com.bookgoblin.server.dao.BookDao;
+import com.bookgoblin.server.model.Book;
+import com.bookgoblin.server.model.SuggestionIndexStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.ObjIntConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Heap footprint and build time of the typeahead index for a catalog-sized build, measured as the
+ * live heap the built index holds on to, next to the estimate {@link SuggestionIndex#getStats}
+ * reports.
+ *
+ * The catalog is synthetic: titles of two to seven words drawn from a 20,000-word vocabulary and
+ * authors from 2,000 first names and 20,000 surnames, with reader counts skewed towards a few
+ * popular books. Not part of the regular test run; run it with
+ * {@code mvn test -Dtest=SuggestionIndexBenchmark [-Dbenchmark.books=1000000]}.
+ */
+class SuggestionIndexBenchmark {
+
+    private static final int BOOKS = Integer.getInteger("benchmark.books", 1_000_000);
+    private static final long SEED = 42;
+
+    @Test
+    void buildCatalogSizedIndex() {
+        BookDao bookDao = mock(BookDao.class);
+        doAnswer(invocation -> {
+            streamCatalog(invocation.getArgument(0));
+            return null;
+        }).when(bookDao).streamBookPopularity(any());
+        SuggestionIndex index = new SuggestionIndex(bookDao);
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        index.rebuild();
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        long after = usedHeap();
+
+        SuggestionIndexStats stats = index.getStats();
+        assertThat(stats.isReady()).isTrue();
+
+        String[] prefixes = {"a", "the", "ka", "mor", "vel ta"};
+        for (int round = 0; round < 1_000; round++) {
+            for (String prefix : prefixes) {
+                index.suggest(prefix, SuggestionIndex.MAX_SUGGESTIONS);
+            }
+        }
+        long lookupStart = System.nanoTime();
+        int lookups = 0;
+        for (int round = 0; round < 10_000; round++) {
+            for (String prefix : prefixes) {
+                index.suggest(prefix, SuggestionIndex.MAX_SUGGESTIONS);
+                lookups++;
+            }
+        }
+        double lookupMicros = (System.nanoTime() - lookupStart) / 1e3 / lookups;
+
+        System.out.printf("%nbooks %,d, entries %,d, nodes %,d%n", BOOKS, stats.getEntries(), stats.getNodes());
+        System.out.printf("estimated %,d MB, measured %,d MB (%.0f bytes per entry)%n",
+                stats.getEstimatedBytes() >> 20, (after - before) >> 20, (double) (after - before) / stats.getEntries());
+        System.out.printf("built in %.1f s, %.1f us per suggestion lookup%n", buildSeconds, lookupMicros);
+    }
+
+    private static void streamCatalog(ObjIntConsumer<Book> consumer) {
+        Random random = new Random(SEED);
+        String[] words = words(random, 20_000);
+        String[] firstNames = words(random, 2_000);
+        String[] surnames = words(random, 20_000);
+        for (int bookId = 1; bookId <= BOOKS; bookId++) {
+            StringBuilder title = new StringBuilder(random.nextInt(4) == 0 ? "The " : "");
+            int length = 2 + random.nextInt(6);
+            for (int word = 0; word < length; word++) {
+                if (word > 0) {
+                    title.append(' ');
+                }
+                title.append(capitalize(words[skewed(random, words.length)]));
+            }
+            String author = capitalize(firstNames[random.nextInt(firstNames.length)]) + " "
+                    + capitalize(surnames[skewed(random, surnames.length)]);
+            Book book = new Book(title.toString(), author, null, null, null);
+            book.setBookId(bookId);
+            consumer.accept(book, skewed(random, 1_000));
+        }
+    }
+
+    // Small values far more often than large ones, like word frequencies and popularity
+    private static int skewed(Random random, int bound) {
+        double r = random.nextDouble();
+        return (int) (bound * r * r * r);
+    }
+
+    private static String[] words(Random random, int count) {
+        String[] syllables = {"ka", "mor", "vel", "ta", "ri", "an", "sel", "do", "bru", "nix", "ea", "lo",
+                "gar", "phe", "qui", "son", "th", "ul", "wen", "zy", "ard", "ish", "om", "pe"};
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(4);
+            for (int s = 0; s < length; s++) {
+                word.append(syllables[random.nextInt(syllables.length)]);
+            }
+            words[i] = word.toString();
+        }
+        return words;
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}